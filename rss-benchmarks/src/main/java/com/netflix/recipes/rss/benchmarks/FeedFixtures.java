@@ -0,0 +1,83 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.Charsets;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Feeds used by the benchmarks.
+ *
+ * small-* and medium-* are read from src/main/resources/fixtures. The big
+ * ones are built at setup time by repeating the items of a medium/small
+ * feed, to keep multi-MB files out of the repository:
+ *  large-rss       about 4MB (the medium items, repeated)
+ *  many-items-rss  10000 short items
+ */
+public final class FeedFixtures {
+    public static final String SMALL_RSS      = "small-rss";
+    public static final String MEDIUM_RSS     = "medium-rss";
+    public static final String SMALL_ATOM     = "small-atom";
+    public static final String MEDIUM_ATOM    = "medium-atom";
+    public static final String LARGE_RSS      = "large-rss";
+    public static final String MANY_ITEMS_RSS = "many-items-rss";
+
+    private static final int LARGE_BYTES      = 4 * 1024 * 1024;
+    private static final int MANY_ITEMS_COUNT = 10000;
+
+    private FeedFixtures() {
+    }
+
+    public static byte[] load(String name) throws IOException {
+        if (LARGE_RSS.equals(name)) {
+            return repeatItems(read(MEDIUM_RSS), Integer.MAX_VALUE, LARGE_BYTES);
+        } else if (MANY_ITEMS_RSS.equals(name)) {
+            return repeatItems(read(SMALL_RSS), MANY_ITEMS_COUNT, Integer.MAX_VALUE);
+        }
+        return read(name).getBytes(Charsets.UTF_8);
+    }
+
+    private static String read(String name) throws IOException {
+        InputStream in = FeedFixtures.class.getResourceAsStream("/fixtures/" + name + ".xml");
+        if (in == null) throw new IllegalArgumentException("Unknown fixture: " + name);
+        try {
+            return IOUtils.toString(in, Charsets.UTF_8);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Repeats the items of the feed until either limit is reached
+     */
+    private static byte[] repeatItems(String feed, int maxItems, int maxBytes) {
+        int start = feed.indexOf("<item>");
+        int end = feed.lastIndexOf("</item>") + "</item>".length();
+        String head = feed.substring(0, start);
+        String tail = feed.substring(end);
+        String[] items = feed.substring(start, end).split("(?<=</item>)");
+
+        StringBuilder sb = new StringBuilder(head);
+        for (int i = 0; i < maxItems && sb.length() < maxBytes; i++) {
+            sb.append(items[i % items.length]);
+        }
+        sb.append(tail);
+        return sb.toString().getBytes(Charsets.UTF_8);
+    }
+}
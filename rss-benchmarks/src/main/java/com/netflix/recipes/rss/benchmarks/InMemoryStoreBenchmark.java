@@ -0,0 +1,106 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.benchmarks;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.netflix.recipes.rss.RSSStore;
+import com.netflix.recipes.rss.impl.InMemoryStoreImpl;
+
+/**
+ * Subscription lookups and updates of the InMemoryStoreImpl from many
+ * threads: lookups alone, and lookups racing with subscribe/unsubscribe.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InMemoryStoreBenchmark {
+    private static final int USERS = 10000;
+    private static final int URLS_PER_USER = 10;
+    private static final int URLS = 1000;
+
+    private RSSStore store;
+
+    @State(Scope.Thread)
+    public static class Caller {
+        final Random random = new Random();
+
+        String user() {
+            return "user" + random.nextInt(USERS);
+        }
+
+        String url() {
+            return InMemoryStoreBenchmark.url(random.nextInt(URLS));
+        }
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        store = new InMemoryStoreImpl();
+        Random random = new Random(42);
+        for (int i = 0; i < USERS; i++) {
+            for (int j = 0; j < URLS_PER_USER; j++) {
+                store.subscribeUrl("user" + i, url(random.nextInt(URLS)));
+            }
+        }
+    }
+
+    private static String url(int i) {
+        return "http://rss.example.com/feeds/" + i + ".xml";
+    }
+
+    @Benchmark
+    @Threads(8)
+    public List<String> lookup(Caller caller) throws Exception {
+        return store.getSubscribedUrls(caller.user());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(6)
+    public List<String> mixedLookup(Caller caller) throws Exception {
+        return store.getSubscribedUrls(caller.user());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public void mixedUpdate(Caller caller) throws Exception {
+        String user = caller.user();
+        String url = caller.url();
+        store.subscribeUrl(user, url);
+        store.unsubscribeUrl(user, url);
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.base.Charsets;
+import com.netflix.recipes.rss.RSS;
+import com.netflix.recipes.rss.RSSConstants;
+import com.netflix.recipes.rss.hystrix.SubscriptionsDecoder;
+import com.netflix.recipes.rss.hystrix.SubscriptionsPayload;
+import com.netflix.recipes.rss.impl.RSSImpl;
+import com.netflix.recipes.rss.impl.RSSItemImpl;
+import com.netflix.recipes.rss.impl.SubscriptionsImpl;
+import com.netflix.recipes.rss.jersey.providers.SubscriptionsBinaryWriter;
+import com.netflix.recipes.rss.manager.StaxRSSParser;
+import com.netflix.recipes.rss.server.FeedPageServlet;
+import com.netflix.recipes.rss.server.PageTemplate;
+import com.sun.jersey.api.json.JSONConfiguration;
+import com.sun.jersey.api.json.JSONJAXBContext;
+
+/**
+ * Rendering a page of 50 feeds of 20 items from the middle tier response,
+ * JSON or binary:
+ *  jsp:       what the edge did before, the response decoded into JSONObjects,
+ *             then walked by rss.jsp, which concatenated the values it wrote
+ *  streaming: FeedPageServlet, the feeds written as the response is decoded
+ * Both write the same page template into a reused buffer, so only the
+ * rendering allocates: run with -prof gc for the bytes per page.
+ *
+ * gradle :rss-benchmarks:jmh -Pjmh='PageRenderBenchmark -prof gc'
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageRenderBenchmark {
+    private static final int FEEDS = 50;
+    private static final int ITEMS_PER_FEED = 20;
+
+    @Param({"json", "binary"})
+    public String encoding;
+
+    private final CharArrayWriter out = new CharArrayWriter(1024 * 1024);
+    private final PageTemplate template = PageTemplate.load("templates/rss.html");
+
+    private byte[] body;
+    private SubscriptionsPayload payload;
+
+    @Setup
+    public void setUp() throws Exception {
+        byte[] feed = FeedFixtures.load(FeedFixtures.MEDIUM_RSS);
+        List<RSS> rss = new ArrayList<RSS>(FEEDS);
+        for (int i = 0; i < FEEDS; i++) {
+            rss.add(new StaxRSSParser().parse("http://rss.example.com/feed/" + i, new ByteArrayInputStream(feed), ITEMS_PER_FEED));
+        }
+        SubscriptionsImpl subscriptions = new SubscriptionsImpl("benchmark", rss);
+
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(1024 * 1024);
+        boolean binary = "binary".equals(encoding);
+        if (binary) {
+            new SubscriptionsBinaryWriter().writeTo(subscriptions, SubscriptionsImpl.class, null, null, null, null, encoded);
+        } else {
+            Class<?>[] types = {SubscriptionsImpl.class, RSSImpl.class, RSSItemImpl.class};
+            new JSONJAXBContext(JSONConfiguration.DEFAULT, types).createJSONMarshaller().marshallToJSON(subscriptions, encoded);
+        }
+        body = encoded.toByteArray();
+        payload = new SubscriptionsPayload(body, binary);
+        payload.validate();
+
+        System.out.println("\n" + encoding + ": " + body.length + " bytes, page: " + streaming() + " chars, "
+                + jsp() + " chars before");
+    }
+
+    @Benchmark
+    public int jsp() throws Exception {
+        final JSONObject jo;
+        if ("binary".equals(encoding)) {
+            jo = SubscriptionsDecoder.decodeBinary(new ByteArrayInputStream(body));
+        } else {
+            jo = SubscriptionsDecoder.decodeJson(IOUtils.toString(new ByteArrayInputStream(body), Charsets.UTF_8));
+        }
+        out.reset();
+        template.render(out, new PageTemplate.Slots() {
+            public void write(String slot, Writer out) throws IOException {
+                try {
+                    if ("feeds".equals(slot)) {
+                        writeFeeds(jo, out);
+                    } else if ("stream".equals(slot)) {
+                        out.write(RSSConstants.EDGE_STREAM_PATH + "?offset=" + 0 + "&watermark=" + jo.optString("watermark"));
+                    } else if ("pager".equals(slot) && jo.has("nextOffset")) {
+                        out.write("<li class=\"next\"><a href=\"?offset=" + jo.getInt("nextOffset") + "\">More feeds &rarr;</a></li>\n");
+                    } else if ("page".equals(slot)) {
+                        out.write(RSSConstants.EDGE_PAGE_PATH);
+                    }
+                } catch (Exception e) {
+                    throw new IOException(e);
+                }
+            }
+        });
+        return out.size();
+    }
+
+    @Benchmark
+    public int streaming() throws Exception {
+        out.reset();
+        FeedPageServlet.render(out, payload, 0, FEEDS, ITEMS_PER_FEED);
+        return out.size();
+    }
+
+    /**
+     * The loops of rss.jsp, as Jasper compiled them
+     */
+    private static void writeFeeds(JSONObject jo, Writer out) throws Exception {
+        JSONArray subscriptions = jo.optJSONArray("subscriptions");
+        if (subscriptions == null) {
+            subscriptions = new JSONArray();
+        }
+        int numFeeds = subscriptions.length();
+        int totalRows = (numFeeds % 3 == 0) ? (numFeeds / 3) : (numFeeds / 3) + 1;
+        int index = 0;
+        int itemIndex = 0;
+        for (int rowIndex = 0; rowIndex < totalRows; rowIndex++) {
+            out.write("<div class=\"row\">\n");
+            for (int colIndex = 0; colIndex < 3; colIndex++) {
+                if (index >= numFeeds) break;
+                JSONObject rss = (JSONObject) subscriptions.get(index);
+                out.write("<div class=\"span4\" data-url=\"" + rss.get("url") + "\">\n");
+                out.write("<h4>" + rss.get("title") + " <a href=\"?delFeedUrl="
+                        + URLEncoder.encode((String) rss.get("url"), "UTF-8") + "\"><i class=\"icon-remove\"></i> </a></h4>\n");
+                JSONArray items = (JSONArray) rss.get("items");
+                for (int i = 0; i < items.length(); i++) {
+                    if (i >= ITEMS_PER_FEED) break;
+                    JSONObject item = (JSONObject) items.get(i);
+                    out.write("<p id=\"item" + itemIndex + "\" data-container=\"body\" data-content=\""
+                            + ((String) item.get("description")).replace('"', '\'')
+                            + "\" data-trigger=\"hover\" data-placement=\"right\" data-html=\"true\"><a href=\""
+                            + item.get("link") + "\">" + item.get("title") + "</a></p>\n");
+                    itemIndex++;
+                }
+                out.write("</div>\n");
+                index++;
+            }
+            out.write("</div>\n");
+        }
+    }
+}
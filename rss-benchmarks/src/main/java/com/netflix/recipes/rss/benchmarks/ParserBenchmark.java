@@ -0,0 +1,80 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.netflix.recipes.rss.RSS;
+import com.netflix.recipes.rss.manager.DomRSSParser;
+import com.netflix.recipes.rss.manager.RSSParser;
+import com.netflix.recipes.rss.manager.StaxRSSParser;
+
+/**
+ * Streaming (StAX) vs DOM parsing of the feed fixtures, with and without the
+ * item limit. Scores are feeds parsed per second, and the gc profiler
+ * (on by default in the jmh task) reports gc.alloc.rate.norm, the bytes
+ * allocated per parsed feed.
+ *
+ * The DOM parser only knows RSS, it finds no items in the Atom fixtures.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+    private static final String URL = "http://rss.example.com/feed";
+
+    @Param({FeedFixtures.SMALL_RSS, FeedFixtures.MEDIUM_RSS, FeedFixtures.SMALL_ATOM, FeedFixtures.MEDIUM_ATOM,
+            FeedFixtures.LARGE_RSS, FeedFixtures.MANY_ITEMS_RSS})
+    public String fixture;
+
+    @Param({"50", "2147483647"})
+    public int maxItems;
+
+    private final RSSParser stax = new StaxRSSParser();
+    private final RSSParser dom = new DomRSSParser();
+    private byte[] feed;
+
+    @Setup
+    public void setUp() throws Exception {
+        feed = FeedFixtures.load(fixture);
+    }
+
+    @Benchmark
+    public RSS stax() throws Exception {
+        return stax.parse(URL, new ByteArrayInputStream(feed), maxItems);
+    }
+
+    @Benchmark
+    public RSS dom() throws Exception {
+        return dom.parse(URL, new ByteArrayInputStream(feed), maxItems);
+    }
+}
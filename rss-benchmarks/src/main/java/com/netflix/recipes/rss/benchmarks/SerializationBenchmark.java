@@ -0,0 +1,98 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Marshaller;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.netflix.recipes.rss.RSS;
+import com.netflix.recipes.rss.impl.RSSImpl;
+import com.netflix.recipes.rss.impl.RSSItemImpl;
+import com.netflix.recipes.rss.impl.SubscriptionsImpl;
+import com.netflix.recipes.rss.manager.StaxRSSParser;
+import com.sun.jersey.api.json.JSONConfiguration;
+import com.sun.jersey.api.json.JSONJAXBContext;
+import com.sun.jersey.api.json.JSONMarshaller;
+
+/**
+ * Marshalling of the middle tier response (SubscriptionsImpl) the way
+ * Jersey does it, to JSON and to XML.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"1", "10", "50"})
+    public int feeds;
+
+    @Param({FeedFixtures.SMALL_RSS, FeedFixtures.MEDIUM_RSS})
+    public String fixture;
+
+    private SubscriptionsImpl subscriptions;
+    private JSONMarshaller jsonMarshaller;
+    private Marshaller xmlMarshaller;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(1024 * 1024);
+
+    @Setup
+    public void setUp() throws Exception {
+        byte[] feed = FeedFixtures.load(fixture);
+        List<RSS> rss = new ArrayList<RSS>(feeds);
+        for (int i = 0; i < feeds; i++) {
+            rss.add(new StaxRSSParser().parse("http://rss.example.com/feed/" + i, new ByteArrayInputStream(feed), 50));
+        }
+        subscriptions = new SubscriptionsImpl("benchmark", rss);
+
+        Class<?>[] types = {SubscriptionsImpl.class, RSSImpl.class, RSSItemImpl.class};
+        jsonMarshaller = new JSONJAXBContext(JSONConfiguration.DEFAULT, types).createJSONMarshaller();
+        xmlMarshaller = JAXBContext.newInstance(types).createMarshaller();
+    }
+
+    @Benchmark
+    public int json() throws Exception {
+        out.reset();
+        jsonMarshaller.marshallToJSON(subscriptions, out);
+        return out.size();
+    }
+
+    @Benchmark
+    public int xml() throws Exception {
+        out.reset();
+        xmlMarshaller.marshal(subscriptions, out);
+        return out.size();
+    }
+}
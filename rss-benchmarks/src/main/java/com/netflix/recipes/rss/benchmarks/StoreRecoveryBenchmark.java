@@ -0,0 +1,128 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.netflix.config.ConfigurationManager;
+import com.netflix.recipes.rss.RSSConstants;
+import com.netflix.recipes.rss.impl.InMemoryStoreImpl;
+
+/**
+ * Startup time of a persistent InMemoryStoreImpl: loading a snapshot of
+ * 10M subscriptions, then replaying the log written after it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class StoreRecoveryBenchmark {
+    private static final int URLS_PER_USER = 10;
+    private static final int URLS = 100000;
+    private static final int LOADERS = 16;
+
+    @Param({"10000000"})
+    public int subscriptions;
+
+    // Subscriptions logged after the snapshot
+    @Param({"0", "100000"})
+    public int logTail;
+
+    private File dir;
+
+    @Setup
+    public void setUp() throws Exception {
+        // Durability does not matter while building the data set
+        ConfigurationManager.getConfigInstance().setProperty(RSSConstants.RSS_STORE_INMEMORY_FSYNC, false);
+
+        dir = new File(System.getProperty("java.io.tmpdir"), "rss-store-benchmark-" + System.nanoTime());
+        InMemoryStoreImpl store = new InMemoryStoreImpl(dir);
+        load(store, 0, subscriptions - logTail);
+        store.snapshot();
+        load(store, subscriptions - logTail, subscriptions);
+        store.close();
+    }
+
+    /**
+     * Subscribes users [from / 10, to / 10) to 10 feeds each, from several threads
+     */
+    private static void load(final InMemoryStoreImpl store, final int from, final int to) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(LOADERS);
+        try {
+            List<Future<Void>> loaders = new ArrayList<Future<Void>>();
+            for (int i = 0; i < LOADERS; i++) {
+                final int loader = i;
+                loaders.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        Random random = new Random(loader);
+                        for (int user = from / URLS_PER_USER + loader; user < to / URLS_PER_USER; user += LOADERS) {
+                            for (int j = 0; j < URLS_PER_USER; j++) {
+                                store.subscribeUrl("user" + user, "http://rss.example.com/feeds/" + random.nextInt(URLS) + ".xml");
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> loader: loaders) {
+                loader.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Benchmark
+    public InMemoryStoreImpl recover() throws Exception {
+        InMemoryStoreImpl store = new InMemoryStoreImpl(dir);
+        store.close();
+        return store;
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file: files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+}
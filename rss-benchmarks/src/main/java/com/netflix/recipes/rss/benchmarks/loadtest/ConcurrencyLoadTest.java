@@ -0,0 +1,89 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.benchmarks.loadtest;
+
+import java.net.InetSocketAddress;
+
+import com.netflix.recipes.rss.netty.NettyHandlerContainer;
+import com.netflix.recipes.rss.netty.NettyServer;
+import com.netflix.recipes.rss.util.VirtualThreads;
+import com.sun.jersey.api.container.ContainerFactory;
+import com.sun.jersey.api.core.DefaultResourceConfig;
+import com.sun.jersey.api.core.ResourceConfig;
+
+/**
+ * How many concurrent requests each executor type sustains when handling a
+ * request blocks, like the middletier does on feed fetches and store calls.
+ *
+ * Every executor type is loaded with an increasing number of keep-alive
+ * connections, each sending requests that block for serviceMs. A level is
+ * sustained if no request was shed or failed and the p99 latency stayed
+ * within twice the service time, i.e. requests did not queue for threads.
+ *
+ * gradle :rss-benchmarks:concurrencyTest -PconcurrencyTest='bounded,virtual 50 10 64,256,1024,4096'
+ *
+ * Arguments: executor types, serviceMs, seconds per level, connection levels.
+ * The virtual executor needs Java 21 (-PloadTestJava=/path/to/jdk21/bin/java),
+ * on older JVMs it falls back to bounded.
+ */
+public class ConcurrencyLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        String[] executorTypes = (args.length > 0 ? args[0] : "bounded,virtual").split(",");
+        int serviceMs = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        String[] levels = (args.length > 3 ? args[3] : "64,256,1024,4096").split(",");
+
+        System.out.printf("Java %s, virtual threads %s, %d cpus%n", System.getProperty("java.version"),
+                VirtualThreads.isAvailable() ? "available" : "not available", NettyServer.cpus);
+
+        for (String executorType: executorTypes) {
+            DefaultResourceConfig config = new DefaultResourceConfig(LoadTestResource.class);
+            config.getFeatures().put(ResourceConfig.FEATURE_DISABLE_WADL, true);
+
+            NettyServer server = NettyServer.builder()
+                    .host("localhost")
+                    .port(0)
+                    .executorType(executorType)
+                    .addHandler("jerseyHandler", ContainerFactory.createContainer(
+                            NettyHandlerContainer.class, config))
+                    .build();
+            try {
+                InetSocketAddress address = new InetSocketAddress("localhost", server.getListenPort());
+                String path = "/loadtest/blocking?ms=" + serviceMs;
+
+                int sustained = 0;
+                for (String level: levels) {
+                    int connections = Integer.parseInt(level);
+                    // Warm up at this level, so that the measure does not include connecting
+                    HttpLoadTest.run(address, path, "keepalive", connections, Math.max(1, seconds / 4), 1);
+                    HttpLoadTest.Result result = HttpLoadTest.run(address, path, "keepalive", connections, seconds, 1);
+
+                    boolean ok = result.rejected == 0 && result.errors == 0 && result.percentile(99) <= 2 * serviceMs;
+                    if (ok) {
+                        sustained = connections;
+                    }
+                    System.out.printf("%-8s %5d connections: %8.0f req/s  p50 %8.2f ms  p99 %8.2f ms  rejected %6d  errors %d%s%n",
+                            executorType, connections, result.throughput(), result.percentile(50), result.percentile(99),
+                            result.rejected, result.errors, ok ? "" : "  (not sustained)");
+                }
+                System.out.printf("%-8s sustains %d concurrent requests of %d ms%n", executorType, sustained, serviceMs);
+            } finally {
+                server.close();
+            }
+        }
+    }
+}
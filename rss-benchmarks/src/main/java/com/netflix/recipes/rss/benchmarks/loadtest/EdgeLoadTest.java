@@ -0,0 +1,139 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.benchmarks.loadtest;
+
+import java.net.InetSocketAddress;
+
+import org.apache.commons.configuration.AbstractConfiguration;
+import org.mortbay.jetty.AbstractConnector;
+import org.mortbay.jetty.Handler;
+import org.mortbay.jetty.Server;
+import org.mortbay.jetty.bio.SocketConnector;
+import org.mortbay.jetty.nio.SelectChannelConnector;
+import org.mortbay.jetty.servlet.Context;
+import org.mortbay.thread.BoundedThreadPool;
+
+import com.netflix.config.ConfigurationManager;
+import com.netflix.recipes.rss.RSSConstants;
+import com.netflix.recipes.rss.hystrix.CommandContinuations;
+import com.netflix.recipes.rss.netty.NettyHandlerContainer;
+import com.netflix.recipes.rss.netty.NettyServer;
+import com.netflix.recipes.rss.server.FeedPageFilter;
+import com.netflix.recipes.rss.server.FeedPageServlet;
+import com.sun.jersey.api.container.ContainerFactory;
+import com.sun.jersey.api.core.DefaultResourceConfig;
+import com.sun.jersey.api.core.ResourceConfig;
+
+/**
+ * How many concurrent users an edge instance holds on the feed page when the
+ * middle tier takes serviceMs to answer:
+ *  blocking: what the edge did before, a blocking connector and the middle
+ *            tier call waited for in the Jetty thread
+ *  async:    the non-blocking connector, and FeedPageFilter suspending the
+ *            requests while the call is in flight
+ *
+ * The edge has jettyThreads threads, the middle tier is a stub
+ * (MiddleTierStubResource) called through the Ribbon client. The page cache
+ * is disabled, every request waits for a middle tier call (concurrent
+ * requests share one), and the page is rendered by FeedPageServlet. Each user is a keep-alive connection reloading the
+ * page; a level is held if no request failed and the p99 latency stayed
+ * within twice the service time, as in ConcurrencyLoadTest.
+ *
+ * gradle :rss-benchmarks:edgeLoadTest -PedgeLoadTest='blocking,async 50 10 64,256,1024 50'
+ *
+ * Arguments: modes, serviceMs, seconds per level, user levels, Jetty threads.
+ */
+public class EdgeLoadTest {
+    private static final String PAGE_PATH = RSSConstants.EDGE_PAGE_PATH;
+
+    public static void main(String[] args) throws Exception {
+        String[] modes = (args.length > 0 ? args[0] : "blocking,async").split(",");
+        int serviceMs = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        String[] levels = (args.length > 3 ? args[3] : "64,256,1024").split(",");
+        int jettyThreads = args.length > 4 ? Integer.parseInt(args[4]) : 50;
+
+        // Before the first command is created
+        CommandContinuations.register();
+        MiddleTierStubResource.serviceMs = serviceMs;
+
+        DefaultResourceConfig config = new DefaultResourceConfig(MiddleTierStubResource.class);
+        config.getFeatures().put(ResourceConfig.FEATURE_DISABLE_WADL, true);
+        NettyServer middleTier = NettyServer.builder()
+                .host("localhost")
+                .port(0)
+                .addHandler("jerseyHandler", ContainerFactory.createContainer(
+                        NettyHandlerContainer.class, config))
+                .build();
+        try {
+            AbstractConfiguration configuration = ConfigurationManager.getConfigInstance();
+            configuration.setProperty(RSSConstants.MIDDLETIER_REST_CLIENT + ".ribbon.listOfServers", "localhost:" + middleTier.getListenPort());
+            configuration.setProperty(RSSConstants.MIDDLETIER_REST_CLIENT + ".ribbon.NIWSServerListClassName",
+                    "com.netflix.loadbalancer.ConfigurationBasedServerList");
+            configuration.setProperty(RSSConstants.EDGE_BINARY_ENABLED, false);
+            configuration.setProperty(RSSConstants.EDGE_CACHE_TTL_MS, 0);
+            configuration.setProperty("hystrix.command." + RSSConstants.HYSTRIX_RSS_GET_COMMAND_KEY
+                    + ".execution.isolation.thread.timeoutInMilliseconds", 10000);
+
+            for (String mode: modes) {
+                Server edge = startEdge(mode.equals("async"), jettyThreads);
+                try {
+                    InetSocketAddress address = new InetSocketAddress("localhost", edge.getConnectors()[0].getLocalPort());
+
+                    int held = 0;
+                    for (String level: levels) {
+                        int users = Integer.parseInt(level);
+                        // Warm up at this level, so that the measure does not include connecting
+                        HttpLoadTest.run(address, PAGE_PATH, "keepalive", users, Math.max(1, seconds / 4), 1);
+                        HttpLoadTest.Result result = HttpLoadTest.run(address, PAGE_PATH, "keepalive", users, seconds, 1);
+
+                        boolean ok = result.rejected == 0 && result.errors == 0 && result.percentile(99) <= 2 * serviceMs;
+                        if (ok) {
+                            held = users;
+                        }
+                        System.out.printf("%-8s %5d users: %8.0f pages/s  p50 %8.2f ms  p99 %8.2f ms  errors %d%s%n",
+                                mode, users, result.throughput(), result.percentile(50), result.percentile(99),
+                                result.errors, ok ? "" : "  (not held)");
+                    }
+                    System.out.printf("%-8s holds %d concurrent users with %d Jetty threads and a %d ms middle tier%n",
+                            mode, held, jettyThreads, serviceMs);
+                } finally {
+                    edge.stop();
+                }
+            }
+        } finally {
+            middleTier.close();
+        }
+    }
+
+    private static Server startEdge(boolean async, int jettyThreads) throws Exception {
+        AbstractConnector connector = async ? new SelectChannelConnector() : new SocketConnector();
+        connector.setPort(0);
+        BoundedThreadPool threadPool = new BoundedThreadPool();
+        threadPool.setMaxThreads(jettyThreads);
+
+        Server server = new Server();
+        server.addConnector(connector);
+        server.setThreadPool(threadPool);
+        Context context = new Context(server, "/", Context.SESSIONS);
+        if (async) {
+            context.addFilter(FeedPageFilter.class, PAGE_PATH, Handler.DEFAULT);
+        }
+        context.addServlet(FeedPageServlet.class, PAGE_PATH);
+        server.start();
+        return server;
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.benchmarks.loadtest;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.netflix.recipes.rss.netty.NettyHandlerContainer;
+import com.netflix.recipes.rss.netty.NettyServer;
+import com.sun.jersey.api.container.ContainerFactory;
+import com.sun.jersey.api.core.DefaultResourceConfig;
+import com.sun.jersey.api.core.ResourceConfig;
+
+/**
+ * Requests per second and latencies of the netty server, with a connection
+ * per request (what the server did before keep-alive), keep-alive
+ * connections, and pipelined requests on keep-alive connections.
+ *
+ * gradle :rss-benchmarks:loadTest -PloadTest='keepalive 64 30'
+ *
+ * Arguments: mode (close, keepalive, pipelined or all), concurrent
+ * connections, seconds per mode, pipelining depth, executor type (bounded
+ * or ordered). Requests shed by the server with a 503 are counted apart.
+ */
+public class HttpLoadTest {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "all";
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int depth = args.length > 3 ? Integer.parseInt(args[3]) : 8;
+        String executorType = args.length > 4 ? args[4] : NettyServer.EXECUTOR_BOUNDED;
+
+        DefaultResourceConfig config = new DefaultResourceConfig(LoadTestResource.class);
+        config.getFeatures().put(ResourceConfig.FEATURE_DISABLE_WADL, true);
+
+        NettyServer server = NettyServer.builder()
+                .host("localhost")
+                .port(0)
+                .executorType(executorType)
+                .addHandler("jerseyHandler", ContainerFactory.createContainer(
+                        NettyHandlerContainer.class, config))
+                .build();
+        try {
+            InetSocketAddress address = new InetSocketAddress("localhost", server.getListenPort());
+            List<String> modes = mode.equals("all") ? Arrays.asList("close", "keepalive", "pipelined") : Arrays.asList(mode);
+            for (String m: modes) {
+                // Warm up the server and the JIT before measuring
+                run(address, "/loadtest", m, connections, Math.max(1, seconds / 4), depth);
+                Result result = run(address, "/loadtest", m, connections, seconds, depth);
+                System.out.printf("%-10s %4d connections: %8.0f req/s  p50 %6.2f ms  p99 %6.2f ms  rejected %d  errors %d%n",
+                        m, connections, result.throughput(), result.percentile(50), result.percentile(99),
+                        result.rejected, result.errors);
+            }
+        } finally {
+            server.close();
+        }
+    }
+
+    /**
+     * Sends requests for path from concurrent clients for some seconds
+     */
+    static Result run(final InetSocketAddress address, final String path, final String mode, int connections,
+                      int seconds, final int depth) throws Exception {
+        final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        ExecutorService executor = Executors.newFixedThreadPool(connections);
+        try {
+            List<Future<Result>> clients = new ArrayList<Future<Result>>();
+            for (int i = 0; i < connections; i++) {
+                clients.add(executor.submit(new Callable<Result>() {
+                    public Result call() {
+                        return new Client(address, path, mode, depth).run(end);
+                    }
+                }));
+            }
+            Result total = new Result(seconds);
+            for (Future<Result> client: clients) {
+                total.add(client.get());
+            }
+            return total;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static class Client {
+        private final InetSocketAddress address;
+        private final String path;
+        private final String mode;
+        private final int depth;
+        private final Result result = new Result(0);
+
+        private Socket socket;
+        private InputStream in;
+        private OutputStream out;
+
+        Client(InetSocketAddress address, String path, String mode, int depth) {
+            this.address = address;
+            this.path = path;
+            this.mode = mode;
+            this.depth = mode.equals("pipelined") ? depth : 1;
+        }
+
+        Result run(long end) {
+            byte[] request = (mode.equals("close")
+                    ? "GET " + path + " HTTP/1.0\r\nHost: localhost\r\n\r\n"
+                    : "GET " + path + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(ASCII);
+            byte[] requests = new byte[request.length * depth];
+            for (int i = 0; i < depth; i++) {
+                System.arraycopy(request, 0, requests, i * request.length, request.length);
+            }
+
+            while (System.nanoTime() < end) {
+                long start = System.nanoTime();
+                try {
+                    if (socket == null) connect();
+                    out.write(requests);
+                    out.flush();
+                    for (int i = 0; i < depth; i++) {
+                        if (readResponse()) {
+                            // A pipelined request waits for the whole batch to be sent
+                            result.record(System.nanoTime() - start);
+                        } else {
+                            result.rejected++;
+                        }
+                    }
+                    if (mode.equals("close")) disconnect();
+                } catch (IOException e) {
+                    result.errors++;
+                    disconnect();
+                }
+            }
+            disconnect();
+            return result;
+        }
+
+        private void connect() throws IOException {
+            socket = new Socket();
+            socket.setTcpNoDelay(true);
+            socket.connect(address);
+            in = new BufferedInputStream(socket.getInputStream());
+            out = socket.getOutputStream();
+        }
+
+        private void disconnect() {
+            if (socket == null) return;
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Nothing to do
+            }
+            socket = null;
+        }
+
+        /**
+         * Reads the status line and headers, then Content-Length bytes, or up to
+         * the end of the connection without one
+         *
+         * @return false if the server shed the request
+         */
+        private boolean readResponse() throws IOException {
+            int contentLength = -1;
+            String line = readLine();
+            boolean rejected = line.startsWith("HTTP/1.") && line.contains(" 503 ");
+            if (!line.startsWith("HTTP/1.") || !(line.contains(" 200 ") || rejected)) {
+                throw new IOException("Unexpected response " + line);
+            }
+            while (!(line = readLine()).isEmpty()) {
+                if (line.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                    contentLength = Integer.parseInt(line.substring(15).trim());
+                }
+            }
+            if (contentLength >= 0) {
+                for (int i = 0; i < contentLength; i++) {
+                    if (in.read() < 0) throw new IOException("Truncated response");
+                }
+            } else {
+                while (in.read() >= 0) {
+                    // Read up to the end of the connection
+                }
+            }
+            return !rejected;
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) != '\n') {
+                if (c < 0) throw new IOException("Connection closed");
+                if (c != '\r') line.append((char) c);
+            }
+            return line.toString();
+        }
+    }
+
+    static class Result {
+        private final int seconds;
+        private long[] latencies = new long[1024];
+        private int count;
+        int rejected;
+        int errors;
+
+        Result(int seconds) {
+            this.seconds = seconds;
+        }
+
+        void record(long nanos) {
+            if (count == latencies.length) latencies = Arrays.copyOf(latencies, count * 2);
+            latencies[count++] = nanos;
+        }
+
+        void add(Result other) {
+            for (int i = 0; i < other.count; i++) {
+                record(other.latencies[i]);
+            }
+            rejected += other.rejected;
+            errors += other.errors;
+        }
+
+        double throughput() {
+            return (double) count / seconds;
+        }
+
+        double percentile(int percent) {
+            if (count == 0) return 0;
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            return sorted[Math.min(count - 1, count * percent / 100)] / 1e6;
+        }
+    }
+}
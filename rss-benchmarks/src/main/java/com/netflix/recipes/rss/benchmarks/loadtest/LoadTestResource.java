@@ -0,0 +1,55 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.benchmarks.loadtest;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+
+/**
+ * Answers with a fixed body the size of a user's subscriptions, so that the
+ * load test measures the http layer only, optionally after blocking like a
+ * fetch or a store call would
+ */
+@Path("/loadtest")
+public class LoadTestResource {
+    static final String BODY;
+
+    static {
+        StringBuilder body = new StringBuilder("{\"subscriptions\":[");
+        for (int i = 0; i < 20; i++) {
+            if (i > 0) body.append(',');
+            body.append("{\"url\":\"http://rss.example.com/feeds/").append(i).append(".xml\"}");
+        }
+        BODY = body.append("]}").toString();
+    }
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public String get() {
+        return BODY;
+    }
+
+    @GET
+    @Path("blocking")
+    @Produces(MediaType.APPLICATION_JSON)
+    public String getBlocking(@QueryParam("ms") int ms) throws InterruptedException {
+        Thread.sleep(ms);
+        return BODY;
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.benchmarks.loadtest;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+/**
+ * Stands for the middle tier Get RSS entry point in the edge load test:
+ * answers the subscriptions of LoadTestResource after serviceMs
+ */
+@Path("/middletier/rss/user/{user}")
+public class MiddleTierStubResource {
+    static volatile int serviceMs;
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public String get(@PathParam("user") String user) throws InterruptedException {
+        Thread.sleep(serviceMs);
+        return LoadTestResource.BODY;
+    }
+}
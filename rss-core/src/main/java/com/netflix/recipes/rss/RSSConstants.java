@@ -31,24 +31,116 @@ public class RSSConstants {
     public static final String HYSTRIX_RSS_ADD_COMMAND_KEY    = "RSSAdd";
     public static final String HYSTRIX_RSS_DEL_COMMAND_KEY    = "RSSDel";
     public static final String HYSTRIX_RSS_GET_COMMAND_KEY    = "RSSGet";
+    public static final String HYSTRIX_RSS_GET_SINCE_COMMAND_KEY = "RSSGetSince";
     public static final String HYSTRIX_STREAM_PATH            = "/hystrix.stream";
 
+    // Feed page of the edge (FeedPageServlet, kept at the path of the JSP it replaced), its middle tier calls are made by FeedPageFilter
+    public static final String EDGE_PAGE_PATH                    = "/jsp/rss.jsp";
+
+    // Server-sent events of the new items of the user's feeds (see FeedStreamServlet)
+    public static final String EDGE_STREAM_PATH                  = "/rss.stream";
+    public static final String EDGE_STREAM_MAX_CONNECTIONS       = "rss.edge.stream.maxConnections";
+    public static final String EDGE_STREAM_HEARTBEAT_MS          = "rss.edge.stream.heartbeatMs";
+    public static final String EDGE_STREAM_QUEUE_SIZE            = "rss.edge.stream.queueSize";
+    public static final String EDGE_STREAM_POLL_INTERVAL_MS      = "rss.edge.stream.pollIntervalMs";
+    public static final String EDGE_STREAM_POLLER_THREADS        = "rss.edge.stream.pollerThreads";
+
 	public static final String MIDDLETIER_WEB_RESOURCE_ROOT_PATH = "middletier";
 	public static final String MIDDLETIER_WEB_RESOURCE_GET_PATH  = "get";
     
     // Rest Client
     public static final String MIDDLETIER_REST_CLIENT = "middletier-client";
 
+    // Compact binary encoding of the subscriptions (see SubscriptionsBinaryWriter), negotiated with the Accept header
+    public static final String RSS_BINARY_MEDIA_TYPE = "application/x-rss-subscriptions";
+    public static final int    RSS_BINARY_VERSION    = 1;
+    // Whether the edge asks the middle tier for it
+    public static final String EDGE_BINARY_ENABLED   = "rss.edge.binary.enabled";
+
+    // Subscribed feeds per page of the edge (0 for all of them), and items shown per feed
+    public static final String EDGE_FEEDS_PER_PAGE   = "rss.edge.feedsPerPage";
+    public static final String EDGE_ITEMS_PER_FEED   = "rss.edge.itemsPerFeed";
+
+    // Edge cache of the pages of subscriptions, and of the last ones served when the middle tier fails
+    public static final String EDGE_CACHE_TTL_MS     = "rss.edge.cache.ttlMs";
+    public static final String EDGE_CACHE_STALE_MS   = "rss.edge.cache.staleMs";
+    public static final String EDGE_CACHE_MAX_PAGES  = "rss.edge.cache.maxPages";
+
+    // Routing of the middle tier calls by user (see ConsistentHashRule): points of every server on the
+    // ring, and how many times the average active requests a server takes before the next one does
+    public static final String EDGE_ROUTING_VIRTUAL_NODES = "rss.edge.routing.virtualNodes";
+    public static final String EDGE_ROUTING_LOAD_FACTOR   = "rss.edge.routing.loadFactor";
+
     // Default user name
     public static final String DEFUALT_USER = "default";
 
     // REST Entry points
     public static final String RSS_ENTRY_POINT = "/rss/user/" + DEFUALT_USER;
+    public static final String RSS_SINCE_ENTRY_POINT = RSS_ENTRY_POINT + "/since";
 
     // RSS Store
     public static final String RSS_STORE           = "rss.store";
     public static final String RSS_STORE_CASSANDRA = "cassandra";
     public static final String RSS_STORE_INMEMORY  = "inmemory";
+    public static final String RSS_STORE_ASYNC_THREADS = "rss.store.async.threads";
+    public static final String RSS_STORE_CACHE_ENABLED   = "rss.store.cache.enabled";
+    public static final String RSS_STORE_CACHE_MAX_USERS = "rss.store.cache.maxUsers";
+    public static final String RSS_STORE_CACHE_TTL_MS    = "rss.store.cache.ttlMs";
+    public static final String RSS_STORE_INMEMORY_CONCURRENCY = "rss.store.inmemory.concurrencyLevel";
+    public static final String RSS_STORE_INMEMORY_PERSISTENCE_ENABLED  = "rss.store.inmemory.persistence.enabled";
+    public static final String RSS_STORE_INMEMORY_PERSISTENCE_DIR      = "rss.store.inmemory.persistence.dir";
+    public static final String RSS_STORE_INMEMORY_FSYNC                = "rss.store.inmemory.persistence.fsync";
+    public static final String RSS_STORE_INMEMORY_SNAPSHOT_INTERVAL_MS = "rss.store.inmemory.persistence.snapshotIntervalMs";
+
+    // Netty request execution (bounded, ordered or virtual), the feeds are fetched on virtual threads too
+    public static final String NETTY_EXECUTOR_TYPE = "netty.executor.type";
+
+    // RSS feed fetching
+    public static final String RSS_FETCH_THREADS        = "rss.fetch.threads";
+    public static final String RSS_FETCH_MAX_CONCURRENT = "rss.fetch.maxConcurrentPerRequest";
+    public static final String RSS_FETCH_DEADLINE_MS    = "rss.fetch.deadlineMs";
+
+    // RSS feed download (ribbon or netty), with the Ribbon client of the feed sites
+    public static final String RSS_FETCH_CLIENT        = "rss.fetch.client";
+    public static final String RSS_FETCH_CLIENT_RIBBON = "ribbon";
+    public static final String RSS_FETCH_CLIENT_NETTY  = "netty";
+    public static final String RSS_FEED_CLIENT         = "feed-client";
+    public static final String RSS_FETCH_NETTY_IO_THREADS               = "rss.fetch.netty.ioThreads";
+    public static final String RSS_FETCH_NETTY_MAX_CONNECTIONS_PER_HOST = "rss.fetch.netty.maxConnectionsPerHost";
+    public static final String RSS_FETCH_NETTY_CONNECT_TIMEOUT_MS       = "rss.fetch.netty.connectTimeoutMs";
+    public static final String RSS_FETCH_NETTY_READ_TIMEOUT_MS          = "rss.fetch.netty.readTimeoutMs";
+    public static final String RSS_FETCH_NETTY_MAX_BODY_BYTES           = "rss.fetch.netty.maxBodyBytes";
+    public static final String RSS_FETCH_NETTY_MAX_REDIRECTS            = "rss.fetch.netty.maxRedirects";
+
+    // RSS feed cache
+    public static final String RSS_CACHE_MAX_FEEDS    = "rss.cache.maxFeeds";
+    public static final String RSS_CACHE_TTL_MS       = "rss.cache.ttlMs";
+    public static final String RSS_CACHE_RETENTION_MS = "rss.cache.retentionMs";
+
+    // RSS feed background poller
+    public static final String RSS_POLLER_ENABLED                  = "rss.poller.enabled";
+    public static final String RSS_POLLER_THREADS                  = "rss.poller.threads";
+    public static final String RSS_POLLER_MIN_INTERVAL_MS          = "rss.poller.minIntervalMs";
+    public static final String RSS_POLLER_MAX_INTERVAL_MS          = "rss.poller.maxIntervalMs";
+    public static final String RSS_POLLER_JITTER                   = "rss.poller.jitter";
+    public static final String RSS_POLLER_MAX_CONCURRENT_PER_HOST  = "rss.poller.maxConcurrentPerHost";
+    public static final String RSS_POLLER_MAX_BYTES_PER_SECOND     = "rss.poller.maxBytesPerSecond";
+
+    // RSS feed ownership across the middle tiers (see FeedOwnership): the owner of a feed fetches it, the other
+    // middle tiers get it parsed from the owner's internal entry point, with the time the owner fetched it
+    public static final String RSS_OWNERSHIP_ENABLED       = "rss.ownership.enabled";
+    public static final String RSS_OWNERSHIP_PEERS         = "rss.ownership.peers";
+    public static final String RSS_OWNERSHIP_SELF          = "rss.ownership.self";
+    public static final String RSS_OWNERSHIP_REFRESH_MS    = "rss.ownership.refreshMs";
+    public static final String RSS_OWNERSHIP_VIRTUAL_NODES = "rss.ownership.virtualNodes";
+    public static final String RSS_OWNED_FEED_ENTRY_POINT  = "/internal/feed";
+    public static final String RSS_FETCHED_AT_HEADER       = "X-RSS-Fetched-At";
+
+    // RSS feed parsing
+    public static final String RSS_PARSER           = "rss.parser";
+    public static final String RSS_PARSER_STAX      = "stax";
+    public static final String RSS_PARSER_DOM       = "dom";
+    public static final String RSS_PARSER_MAX_ITEMS = "rss.parser.maxItems";
 
     // Cassandra meta data
     public static final String CASSANDRA_HOST            = "cassandra.host";
@@ -59,5 +151,7 @@ public class RSSConstants {
 
     // Jetty
     public static final String JETTY_HTTP_PORT = "jetty.http.port";
+    public static final String JETTY_COMPRESSION_LEVEL     = "jetty.http.compressionLevel";
+    public static final String JETTY_COMPRESSION_MIN_BYTES = "jetty.http.compressionMinBytes";
     public static final String WEBAPPS_DIR     = "rss-edge/webapp";
 }
\ No newline at end of file
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.netty;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelDownstreamHandler;
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
+import org.jboss.netty.handler.codec.http.HttpContentCompressor;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpMessage;
+
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.Counter;
+import com.netflix.servo.monitor.MonitorConfig;
+
+/**
+ * Compresses the responses (gzip or deflate, from the request's
+ * Accept-Encoding) whose content is at least minBytes long. Chunked
+ * responses are always compressed, their length is not known upfront.
+ *
+ * Sits between the encoder and the pipelining handler, so that it sees the
+ * requests and the responses of a connection in the same order.
+ */
+public class HttpCompressionHandler extends HttpContentCompressor {
+	// JMX:  com.netflix.servo.COUNTER.MiddleTierRSS_*
+	private static final Counter uncompressedBytesCounter = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_nettyUncompressedBytesCounter").build());
+	private static final Counter compressedBytesCounter = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_nettyCompressedBytesCounter").build());
+
+	static {
+		DefaultMonitorRegistry.getInstance().register(uncompressedBytesCounter);
+		DefaultMonitorRegistry.getInstance().register(compressedBytesCounter);
+	}
+
+	private final int minBytes;
+
+	/**
+	 * @param compressionLevel 1 (fastest) to 9 (smallest)
+	 */
+	public HttpCompressionHandler(int compressionLevel, int minBytes) {
+		super(compressionLevel);
+		this.minBytes = minBytes;
+	}
+
+	@Override
+	protected EncoderEmbedder<ChannelBuffer> newContentEncoder(HttpMessage msg, String acceptEncoding) throws Exception {
+		if (!msg.isChunked() && msg.getContent().readableBytes() < minBytes) {
+			return null;
+		}
+
+		EncoderEmbedder<ChannelBuffer> encoder = super.newContentEncoder(msg, acceptEncoding);
+		if (encoder != null) {
+			// Caches keep the compressed and the plain response apart
+			msg.addHeader(HttpHeaders.Names.VARY, HttpHeaders.Names.ACCEPT_ENCODING);
+			// Written downstream from the last handler to the first: before and after the compression
+			encoder.getPipeline().addLast("uncompressedBytes", new ByteCounter(uncompressedBytesCounter));
+			encoder.getPipeline().addFirst("compressedBytes", new ByteCounter(compressedBytesCounter));
+		}
+		return encoder;
+	}
+
+	private static class ByteCounter extends SimpleChannelDownstreamHandler {
+		private final Counter counter;
+
+		ByteCounter(Counter counter) {
+			this.counter = counter;
+		}
+
+		@Override
+		public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+			if (e.getMessage() instanceof ChannelBuffer) {
+				counter.increment(((ChannelBuffer) e.getMessage()).readableBytes());
+			}
+			super.writeRequested(ctx, e);
+		}
+	}
+}
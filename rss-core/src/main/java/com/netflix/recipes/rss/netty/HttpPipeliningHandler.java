@@ -0,0 +1,152 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.netty;
+
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.DownstreamMessageEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.UpstreamMessageEvent;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.timeout.IdleStateAwareChannelHandler;
+import org.jboss.netty.handler.timeout.IdleStateEvent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HTTP/1.1 pipelining: the requests of a connection may be handled at the same
+ * time by the executor threads, but their responses must be written in the
+ * order the requests came in.
+ *
+ * Every request is numbered and passed up as a {@link SequencedHttpRequest}.
+ * The response to a request is written as {@link PipelinedWrite}s, which go
+ * through right away if all the earlier responses are written, and are held
+ * back otherwise. Reading from the connection is suspended while
+ * maxPipelinedRequests requests are waiting for their response.
+ *
+ * Also closes the connections that stay idle with no request in flight,
+ * on the events of an IdleStateHandler placed before it.
+ *
+ * Holds the state of one connection: a new instance is needed per pipeline.
+ */
+public class HttpPipeliningHandler extends IdleStateAwareChannelHandler {
+	private final int maxPipelinedRequests;
+
+	// Sequence of the next request read, and of the response being written
+	private int nextRequest;
+	private int nextResponse;
+
+	// Writes for the responses that are not next, by sequence
+	private final Map<Integer, List<MessageEvent>> pending = new HashMap<Integer, List<MessageEvent>>();
+
+	private boolean suspended;
+
+	public HttpPipeliningHandler(int maxPipelinedRequests) {
+		this.maxPipelinedRequests = maxPipelinedRequests;
+	}
+
+	@Override
+	public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+		if (!(e.getMessage() instanceof HttpRequest)) {
+			super.messageReceived(ctx, e);
+			return;
+		}
+
+		int sequence;
+		synchronized (this) {
+			sequence = nextRequest++;
+			if (!suspended && nextRequest - nextResponse >= maxPipelinedRequests) {
+				suspended = true;
+				ctx.getChannel().setReadable(false);
+			}
+		}
+		ctx.sendUpstream(new UpstreamMessageEvent(ctx.getChannel(),
+				new SequencedHttpRequest((HttpRequest) e.getMessage(), sequence), e.getRemoteAddress()));
+	}
+
+	@Override
+	public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+		if (!(e.getMessage() instanceof PipelinedWrite)) {
+			super.writeRequested(ctx, e);
+			return;
+		}
+
+		PipelinedWrite write = (PipelinedWrite) e.getMessage();
+		synchronized (this) {
+			if (write.getSequence() != nextResponse) {
+				List<MessageEvent> writes = pending.get(write.getSequence());
+				if (writes == null) {
+					writes = new ArrayList<MessageEvent>();
+					pending.put(write.getSequence(), writes);
+				}
+				writes.add(e);
+				return;
+			}
+
+			// Written while holding the lock, so that the writes of another thread cannot get ahead
+			send(ctx, e);
+			if (!write.isLast() || !write.isKeepAlive()) return;
+
+			// The response is complete, the held back writes of the next ones can go
+			while (true) {
+				nextResponse++;
+				List<MessageEvent> writes = pending.remove(nextResponse);
+				if (writes == null) break;
+
+				boolean complete = false;
+				for (MessageEvent held: writes) {
+					send(ctx, held);
+					PipelinedWrite heldWrite = (PipelinedWrite) held.getMessage();
+					if (heldWrite.isLast()) {
+						if (!heldWrite.isKeepAlive()) return;
+						complete = true;
+					}
+				}
+				if (!complete) break;
+			}
+
+			if (suspended && nextRequest - nextResponse < maxPipelinedRequests) {
+				suspended = false;
+				ctx.getChannel().setReadable(true);
+			}
+		}
+	}
+
+	/**
+	 * Passes the response or chunk on to the encoder, and closes the connection
+	 * after the last one if it is not kept alive
+	 */
+	private void send(ChannelHandlerContext ctx, MessageEvent e) {
+		PipelinedWrite write = (PipelinedWrite) e.getMessage();
+		ctx.sendDownstream(new DownstreamMessageEvent(ctx.getChannel(), e.getFuture(),
+				write.getMessage(), e.getRemoteAddress()));
+		if (write.isLast() && !write.isKeepAlive()) {
+			e.getFuture().addListener(ChannelFutureListener.CLOSE);
+		}
+	}
+
+	@Override
+	public void channelIdle(ChannelHandlerContext ctx, IdleStateEvent e) throws Exception {
+		synchronized (this) {
+			// A request taking longer than the timeout is not a dead connection
+			if (nextRequest != nextResponse) return;
+		}
+		ctx.getChannel().close();
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.netty;
+
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.Counter;
+import com.netflix.servo.monitor.MonitorConfig;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.execution.ChannelEventRunnable;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Sheds the requests that do not fit in the executor's queue: they are
+ * answered right away with a 503, from the I/O thread, instead of waiting
+ * behind a backlog the clients would time out on anyway.
+ *
+ * The other events (connection opened, closed...) are cheap and still
+ * expected by the handlers after the executor, so they run on the I/O thread.
+ */
+public class LoadSheddingPolicy implements RejectedExecutionHandler {
+
+	// JMX:  com.netflix.servo.COUNTER.MiddleTierRSS_*
+	private static final Counter rejectedRequestCounter = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_nettyRejectedRequestCounter").build());
+
+	static {
+		DefaultMonitorRegistry.getInstance().register(rejectedRequestCounter);
+	}
+
+	public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+		if (!executor.isShutdown()) {
+			shed(runnable);
+		}
+	}
+
+	/**
+	 * Answers the request of a rejected ChannelEventRunnable with a 503, or
+	 * runs it if it is not a request
+	 */
+	void shed(Runnable runnable) {
+		if (!(runnable instanceof ChannelEventRunnable)) {
+			throw new RejectedExecutionException("Executor is full");
+		}
+		ChannelEvent event = ((ChannelEventRunnable) runnable).getEvent();
+		Object message = event instanceof MessageEvent ? ((MessageEvent) event).getMessage() : null;
+		if (message instanceof SequencedHttpRequest) {
+			SequencedHttpRequest sequenced = (SequencedHttpRequest) message;
+			reject(event.getChannel(), sequenced.getRequest(), sequenced.getSequence());
+		} else if (message instanceof HttpRequest) {
+			reject(event.getChannel(), (HttpRequest) message, -1);
+		} else {
+			runnable.run();
+		}
+	}
+
+	private static void reject(Channel channel, HttpRequest request, int sequence) {
+		rejectedRequestCounter.increment();
+
+		boolean keepAlive = HttpHeaders.isKeepAlive(request);
+		HttpResponse response = new DefaultHttpResponse(request.getProtocolVersion(), HttpResponseStatus.SERVICE_UNAVAILABLE);
+		HttpHeaders.setContentLength(response, 0);
+		if (!keepAlive) {
+			response.setHeader(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.CLOSE);
+		} else if (!request.getProtocolVersion().isKeepAliveDefault()) {
+			response.setHeader(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.KEEP_ALIVE);
+		}
+
+		if (sequence >= 0) {
+			channel.write(new PipelinedWrite(sequence, response, true, keepAlive));
+		} else {
+			ChannelFuture future = channel.write(response);
+			if (!keepAlive) {
+				future.addListener(ChannelFutureListener.CLOSE);
+			}
+		}
+	}
+}
@@ -43,7 +43,11 @@ import org.jboss.netty.channel.*;
 import org.jboss.netty.channel.ChannelHandler.Sharable;
 import org.jboss.netty.handler.codec.http.*;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.URI;
 import java.util.ArrayList;
@@ -52,56 +56,280 @@ import java.util.Map;
 
 @Sharable
 public class NettyHandlerContainer extends SimpleChannelUpstreamHandler {
+	private static final Logger logger = LoggerFactory.getLogger(NettyHandlerContainer.class);
+
 	public static final String PROPERTY_BASE_URI = "com.sun.jersey.server.impl.container.netty.baseUri";
 
+	/**
+	 * Responses whose length is known and at most this many bytes are buffered
+	 * and written at once, the others are streamed
+	 */
+	public static final String PROPERTY_MAX_BUFFERED_BYTES = "com.netflix.recipes.rss.netty.maxBufferedBytes";
+	/**
+	 * Size of the chunks streamed responses are written in. A response that
+	 * ends within its first chunk is still written at once, with a Content-Length.
+	 */
+	public static final String PROPERTY_CHUNK_SIZE = "com.netflix.recipes.rss.netty.chunkSize";
+	/**
+	 * How long a streamed response waits for the client to read what was
+	 * already written, before the connection is closed
+	 */
+	public static final String PROPERTY_WRITE_TIMEOUT_MS = "com.netflix.recipes.rss.netty.writeTimeoutMs";
+
+	// Chunks a streamed response may have written but not yet flushed to the connection
+	private static final int MAX_UNWRITTEN_CHUNKS = 4;
+
 	private final WebApplication application;
 	private final String baseUri;
+	private final int maxBufferedBytes;
+	private final int chunkSize;
+	private final long writeTimeoutMs;
 
 	NettyHandlerContainer(WebApplication application, ResourceConfig resourceConfig) {
 		this.application = application;
 		this.baseUri = (String) resourceConfig.getProperty(PROPERTY_BASE_URI);
+		this.maxBufferedBytes = getIntProperty(resourceConfig, PROPERTY_MAX_BUFFERED_BYTES, 65536);
+		this.chunkSize = getIntProperty(resourceConfig, PROPERTY_CHUNK_SIZE, 8192);
+		this.writeTimeoutMs = getIntProperty(resourceConfig, PROPERTY_WRITE_TIMEOUT_MS, 30000);
+	}
+
+	private static int getIntProperty(ResourceConfig resourceConfig, String name, int defaultValue) {
+		Object value = resourceConfig.getProperty(name);
+		return value == null ? defaultValue : Integer.parseInt(value.toString());
 	}
 
-	private final static class Writer implements ContainerResponseWriter {
+	private final class Writer implements ContainerResponseWriter {
 		private final Channel channel;
+		private final HttpRequest request;
+		// Position of the request on its connection, or -1 if it is not pipelined
+		private final int sequence;
+		private boolean keepAlive;
 		private HttpResponse response;
+		private ResponseStream stream;
 
-		private Writer(Channel channel) {
+		private Writer(Channel channel, HttpRequest request, int sequence) {
 			this.channel = channel;
+			this.request = request;
+			this.sequence = sequence;
+			this.keepAlive = HttpHeaders.isKeepAlive(request);
 		}
 
 		public OutputStream writeStatusAndHeaders(long contentLength, ContainerResponse cResponse) throws IOException {
 
-			response = new DefaultHttpResponse(HttpVersion.HTTP_1_0, HttpResponseStatus.valueOf(cResponse.getStatus()));
+			response = new DefaultHttpResponse(request.getProtocolVersion(), HttpResponseStatus.valueOf(cResponse.getStatus()));
 			for (Map.Entry<String, List<Object>> e : cResponse.getHttpHeaders().entrySet()) {
 				List<String> values = new ArrayList<String>();
 				for (Object v : e.getValue())
 					values.add(ContainerResponse.getHeaderValue(v));
 				response.setHeader(e.getKey(), values);
 			}
-			ChannelBuffer buffer = ChannelBuffers.dynamicBuffer();
-			response.setContent(buffer);
-			return new ChannelBufferOutputStream(buffer);
+
+			if (contentLength >= 0 && contentLength <= maxBufferedBytes) {
+				ChannelBuffer buffer = ChannelBuffers.buffer((int) contentLength);
+				response.setContent(buffer);
+				return new ChannelBufferOutputStream(buffer);
+			}
+			stream = new ResponseStream(contentLength);
+			return stream;
 		}
 
 		public void finish() throws IOException {
-			// Streaming is not supported. Entire response will be written
-			// downstream once finish() is called.
-			channel.write(response).addListener(ChannelFutureListener.CLOSE);
+			if (stream != null) {
+				stream.finish();
+			} else {
+				writeResponse(response);
+			}
+		}
+
+		/**
+		 * Writes a complete response, then keeps the connection open for the next
+		 * request if the client asked for it
+		 */
+		private void writeResponse(HttpResponse response) {
+			HttpHeaders.setContentLength(response, response.getContent().readableBytes());
+			setConnection(response);
+			send(response, true);
+		}
+
+		private void setConnection(HttpResponse response) {
+			if (!keepAlive) {
+				response.setHeader(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.CLOSE);
+			} else if (!response.getProtocolVersion().isKeepAliveDefault()) {
+				response.setHeader(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.KEEP_ALIVE);
+			}
+		}
+
+		/**
+		 * @param last whether the message completes the response
+		 */
+		private ChannelFuture send(Object message, boolean last) {
+			if (sequence >= 0) {
+				return channel.write(new PipelinedWrite(sequence, message, last, keepAlive));
+			}
+			ChannelFuture future = channel.write(message);
+			if (last && !keepAlive) {
+				future.addListener(ChannelFutureListener.CLOSE);
+			}
+			return future;
+		}
+
+		/**
+		 * Answers a request that could not be handled, so that the responses to
+		 * the requests pipelined after it are not held back forever
+		 */
+		private void error() {
+			if (stream != null && stream.committed) {
+				// Part of the response is already written
+				channel.close();
+				return;
+			}
+			keepAlive = false;
+			writeResponse(new DefaultHttpResponse(request.getProtocolVersion(), HttpResponseStatus.INTERNAL_SERVER_ERROR));
+		}
+
+		/**
+		 * Writes the response while Jersey serializes the entity, in chunks of
+		 * chunkSize bytes: chunked transfer encoding when the length is unknown,
+		 * or the raw content after a Content-Length. HTTP/1.0 clients get the raw
+		 * content up to the end of the connection.
+		 *
+		 * Jersey is held back while the connection is not writable, or while
+		 * MAX_UNWRITTEN_CHUNKS chunks were not flushed yet (e.g. held back behind
+		 * an earlier pipelined response), so a response takes a bounded amount
+		 * of memory whatever its size.
+		 */
+		private final class ResponseStream extends OutputStream implements ChannelFutureListener {
+			private final long contentLength;
+			private ChannelBuffer chunk = ChannelBuffers.buffer(chunkSize);
+			private boolean committed;
+			// Without chunked transfer encoding the content is written as is
+			private boolean raw;
+			private int unwrittenChunks;
+
+			private ResponseStream(long contentLength) {
+				this.contentLength = contentLength;
+			}
+
+			@Override
+			public void write(int b) throws IOException {
+				if (!chunk.writable()) {
+					writeChunk();
+				}
+				chunk.writeByte(b);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				while (len > 0) {
+					if (!chunk.writable()) {
+						writeChunk();
+					}
+					int length = Math.min(len, chunk.writableBytes());
+					chunk.writeBytes(b, off, length);
+					off += length;
+					len -= length;
+				}
+			}
+
+			private void writeChunk() throws IOException {
+				if (!committed) {
+					commit();
+				}
+				awaitWritable();
+				synchronized (this) {
+					unwrittenChunks++;
+				}
+				send(raw ? chunk : new DefaultHttpChunk(chunk), false).addListener(this);
+				chunk = ChannelBuffers.buffer(chunkSize);
+			}
+
+			/**
+			 * Writes the status and headers, the content follows in chunks
+			 */
+			private void commit() {
+				committed = true;
+				if (contentLength >= 0) {
+					HttpHeaders.setContentLength(response, contentLength);
+					raw = true;
+				} else if (response.getProtocolVersion().isKeepAliveDefault()) {
+					response.setChunked(true);
+				} else {
+					keepAlive = false;
+					raw = true;
+				}
+				setConnection(response);
+				send(response, false);
+			}
+
+			private synchronized void awaitWritable() throws IOException {
+				long deadline = System.currentTimeMillis() + writeTimeoutMs;
+				while (!channel.isWritable() || unwrittenChunks >= MAX_UNWRITTEN_CHUNKS) {
+					if (!channel.isOpen()) {
+						throw new IOException("Connection closed");
+					}
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0) {
+						channel.close();
+						throw new IOException("Timed out writing the response");
+					}
+					try {
+						// Writability is polled, the chunks written notify
+						wait(Math.min(remaining, 100));
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException();
+					}
+				}
+			}
+
+			public synchronized void operationComplete(ChannelFuture future) {
+				unwrittenChunks--;
+				notifyAll();
+			}
+
+			private void finish() throws IOException {
+				if (!committed) {
+					// The whole content fit in the first chunk
+					response.setContent(chunk);
+					writeResponse(response);
+					return;
+				}
+				if (chunk.readable()) {
+					awaitWritable();
+					send(raw ? chunk : new DefaultHttpChunk(chunk), false);
+				}
+				send(raw ? ChannelBuffers.EMPTY_BUFFER : HttpChunk.LAST_CHUNK, true);
+			}
 		}
 	}
 
 	@Override
 	public void messageReceived(ChannelHandlerContext context, MessageEvent e) throws Exception {
-		HttpRequest request = (HttpRequest) e.getMessage();
-		String base = getBaseUri(request);
-		URI baseUri = new URI(base);
-		URI requestUri = new URI(base.substring(0, base.length() - 1) + request.getUri());
-		ContainerRequest cRequest = new ContainerRequest(application, request
-				.getMethod().getName(), baseUri, requestUri,
-				getHeaders(request), new ChannelBufferInputStream(
-						request.getContent()));
-		application.handleRequest(cRequest, new Writer(e.getChannel()));
+		HttpRequest request;
+		int sequence;
+		if (e.getMessage() instanceof SequencedHttpRequest) {
+			SequencedHttpRequest sequenced = (SequencedHttpRequest) e.getMessage();
+			request = sequenced.getRequest();
+			sequence = sequenced.getSequence();
+		} else {
+			request = (HttpRequest) e.getMessage();
+			sequence = -1;
+		}
+
+		Writer writer = new Writer(e.getChannel(), request, sequence);
+		try {
+			String base = getBaseUri(request);
+			URI baseUri = new URI(base);
+			URI requestUri = new URI(base.substring(0, base.length() - 1) + request.getUri());
+			ContainerRequest cRequest = new ContainerRequest(application, request
+					.getMethod().getName(), baseUri, requestUri,
+					getHeaders(request), new ChannelBufferInputStream(
+							request.getContent()));
+			application.handleRequest(cRequest, writer);
+		} catch (Exception exc) {
+			logger.error("Could not handle {} {}", new Object[] {request.getMethod(), request.getUri(), exc});
+			writer.error();
+		}
 	}
 
 	private String getBaseUri(HttpRequest request) {
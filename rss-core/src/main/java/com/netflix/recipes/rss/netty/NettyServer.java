@@ -18,6 +18,11 @@ package com.netflix.recipes.rss.netty;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Maps;
 import com.netflix.recipes.rss.util.DescriptiveThreadFactory;
+import com.netflix.recipes.rss.util.VirtualThreads;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.BasicGauge;
+import com.netflix.servo.monitor.Gauge;
+import com.netflix.servo.monitor.MonitorConfig;
 import org.jboss.netty.bootstrap.ServerBootstrap;
 import org.jboss.netty.channel.*;
 import org.jboss.netty.channel.group.ChannelGroup;
@@ -26,8 +31,12 @@ import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
 import org.jboss.netty.handler.codec.http.HttpRequestDecoder;
 import org.jboss.netty.handler.codec.http.HttpResponseEncoder;
 import org.jboss.netty.handler.execution.ExecutionHandler;
+import org.jboss.netty.handler.execution.OrderedMemoryAwareThreadPoolExecutor;
+import org.jboss.netty.handler.timeout.IdleStateHandler;
 import org.jboss.netty.logging.InternalLoggerFactory;
 import org.jboss.netty.logging.Slf4JLoggerFactory;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,7 +45,11 @@ import java.lang.Thread.UncaughtExceptionHandler;
 import java.net.InetSocketAddress;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -50,8 +63,36 @@ public final class NettyServer implements Closeable {
 
 	public static final int cpus = Runtime.getRuntime().availableProcessors();
 
+	/**
+	 * Requests run on a fixed pool with a bounded queue, and are answered
+	 * with a 503 when the queue is full
+	 */
+	public static final String EXECUTOR_BOUNDED = "bounded";
+	/**
+	 * Requests run on an OrderedMemoryAwareThreadPoolExecutor: the requests of
+	 * a connection run one at a time, and the I/O threads stop reading when
+	 * the queued requests take more than the memory limit, rather than shed them
+	 */
+	public static final String EXECUTOR_ORDERED = "ordered";
+	/**
+	 * Every request runs on its own virtual thread, up to maxConcurrentRequests
+	 * at once beyond which they get a 503. Needs Java 21, falls back to
+	 * EXECUTOR_BOUNDED on older JVMs.
+	 */
+	public static final String EXECUTOR_VIRTUAL = "virtual";
+
+	private static final long ORDERED_MAX_CHANNEL_MEMORY = 1024 * 1024;
+	private static final long ORDERED_MAX_TOTAL_MEMORY = 64 * 1024 * 1024;
+
 	private ChannelGroup channelGroup = new DefaultChannelGroup();
 
+	private Channel serverChannel;
+	private ChannelFactory channelFactory;
+	private PipelineFactory pipelineFactory;
+
+	// Times the idle connections out, if any
+	private Timer idleTimer;
+
 	static {
 		InternalLoggerFactory.setDefaultFactory(new Slf4JLoggerFactory());
 
@@ -67,11 +108,11 @@ public final class NettyServer implements Closeable {
 	}
 
 	public String getListenHost() {
-		return ((InetSocketAddress) channelGroup.find(1).getLocalAddress()).getHostName();
+		return ((InetSocketAddress) serverChannel.getLocalAddress()).getHostName();
 	}
 
 	public int getListenPort() {
-		return ((InetSocketAddress) channelGroup.find(1).getLocalAddress()).getPort();
+		return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
 	}
 
 	public void addChannel(Channel channel) {
@@ -91,11 +132,23 @@ public final class NettyServer implements Closeable {
 
 		private Map<String, ChannelHandler> handlers = Maps.newHashMap();
 
-		private ChannelHandler encoder = new HttpResponseEncoder();
-		private ChannelHandler decoder = new HttpRequestDecoder();
+		// The http codecs keep the state of their connection: by default new ones are made for every pipeline
+		private ChannelHandler encoder;
+		private ChannelHandler decoder;
 
 		private int numBossThreads = cpus; // IO boss threads
-		private int numWorkerThreads = cpus * 4; // worker threads
+		private int numWorkerThreads = cpus * 2; // IO worker threads, decoding and encoding
+
+		private String executorType = EXECUTOR_BOUNDED;
+		private int executorThreads = cpus * 4; // threads running the handlers
+		private int executorQueueSize = 512; // requests waiting for an executor thread
+		private int maxConcurrentRequests = 10000; // requests running on virtual threads
+
+		private int idleTimeoutSeconds = 60; // 0 keeps idle connections open
+		private int maxPipelinedRequests = 16; // per connection, 0 disables pipelining
+		private int maxInitialLineLength = 4096; // longer request lines get a TooLongFrameException
+		private int compressionLevel = -1; // gzip/deflate level, -1 disables compression
+		private int compressionMinBytes = 1024; // smaller responses are not compressed
 
 		public Builder host(String host) {
 			this.host = host;
@@ -133,12 +186,86 @@ public final class NettyServer implements Closeable {
 			return this;
 		}
 
+		/**
+		 * @param executorType EXECUTOR_BOUNDED, EXECUTOR_ORDERED or EXECUTOR_VIRTUAL
+		 */
+		public Builder executorType(String executorType) {
+			this.executorType = executorType;
+			return this;
+		}
+
+		public Builder executorThreads(int executorThreads) {
+			this.executorThreads = executorThreads;
+			return this;
+		}
+
+		/**
+		 * Requests beyond this many waiting for an executor thread are rejected
+		 * with a 503 (bounded executor only)
+		 */
+		public Builder executorQueueSize(int executorQueueSize) {
+			this.executorQueueSize = executorQueueSize;
+			return this;
+		}
+
+		/**
+		 * Requests beyond this many running at once are rejected with a 503
+		 * (virtual thread executor only)
+		 */
+		public Builder maxConcurrentRequests(int maxConcurrentRequests) {
+			this.maxConcurrentRequests = maxConcurrentRequests;
+			return this;
+		}
+
+		/**
+		 * Closes the keep-alive connections that were idle this long
+		 */
+		public Builder idleTimeoutSeconds(int idleTimeoutSeconds) {
+			this.idleTimeoutSeconds = idleTimeoutSeconds;
+			return this;
+		}
+
+		/**
+		 * Stops reading from a connection while this many requests wait for
+		 * their response
+		 */
+		public Builder maxPipelinedRequests(int maxPipelinedRequests) {
+			this.maxPipelinedRequests = maxPipelinedRequests;
+			return this;
+		}
+
+		/**
+		 * Longest request line (method, uri with its query string, version)
+		 */
+		public Builder maxInitialLineLength(int maxInitialLineLength) {
+			this.maxInitialLineLength = maxInitialLineLength;
+			return this;
+		}
+
+		/**
+		 * Compresses the responses of at least minBytes with gzip or deflate,
+		 * at this level (1 to 9, -1 disables compression)
+		 */
+		public Builder compression(int compressionLevel, int compressionMinBytes) {
+			this.compressionLevel = compressionLevel;
+			this.compressionMinBytes = compressionMinBytes;
+			return this;
+		}
+
 		/**
 		 * Builds and starts netty
 		 */
 		public NettyServer build() {
+			Timer idleTimer = idleTimeoutSeconds > 0 ? new HashedWheelTimer(
+					new DescriptiveThreadFactory("Idle-Timer")) : null;
+
+			ExecutorService executor = newExecutor(executorType,
+					executorThreads, executorQueueSize, maxConcurrentRequests);
+			registerMetrics(executor);
+
 			PipelineFactory factory = new PipelineFactory(handlers, encoder,
-					decoder, numBossThreads);
+					decoder, executor, idleTimer, idleTimeoutSeconds,
+					maxPipelinedRequests, maxInitialLineLength, compressionLevel, compressionMinBytes);
 
 			ThreadPoolExecutor bossPool = new ThreadPoolExecutor(
 					numBossThreads, numBossThreads, 60, TimeUnit.SECONDS,
@@ -164,15 +291,68 @@ public final class NettyServer implements Closeable {
 
 			NettyServer server = new NettyServer();
 			server.addChannel(serverChannel);
+			server.serverChannel = serverChannel;
+			server.channelFactory = nioServer;
+			server.pipelineFactory = factory;
+			server.idleTimer = idleTimer;
 
 			return server;
 		}
 	}
 
+	/**
+	 * @return the executor the handlers after the codec run on
+	 */
+	static ExecutorService newExecutor(String type, int threads, int queueSize, int maxConcurrentRequests) {
+		ThreadFactory threadFactory = new DescriptiveThreadFactory("Executor-Thread");
+		if (EXECUTOR_VIRTUAL.equals(type)) {
+			ExecutorService virtualThreads = VirtualThreads.newThreadPerTaskExecutor("Executor-VirtualThread");
+			if (virtualThreads != null) {
+				return new VirtualThreadExecutor(virtualThreads, maxConcurrentRequests);
+			}
+			logger.warn("Virtual threads are not available, falling back to the {} executor", EXECUTOR_BOUNDED);
+			type = EXECUTOR_BOUNDED;
+		}
+		if (EXECUTOR_ORDERED.equals(type)) {
+			return new OrderedMemoryAwareThreadPoolExecutor(threads,
+					ORDERED_MAX_CHANNEL_MEMORY, ORDERED_MAX_TOTAL_MEMORY, 60,
+					TimeUnit.SECONDS, threadFactory);
+		}
+		if (!EXECUTOR_BOUNDED.equals(type)) {
+			throw new IllegalArgumentException("Unknown executor type " + type);
+		}
+		return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(queueSize), threadFactory,
+				new LoadSheddingPolicy());
+	}
+
+	private static void registerMetrics(final ExecutorService executor) {
+		// JMX:  com.netflix.servo.MiddleTierRSS_*
+		Gauge<Integer> queueDepthGauge = new BasicGauge<Integer>(MonitorConfig.builder("MiddleTierRSS_nettyExecutorQueueDepth").build(),
+				new Callable<Integer>() {
+					public Integer call() {
+						// Virtual threads do not queue
+						return executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executor).getQueue().size() : 0;
+					}
+				});
+		Gauge<Integer> activeThreadsGauge = new BasicGauge<Integer>(MonitorConfig.builder("MiddleTierRSS_nettyExecutorActiveThreads").build(),
+				new Callable<Integer>() {
+					public Integer call() {
+						return executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executor).getActiveCount()
+								: ((VirtualThreadExecutor) executor).getActiveCount();
+					}
+				});
+		DefaultMonitorRegistry.getInstance().register(queueDepthGauge);
+		DefaultMonitorRegistry.getInstance().register(activeThreadsGauge);
+	}
+
 	public static class PipelineFactory implements ChannelPipelineFactory {
 		static final String CHANNEL_HANDLERS = "channelHandlers";
 		static final String ENCODER_NAME = "encoder";
 		static final String DECODER_NAME = "decoder";
+		static final String IDLE_NAME = "idleHandler";
+		static final String PIPELINING_NAME = "pipeliningHandler";
+		static final String COMPRESSION_NAME = "compressionHandler";
 
 		final ChannelHandler executionHandler;
 		final Map<String, ChannelHandler> handlers;
@@ -180,30 +360,62 @@ public final class NettyServer implements Closeable {
 		final ChannelHandler encoder;
 		final ChannelHandler decoder;
 
+		final Timer idleTimer;
+		final int idleTimeoutSeconds;
+		final int maxPipelinedRequests;
+		final int maxInitialLineLength;
+		final int compressionLevel;
+		final int compressionMinBytes;
+
 		public PipelineFactory(Map<String, ChannelHandler> handlers,
 				ChannelHandler encoder, ChannelHandler decoder, int numThreads) {
 
+			this(handlers, encoder, decoder, numThreads != 0 ? newExecutor(
+					EXECUTOR_BOUNDED, numThreads, 512, 0) : null, null, 0, 0, 4096, -1, 0);
+		}
+
+		/**
+		 * @param executor runs the handlers, or null to run them on the I/O threads
+		 * @param compressionLevel -1 to not compress the responses
+		 */
+		public PipelineFactory(Map<String, ChannelHandler> handlers,
+				ChannelHandler encoder, ChannelHandler decoder, Executor executor,
+				Timer idleTimer, int idleTimeoutSeconds, int maxPipelinedRequests,
+				int maxInitialLineLength, int compressionLevel, int compressionMinBytes) {
+
 			this.handlers = handlers;
 			this.encoder = encoder;
 			this.decoder = decoder;
-
-			if (numThreads != 0) {
-				ThreadPoolExecutor executorThreadPool = new ThreadPoolExecutor(
-						NettyServer.cpus, NettyServer.cpus * 4, 60,
-						TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
-						new DescriptiveThreadFactory("Executor-Thread"));
-
-				this.executionHandler = new ExecutionHandler(executorThreadPool);
-			} else {
-				this.executionHandler = null;
-			}
+			this.idleTimer = idleTimer;
+			this.idleTimeoutSeconds = idleTimeoutSeconds;
+			this.maxPipelinedRequests = maxPipelinedRequests;
+			this.maxInitialLineLength = maxInitialLineLength;
+			this.compressionLevel = compressionLevel;
+			this.compressionMinBytes = compressionMinBytes;
+
+			this.executionHandler = executor != null ? new ExecutionHandler(executor) : null;
 		}
 
+		/**
+		 * Requests are decoded and numbered on the I/O thread of their connection,
+		 * so that they stay in order, before being handed to the executor
+		 */
 		public ChannelPipeline getPipeline() throws Exception {
 			ChannelPipeline pipeline = Channels.pipeline();
-			pipeline.addLast("executionHandler", executionHandler);
-			pipeline.addLast(DECODER_NAME, decoder);
-			pipeline.addLast(ENCODER_NAME, encoder);
+			if (idleTimer != null) {
+				pipeline.addLast(IDLE_NAME, new IdleStateHandler(idleTimer, 0, 0, idleTimeoutSeconds));
+			}
+			pipeline.addLast(DECODER_NAME, decoder != null ? decoder : new HttpRequestDecoder(maxInitialLineLength, 8192, 8192));
+			pipeline.addLast(ENCODER_NAME, encoder != null ? encoder : new HttpResponseEncoder());
+			if (compressionLevel >= 0) {
+				pipeline.addLast(COMPRESSION_NAME, new HttpCompressionHandler(compressionLevel, compressionMinBytes));
+			}
+			if (maxPipelinedRequests > 0 || idleTimer != null) {
+				pipeline.addLast(PIPELINING_NAME, new HttpPipeliningHandler(Math.max(maxPipelinedRequests, 1)));
+			}
+			if (executionHandler != null) {
+				pipeline.addLast("executionHandler", executionHandler);
+			}
 
 			for (Entry<String, ChannelHandler> handler : handlers.entrySet()) {
 				pipeline.addLast(handler.getKey(), handler.getValue());
@@ -234,7 +446,16 @@ public final class NettyServer implements Closeable {
 	}
 
 	public void close() {
-		channelGroup.close();
+		channelGroup.close().awaitUninterruptibly();
+		if (idleTimer != null) {
+			idleTimer.stop();
+		}
+		if (pipelineFactory != null && pipelineFactory.executionHandler instanceof ExecutionHandler) {
+			((ExecutionHandler) pipelineFactory.executionHandler).releaseExternalResources();
+		}
+		if (channelFactory != null) {
+			channelFactory.releaseExternalResources();
+		}
 	}
 
 	private NettyServer() {
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.netty;
+
+/**
+ * Part of the response to a {@link SequencedHttpRequest}: the HttpResponse
+ * or one of its chunks. {@link HttpPipeliningHandler} holds it back until
+ * the responses to the earlier requests of the connection are written.
+ */
+public class PipelinedWrite {
+	private final int sequence;
+	private final Object message;
+	private final boolean last;
+	private final boolean keepAlive;
+
+	/**
+	 * @param last      whether this completes the response
+	 * @param keepAlive whether the connection stays open after the response
+	 */
+	public PipelinedWrite(int sequence, Object message, boolean last, boolean keepAlive) {
+		this.sequence = sequence;
+		this.message = message;
+		this.last = last;
+		this.keepAlive = keepAlive;
+	}
+
+	public int getSequence() {
+		return sequence;
+	}
+
+	public Object getMessage() {
+		return message;
+	}
+
+	public boolean isLast() {
+		return last;
+	}
+
+	public boolean isKeepAlive() {
+		return keepAlive;
+	}
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.netty;
+
+import org.jboss.netty.handler.codec.http.HttpRequest;
+
+/**
+ * A request along with its position among the requests of its connection,
+ * set by {@link HttpPipeliningHandler}
+ */
+public class SequencedHttpRequest {
+	private final HttpRequest request;
+	private final int sequence;
+
+	public SequencedHttpRequest(HttpRequest request, int sequence) {
+		this.request = request;
+		this.sequence = sequence;
+	}
+
+	public HttpRequest getRequest() {
+		return request;
+	}
+
+	public int getSequence() {
+		return sequence;
+	}
+}
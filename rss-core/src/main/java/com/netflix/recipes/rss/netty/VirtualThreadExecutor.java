@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.netty;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs every request on its own virtual thread, so that requests blocked on
+ * I/O do not hold a platform thread and concurrency is not capped by a pool
+ * size. There is no queue: past maxConcurrentRequests running requests, new
+ * ones are shed like a full queue in the bounded executor.
+ */
+public class VirtualThreadExecutor extends AbstractExecutorService {
+	private final ExecutorService delegate;
+	private final int maxConcurrentRequests;
+	private final Semaphore permits;
+	private final LoadSheddingPolicy loadSheddingPolicy = new LoadSheddingPolicy();
+
+	/**
+	 * @param delegate starts a virtual thread per task
+	 */
+	public VirtualThreadExecutor(ExecutorService delegate, int maxConcurrentRequests) {
+		this.delegate = delegate;
+		this.maxConcurrentRequests = maxConcurrentRequests;
+		this.permits = new Semaphore(maxConcurrentRequests);
+	}
+
+	public void execute(final Runnable runnable) {
+		if (!permits.tryAcquire()) {
+			if (!delegate.isShutdown()) {
+				loadSheddingPolicy.shed(runnable);
+			}
+			return;
+		}
+		try {
+			delegate.execute(new Runnable() {
+				public void run() {
+					try {
+						runnable.run();
+					} finally {
+						permits.release();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the requests running
+	 */
+	public int getActiveCount() {
+		return maxConcurrentRequests - permits.availablePermits();
+	}
+
+	public void shutdown() {
+		delegate.shutdown();
+	}
+
+	public List<Runnable> shutdownNow() {
+		return delegate.shutdownNow();
+	}
+
+	public boolean isShutdown() {
+		return delegate.isShutdown();
+	}
+
+	public boolean isTerminated() {
+		return delegate.isTerminated();
+	}
+
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return delegate.awaitTermination(timeout, unit);
+	}
+}
@@ -18,8 +18,11 @@ package com.netflix.recipes.rss.server;
 import java.io.Closeable;
 
 import org.apache.jasper.servlet.JspServlet;
+import org.mortbay.jetty.Handler;
 import org.mortbay.jetty.Server;
+import org.mortbay.jetty.nio.SelectChannelConnector;
 import org.mortbay.jetty.servlet.Context;
+import org.mortbay.jetty.servlet.FilterHolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -65,10 +68,23 @@ public class BaseJettyServer implements Closeable {
         context.setClassLoader(Thread.currentThread().getContextClassLoader());
         context.addServlet(JspServlet.class, "*.jsp");
 
+        // Compress the pages, -1 disables it (hystrix.stream is streamed, it is never compressed)
+        final int compressionLevel = ConfigurationManager.getConfigInstance().getInt(RSSConstants.JETTY_COMPRESSION_LEVEL, 6);
+        if (compressionLevel >= 0) {
+            final int compressionMinBytes = ConfigurationManager.getConfigInstance().getInt(RSSConstants.JETTY_COMPRESSION_MIN_BYTES, 1024);
+            context.addFilter(new FilterHolder(new CompressionFilter(compressionLevel, compressionMinBytes)), "*.jsp", Handler.DEFAULT);
+        }
+
         // Enable hystrix.stream
         context.addServlet(HystrixMetricsStreamServlet.class, RSSConstants.HYSTRIX_STREAM_PATH);
 
-        final Server server = new Server(port);
+        addServlets(context);
+
+        // Non-blocking connector: requests waiting with a continuation do not hold a thread
+        final SelectChannelConnector connector = new SelectChannelConnector();
+        connector.setPort(port);
+        final Server server = new Server();
+        server.addConnector(connector);
         server.setHandler(context);
 
         try {
@@ -79,6 +95,12 @@ public class BaseJettyServer implements Closeable {
         }
     }
 
+    /**
+     * Adds the servlets and filters of the application, besides the JSPs and hystrix.stream
+     */
+    protected void addServlets(Context context) {
+    }
+
     public void close() {
         try {
             jettyServer.stop();
@@ -27,6 +27,7 @@ import com.netflix.recipes.rss.netty.NettyHandlerContainer;
 import com.netflix.recipes.rss.netty.NettyServer;
 import com.sun.jersey.api.container.ContainerFactory;
 import com.sun.jersey.api.core.PackagesResourceConfig;
+import com.sun.jersey.api.core.ResourceConfig;
 
 /**
  * @author Chris Fregly (chris@fregly.com)
@@ -60,7 +61,17 @@ public class BaseNettyServer implements Closeable {
         this.host = ConfigurationManager.getConfigInstance().getString("netty.http.host", "not-found-in-configuration");
         this.port = ConfigurationManager.getConfigInstance().getInt("netty.http.port", Integer.MIN_VALUE);
 
-        final PackagesResourceConfig rcf = new PackagesResourceConfig(ConfigurationManager.getConfigInstance().getString("jersey.resources.package","not-found-in-configuration"));
+        // Comma separated packages
+        String[] packages = ConfigurationManager.getConfigInstance().getStringArray("jersey.resources.package");
+        final PackagesResourceConfig rcf = new PackagesResourceConfig(packages.length > 0 ? packages : new String[] {"not-found-in-configuration"});
+        // The WADL generator needs the JAXB implementation of the JDK, which Java 11+ does not have
+        rcf.getFeatures().put(ResourceConfig.FEATURE_DISABLE_WADL, true);
+        rcf.getProperties().put(NettyHandlerContainer.PROPERTY_MAX_BUFFERED_BYTES,
+                ConfigurationManager.getConfigInstance().getInt("netty.http.maxBufferedBytes", 65536));
+        rcf.getProperties().put(NettyHandlerContainer.PROPERTY_CHUNK_SIZE,
+                ConfigurationManager.getConfigInstance().getInt("netty.http.chunkSize", 8192));
+        rcf.getProperties().put(NettyHandlerContainer.PROPERTY_WRITE_TIMEOUT_MS,
+                ConfigurationManager.getConfigInstance().getInt("netty.http.writeTimeoutMs", 30000));
 
         nettyServer = NettyServer
                 .builder()
@@ -71,7 +82,17 @@ public class BaseNettyServer implements Closeable {
                         ContainerFactory.createContainer(
                                 NettyHandlerContainer.class, rcf))
                                 .numBossThreads(NettyServer.cpus)
-                                .numWorkerThreads(NettyServer.cpus * 4).build();
+                                .numWorkerThreads(ConfigurationManager.getConfigInstance().getInt("netty.http.workerThreads", NettyServer.cpus * 2))
+                                .executorType(ConfigurationManager.getConfigInstance().getString("netty.executor.type", NettyServer.EXECUTOR_BOUNDED))
+                                .executorThreads(ConfigurationManager.getConfigInstance().getInt("netty.executor.threads", NettyServer.cpus * 4))
+                                .executorQueueSize(ConfigurationManager.getConfigInstance().getInt("netty.executor.queueSize", 512))
+                                .maxConcurrentRequests(ConfigurationManager.getConfigInstance().getInt("netty.executor.maxConcurrentRequests", 10000))
+                                .idleTimeoutSeconds(ConfigurationManager.getConfigInstance().getInt("netty.http.idleTimeoutSeconds", 60))
+                                .maxPipelinedRequests(ConfigurationManager.getConfigInstance().getInt("netty.http.maxPipelinedRequests", 16))
+                                .maxInitialLineLength(ConfigurationManager.getConfigInstance().getInt("netty.http.maxInitialLineLength", 16384))
+                                .compression(ConfigurationManager.getConfigInstance().getInt("netty.http.compressionLevel", 6),
+                                        ConfigurationManager.getConfigInstance().getInt("netty.http.compressionMinBytes", 1024))
+                                .build();
         try {
             karyonServer.start();
         } catch (Exception exc) {
@@ -0,0 +1,371 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.server;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.Counter;
+import com.netflix.servo.monitor.MonitorConfig;
+
+/**
+ * Compresses the responses (gzip or deflate, from the request's
+ * Accept-Encoding) of at least minBytes. The first minBytes of a response
+ * are buffered to find out, the rest is compressed as it is written.
+ * Responses that were already committed, encoded, or are media are left alone.
+ */
+public class CompressionFilter implements Filter {
+    private static final String GZIP    = "gzip";
+    private static final String DEFLATE = "deflate";
+
+    // JMX:  com.netflix.servo.COUNTER.EdgeRSS_*
+    private static final Counter uncompressedBytesCounter = new BasicCounter(MonitorConfig.builder("EdgeRSS_jettyUncompressedBytesCounter").build());
+    private static final Counter compressedBytesCounter   = new BasicCounter(MonitorConfig.builder("EdgeRSS_jettyCompressedBytesCounter").build());
+
+    static {
+        DefaultMonitorRegistry.getInstance().register(uncompressedBytesCounter);
+        DefaultMonitorRegistry.getInstance().register(compressedBytesCounter);
+    }
+
+    private final int compressionLevel;
+    private final int minBytes;
+
+    /**
+     * @param compressionLevel 1 (fastest) to 9 (smallest)
+     */
+    public CompressionFilter(int compressionLevel, int minBytes) {
+        this.compressionLevel = compressionLevel;
+        this.minBytes = minBytes;
+    }
+
+    public void init(FilterConfig filterConfig) {
+    }
+
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if (!(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        String encoding = negotiate(httpRequest.getHeader("Accept-Encoding"));
+        if (encoding == null || "HEAD".equals(httpRequest.getMethod())) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        // Set, not added: a request resumed from a continuation goes through the filter again
+        httpResponse.setHeader("Vary", "Accept-Encoding");
+        CompressingResponse compressingResponse = new CompressingResponse(httpResponse, encoding);
+        try {
+            chain.doFilter(request, compressingResponse);
+            compressingResponse.finish();
+        } finally {
+            compressingResponse.end();
+        }
+    }
+
+    public void destroy() {
+    }
+
+    /**
+     * @return gzip or deflate, whichever is accepted (gzip first), or null
+     */
+    static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) return null;
+
+        boolean deflate = false;
+        for (String coding: acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            String name = parts[0].trim().toLowerCase();
+            if (isRefused(parts)) continue;
+            if (GZIP.equals(name) || "x-gzip".equals(name) || "*".equals(name)) return GZIP;
+            if (DEFLATE.equals(name)) deflate = true;
+        }
+        return deflate ? DEFLATE : null;
+    }
+
+    private static boolean isRefused(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Float.parseFloat(parameter.substring(2)) <= 0;
+                } catch (NumberFormatException e) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isCompressible(HttpServletResponse response) {
+        if (response.isCommitted() || response.containsHeader("Content-Encoding")) return false;
+        String contentType = response.getContentType();
+        if (contentType == null) return true;
+        contentType = contentType.toLowerCase();
+        return !contentType.startsWith("image/") && !contentType.startsWith("audio/")
+                && !contentType.startsWith("video/") && !contentType.contains("zip");
+    }
+
+    private class CompressingResponse extends HttpServletResponseWrapper {
+        private final String encoding;
+        private CompressingStream stream;
+        private PrintWriter writer;
+        private int contentLength = -1;
+
+        CompressingResponse(HttpServletResponse response, String encoding) {
+            super(response);
+            this.encoding = encoding;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (writer != null) throw new IllegalStateException("getWriter() was called");
+            return getStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                if (stream != null) throw new IllegalStateException("getOutputStream() was called");
+                writer = new PrintWriter(new OutputStreamWriter(getStream(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        private CompressingStream getStream() {
+            if (stream == null) {
+                stream = new CompressingStream(this);
+            }
+            return stream;
+        }
+
+        // The length changes if the response is compressed, it is only set if it is not
+
+        @Override
+        public void setContentLength(int length) {
+            contentLength = length;
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if ("Content-Length".equalsIgnoreCase(name)) {
+                contentLength = Integer.parseInt(value.trim());
+            } else {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if ("Content-Length".equalsIgnoreCase(name)) {
+                contentLength = Integer.parseInt(value.trim());
+            } else {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public void setIntHeader(String name, int value) {
+            if ("Content-Length".equalsIgnoreCase(name)) {
+                contentLength = value;
+            } else {
+                super.setIntHeader(name, value);
+            }
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) writer.flush();
+            if (stream != null) stream.flush();
+            if (stream == null || stream.isDecided()) super.flushBuffer();
+        }
+
+        @Override
+        public void resetBuffer() {
+            super.resetBuffer();
+            if (stream != null) stream.resetBuffer();
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            if (stream != null) stream.resetBuffer();
+            contentLength = -1;
+        }
+
+        void finish() throws IOException {
+            if (writer != null) writer.flush();
+            if (stream != null) {
+                stream.finish();
+            } else if (contentLength >= 0 && !isCommitted()) {
+                super.setContentLength(contentLength);
+            }
+        }
+
+        /**
+         * Releases the native memory of the compressor, even if the response did not finish
+         */
+        void end() {
+            if (stream != null) stream.end();
+        }
+    }
+
+    /**
+     * Buffers up to minBytes, then either compresses or writes through
+     */
+    private class CompressingStream extends ServletOutputStream {
+        private final CompressingResponse response;
+        private byte[] buffer = new byte[Math.max(minBytes, 1)];
+        private int buffered;
+
+        private OutputStream out;
+        private CountingStream compressed;
+        private DeflaterOutputStream compressor;
+        private Deflater deflater;
+        private long uncompressedBytes;
+
+        CompressingStream(CompressingResponse response) {
+            this.response = response;
+        }
+
+        boolean isDecided() {
+            return out != null;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (out == null) {
+                if (buffered + len < minBytes) {
+                    System.arraycopy(b, off, buffer, buffered, len);
+                    buffered += len;
+                    return;
+                }
+                decide(true);
+            }
+            if (compressor != null) uncompressedBytes += len;
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // Until decided, a flush would commit the response
+            if (out != null) out.flush();
+        }
+
+        void resetBuffer() {
+            if (out == null) buffered = 0;
+        }
+
+        void finish() throws IOException {
+            if (out == null) decide(false);
+            if (compressor == null) {
+                out.flush();
+                return;
+            }
+
+            compressor.finish();
+            compressor.flush();
+            uncompressedBytesCounter.increment(uncompressedBytes);
+            compressedBytesCounter.increment(compressed.count);
+        }
+
+        void end() {
+            if (deflater != null) deflater.end();
+        }
+
+        private void decide(boolean compress) throws IOException {
+            HttpServletResponse wrapped = (HttpServletResponse) response.getResponse();
+            if (compress && isCompressible(wrapped)) {
+                wrapped.setHeader("Content-Encoding", response.encoding);
+                compressed = new CountingStream(wrapped.getOutputStream());
+                if (GZIP.equals(response.encoding)) {
+                    compressor = new GZIPOutputStream(compressed, 8192) {
+                        {
+                            def.setLevel(compressionLevel);
+                            // Its finish() does not release the deflater it created, end() does
+                            deflater = def;
+                        }
+                    };
+                } else {
+                    deflater = new Deflater(compressionLevel);
+                    compressor = new DeflaterOutputStream(compressed, deflater, 8192);
+                }
+                out = compressor;
+            } else {
+                if (!wrapped.isCommitted()) {
+                    if (!compress) {
+                        wrapped.setContentLength(buffered);
+                    } else if (response.contentLength >= 0) {
+                        wrapped.setContentLength(response.contentLength);
+                    }
+                }
+                out = wrapped.getOutputStream();
+            }
+
+            if (compressor != null) uncompressedBytes += buffered;
+            out.write(buffer, 0, buffered);
+            buffer = null;
+        }
+    }
+
+    private static class CountingStream extends FilterOutputStream {
+        long count;
+
+        CountingStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Reads the encoding written by {@link BinaryWriter}
+ */
+public class BinaryReader {
+	private static final int BUFFER_SIZE = 8192;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final InputStream in;
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	private int position;
+	private int limit;
+
+	public BinaryReader(InputStream in) {
+		this.in = in;
+	}
+
+	public int readByte() throws IOException {
+		if (position == limit) fill(1);
+		return buffer[position++] & 0xFF;
+	}
+
+	public int readVarInt() throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = readByte();
+			value |= (b & 0x7F) << shift;
+			if (b < 0x80) return value;
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	/**
+	 * @return size of a list, or -1 for null
+	 */
+	public int readSize() throws IOException {
+		return readVarInt() - 1;
+	}
+
+	public String readString() throws IOException {
+		int length = readVarInt() - 1;
+		if (length < 0) return null;
+
+		if (limit - position < length) {
+			if (length > buffer.length) {
+				byte[] larger = new byte[Math.max(length, buffer.length * 2)];
+				System.arraycopy(buffer, position, larger, 0, limit - position);
+				limit -= position;
+				position = 0;
+				buffer = larger;
+			}
+			fill(length);
+		}
+		String value = new String(buffer, position, length, UTF_8);
+		position += length;
+		return value;
+	}
+
+	/**
+	 * Makes at least count bytes available from position
+	 */
+	private void fill(int count) throws IOException {
+		if (buffer.length - position < count) {
+			System.arraycopy(buffer, position, buffer, 0, limit - position);
+			limit -= position;
+			position = 0;
+		}
+		while (limit - position < count) {
+			int read = in.read(buffer, limit, buffer.length - limit);
+			if (read < 0) throw new EOFException();
+			limit += read;
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the compact binary encoding read by {@link BinaryReader}:
+ * unsigned ints as varints (7 bits per byte, low bits first) and strings
+ * as their UTF-8 length + 1 (0 for null) followed by the UTF-8 bytes.
+ * Nullable lists are written as their size + 1 (0 for null) with {@link #writeSize(int)}.
+ *
+ * Buffered, flush() before handing the stream over.
+ */
+public class BinaryWriter {
+	private static final int BUFFER_SIZE = 8192;
+
+	private final OutputStream out;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int position;
+
+	public BinaryWriter(OutputStream out) {
+		this.out = out;
+	}
+
+	public void writeByte(int value) throws IOException {
+		if (position == buffer.length) flushBuffer();
+		buffer[position++] = (byte) value;
+	}
+
+	public void writeVarInt(int value) throws IOException {
+		if (value < 0) throw new IllegalArgumentException("Negative varint: " + value);
+		if (buffer.length - position < 5) flushBuffer();
+		while (value > 0x7F) {
+			buffer[position++] = (byte) (value & 0x7F | 0x80);
+			value >>>= 7;
+		}
+		buffer[position++] = (byte) value;
+	}
+
+	/**
+	 * @param size size of a list, or -1 for null
+	 */
+	public void writeSize(int size) throws IOException {
+		writeVarInt(size + 1);
+	}
+
+	public void writeString(String value) throws IOException {
+		if (value == null) {
+			writeVarInt(0);
+			return;
+		}
+
+		int length = value.length();
+		int utf8Length = utf8Length(value);
+		writeVarInt(utf8Length + 1);
+		if (utf8Length == length) {
+			// ASCII, by far the common case
+			for (int i = 0; i < length; ) {
+				if (position == buffer.length) flushBuffer();
+				int end = Math.min(length, i + buffer.length - position);
+				for (; i < end; i++) {
+					buffer[position++] = (byte) value.charAt(i);
+				}
+			}
+			return;
+		}
+
+		for (int i = 0; i < length; i++) {
+			if (buffer.length - position < 4) flushBuffer();
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				buffer[position++] = (byte) c;
+			} else if (c < 0x800) {
+				buffer[position++] = (byte) (0xC0 | c >> 6);
+				buffer[position++] = (byte) (0x80 | c & 0x3F);
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				buffer[position++] = (byte) (0xF0 | codePoint >> 18);
+				buffer[position++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+				buffer[position++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+				buffer[position++] = (byte) (0x80 | codePoint & 0x3F);
+			} else {
+				if (isSurrogate(c)) {
+					// Unpaired, encoded as U+FFFD
+					c = '\uFFFD';
+				}
+				buffer[position++] = (byte) (0xE0 | c >> 12);
+				buffer[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+				buffer[position++] = (byte) (0x80 | c & 0x3F);
+			}
+		}
+	}
+
+	public void flush() throws IOException {
+		flushBuffer();
+		out.flush();
+	}
+
+	private void flushBuffer() throws IOException {
+		if (position > 0) {
+			out.write(buffer, 0, position);
+			position = 0;
+		}
+	}
+
+	private static boolean isSurrogate(char c) {
+		return c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE;
+	}
+
+	private static int utf8Length(String value) {
+		int length = value.length();
+		int utf8Length = length;
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) continue;
+			if (c < 0x800) {
+				utf8Length += 1;
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+				// 4 bytes for 2 chars
+				utf8Length += 2;
+				i++;
+			} else {
+				utf8Length += 2;
+			}
+		}
+		return utf8Length;
+	}
+}
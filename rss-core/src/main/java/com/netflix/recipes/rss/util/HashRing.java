@@ -0,0 +1,145 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Consistent hash ring: every node is placed at virtualNodes points of the
+ * ring (hashes of its toString()), and a key belongs to the first node at or
+ * after the hash of the key. A node joining or leaving only moves the keys
+ * around its own points, about 1/n of them.
+ *
+ * Immutable, build another one when the nodes change.
+ */
+public class HashRing<T> {
+	private static final HashFunction hashFunction = Hashing.murmur3_32();
+
+	private final List<T> nodes;
+	// Sorted points, and the node at each
+	private final int[] points;
+	private final Object[] owners;
+
+	public HashRing(Collection<? extends T> nodes, int virtualNodes) {
+		this.nodes = Collections.unmodifiableList(new ArrayList<T>(nodes));
+		int size = this.nodes.size() * virtualNodes;
+		long[] entries = new long[size];
+		int i = 0;
+		for (int n = 0; n < this.nodes.size(); n++) {
+			String name = this.nodes.get(n).toString();
+			for (int v = 0; v < virtualNodes; v++) {
+				// Point in the high bits, node in the low ones: sorting sorts the points
+				entries[i++] = ((long) hash(name + "#" + v) << 32) | n;
+			}
+		}
+		Arrays.sort(entries);
+		points = new int[size];
+		owners = new Object[size];
+		for (i = 0; i < size; i++) {
+			points[i] = (int) (entries[i] >> 32);
+			owners[i] = this.nodes.get((int) entries[i]);
+		}
+	}
+
+	public List<T> getNodes() {
+		return nodes;
+	}
+
+	public boolean isEmpty() {
+		return nodes.isEmpty();
+	}
+
+	/**
+	 * @return the node the key belongs to, or null if there is none
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(String key) {
+		if (points.length == 0) return null;
+		return (T) owners[indexOf(key)];
+	}
+
+	/**
+	 * @return the nodes in the order the key falls over to them: its own
+	 * first, then the next ones around the ring, each once
+	 */
+	public Iterable<T> walk(final String key) {
+		return new Iterable<T>() {
+			public Iterator<T> iterator() {
+				return new Walk(points.length == 0 ? 0 : indexOf(key));
+			}
+		};
+	}
+
+	private int indexOf(String key) {
+		int i = Arrays.binarySearch(points, hash(key));
+		if (i < 0) i = -i - 1;
+		return i == points.length ? 0 : i;
+	}
+
+	private static int hash(String key) {
+		return hashFunction.hashString(key, Charsets.UTF_8).asInt();
+	}
+
+	private class Walk implements Iterator<T> {
+		private final Set<T> seen = new HashSet<T>();
+		private int index;
+		private int steps;
+		private T next;
+
+		Walk(int start) {
+			index = start;
+			advance();
+		}
+
+		@SuppressWarnings("unchecked")
+		private void advance() {
+			next = null;
+			while (next == null && seen.size() < nodes.size() && steps < points.length) {
+				T owner = (T) owners[index];
+				index = index + 1 == points.length ? 0 : index + 1;
+				steps++;
+				if (seen.add(owner)) next = owner;
+			}
+		}
+
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		public T next() {
+			if (next == null) throw new NoSuchElementException();
+			T node = next;
+			advance();
+			return node;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executors starting a virtual thread per task, when the JVM has them
+ * (Java 21+). They are looked up by reflection so that the code still
+ * builds and runs on older JVMs, where callers fall back to a thread pool.
+ */
+public final class VirtualThreads {
+	private static final Logger logger = LoggerFactory.getLogger(VirtualThreads.class);
+
+	// Thread.ofVirtual(), Thread.Builder.name(String, long), Thread.Builder.factory()
+	private static final Method ofVirtual;
+	private static final Method name;
+	private static final Method factory;
+
+	static {
+		Method[] methods = null;
+		try {
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			methods = new Method[] {
+					Thread.class.getMethod("ofVirtual"),
+					builder.getMethod("name", String.class, long.class),
+					builder.getMethod("factory") };
+		} catch (Exception e) {
+			logger.info("Virtual threads are not available on Java {}", System.getProperty("java.version"));
+		}
+		ofVirtual = methods == null ? null : methods[0];
+		name = methods == null ? null : methods[1];
+		factory = methods == null ? null : methods[2];
+	}
+
+	private VirtualThreads() {
+	}
+
+	public static boolean isAvailable() {
+		return ofVirtual != null;
+	}
+
+	/**
+	 * @param description prefix of the thread names, numbered like DescriptiveThreadFactory's
+	 * @return an executor starting a new virtual thread for every task, or
+	 *         null if the JVM does not have virtual threads
+	 */
+	public static ExecutorService newThreadPerTaskExecutor(String description) {
+		if (!isAvailable()) {
+			return null;
+		}
+		try {
+			Object builder = name.invoke(ofVirtual.invoke(null), description + "-", 1L);
+			ThreadFactory threadFactory = (ThreadFactory) factory.invoke(builder);
+			Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			return (ExecutorService) newThreadPerTaskExecutor.invoke(null, threadFactory);
+		} catch (Exception e) {
+			logger.warn("Could not create a virtual thread executor", e);
+			return null;
+		}
+	}
+}
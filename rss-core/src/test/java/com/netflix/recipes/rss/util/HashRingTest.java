@@ -0,0 +1,141 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HashRingTest {
+	private static final List<String> NODES = Arrays.asList("node-a", "node-b", "node-c", "node-d", "node-e");
+	private static final int KEYS = 10000;
+
+	@Test
+	public void emptyRingHasNoNode() {
+		HashRing<String> ring = new HashRing<String>(Collections.<String>emptyList(), 100);
+		assertTrue(ring.isEmpty());
+		assertNull(ring.get("user"));
+		assertFalse(ring.walk("user").iterator().hasNext());
+	}
+
+	@Test
+	public void keysStayOnTheSameNode() {
+		List<String> reversed = new ArrayList<String>(NODES);
+		Collections.reverse(reversed);
+		HashRing<String> ring = new HashRing<String>(NODES, 100);
+		HashRing<String> other = new HashRing<String>(reversed, 100);
+
+		for (int i = 0; i < KEYS; i++) {
+			String key = "user" + i;
+			assertEquals(ring.get(key), ring.get(key));
+			assertEquals(ring.get(key), other.get(key));
+		}
+	}
+
+	@Test
+	public void keysAreSpreadOverTheNodes() {
+		HashRing<String> ring = new HashRing<String>(NODES, 100);
+		Map<String, Integer> counts = countKeys(ring);
+
+		assertEquals(new HashSet<String>(NODES), counts.keySet());
+		for (int count: counts.values()) {
+			// 2000 each on average
+			assertTrue("Unbalanced ring: " + counts, count > 1200 && count < 2800);
+		}
+	}
+
+	@Test
+	public void removingANodeOnlyMovesItsKeys() {
+		HashRing<String> ring = new HashRing<String>(NODES, 100);
+		List<String> remaining = new ArrayList<String>(NODES);
+		remaining.remove("node-c");
+		HashRing<String> smaller = new HashRing<String>(remaining, 100);
+
+		for (int i = 0; i < KEYS; i++) {
+			String key = "user" + i;
+			String before = ring.get(key);
+			String after = smaller.get(key);
+			if (before.equals("node-c")) {
+				// To the node it would have failed over to
+				Object[] walk = toList(ring.walk(key)).toArray();
+				assertEquals(walk[1], after);
+			} else {
+				assertEquals(before, after);
+			}
+		}
+	}
+
+	@Test
+	public void addingANodeOnlyTakesKeysFromTheOthers() {
+		HashRing<String> ring = new HashRing<String>(NODES, 100);
+		List<String> more = new ArrayList<String>(NODES);
+		more.add("node-f");
+		HashRing<String> larger = new HashRing<String>(more, 100);
+
+		int moved = 0;
+		for (int i = 0; i < KEYS; i++) {
+			String key = "user" + i;
+			String after = larger.get(key);
+			if (!after.equals(ring.get(key))) {
+				assertEquals("node-f", after);
+				moved++;
+			}
+		}
+		// About 1/6 of them
+		assertTrue("Moved " + moved + " keys", moved > KEYS / 12 && moved < KEYS / 4);
+	}
+
+	@Test
+	public void walkVisitsEveryNodeOnceStartingWithTheOwner() {
+		HashRing<String> ring = new HashRing<String>(NODES, 100);
+		for (int i = 0; i < 100; i++) {
+			String key = "user" + i;
+			List<String> walk = toList(ring.walk(key));
+			assertEquals(ring.get(key), walk.get(0));
+			assertEquals(NODES.size(), walk.size());
+			assertEquals(new HashSet<String>(NODES), new HashSet<String>(walk));
+		}
+	}
+
+	private static Map<String, Integer> countKeys(HashRing<String> ring) {
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		for (int i = 0; i < KEYS; i++) {
+			String node = ring.get("user" + i);
+			Integer count = counts.get(node);
+			counts.put(node, count == null ? 1 : count + 1);
+		}
+		return counts;
+	}
+
+	private static List<String> toList(Iterable<String> nodes) {
+		List<String> list = new ArrayList<String>();
+		for (String node: nodes) {
+			list.add(node);
+		}
+		return list;
+	}
+}
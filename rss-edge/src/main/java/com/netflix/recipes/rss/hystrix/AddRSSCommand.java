@@ -61,14 +61,19 @@ public class AddRSSCommand extends HystrixCommand<String> {
 			HttpClientRequest request = HttpClientRequest
 					.newBuilder()
 					.setVerb(Verb.POST)
+					// The calls of a user go to the same middle tier, see ConsistentHashRule
+					.setLoadBalancerKey(RSSConstants.DEFUALT_USER)
 					.setUri(new URI("/"
 							+ RSSConstants.MIDDLETIER_WEB_RESOURCE_ROOT_PATH
 							+ RSSConstants.RSS_ENTRY_POINT
                             + "?url=" + url))
 					.build();
 			HttpClientResponse response = client.executeWithLoadBalancer(request);
+			String result = IOUtils.toString(response.getRawEntity(), Charsets.UTF_8);
 
-			return IOUtils.toString(response.getRawEntity(), Charsets.UTF_8);
+			// The cached pages miss or still have the feed
+			SubscriptionsCache.getInstance().invalidate();
+			return result;
 		} catch (Exception exc) {
 			throw new RuntimeException("Exception occurred when adding a RSS feed", exc);
 		}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.hystrix;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+
+import org.mortbay.util.ajax.Continuation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.netflix.hystrix.HystrixCommand;
+import com.netflix.hystrix.strategy.HystrixPlugins;
+import com.netflix.hystrix.strategy.executionhook.HystrixCommandExecutionHook;
+
+/**
+ * Suspends Jetty requests while the Hystrix commands they wait for run, so
+ * that a request waiting for the middle tier does not also hold a Jetty thread.
+ *
+ * This is the Hystrix command execution hook: the thread of the Hystrix
+ * thread pool that ran a command resumes the requests waiting for it.
+ * Commands that did not run in a thread (rejected, short-circuited) are
+ * complete once queued, commands that time out resume the requests with
+ * the continuation timeout.
+ *
+ * The hook has to be registered before the first command is created,
+ * otherwise the requests wait for the commands in their Jetty thread.
+ */
+public class CommandContinuations extends HystrixCommandExecutionHook {
+	private static final Logger logger = LoggerFactory.getLogger(CommandContinuations.class);
+
+	// Left to the command timeout, the continuation timeout only resumes the request after it
+	private static final long TIMEOUT_MARGIN_MS = 1000;
+
+	private static final CommandContinuations instance = new CommandContinuations();
+	private static volatile boolean registered;
+
+	// Requests waiting for the commands queued and not complete yet
+	private final ConcurrentMap<HystrixCommand<?>, Waiters> running = new ConcurrentHashMap<HystrixCommand<?>, Waiters>();
+
+	private CommandContinuations() {
+	}
+
+	public static synchronized void register() {
+		if (registered) return;
+		try {
+			HystrixPlugins.getInstance().registerCommandExecutionHook(instance);
+			registered = true;
+		} catch (IllegalStateException e) {
+			logger.warn("Another Hystrix command execution hook is registered, requests wait for the commands in their threads", e);
+		}
+	}
+
+	/**
+	 * Queues the command, for requests to wait for it with {@link #suspend}
+	 */
+	public static <T> Future<T> queue(HystrixCommand<T> command) {
+		if (registered) {
+			instance.running.put(command, new Waiters());
+		}
+		Future<T> future = command.queue();
+		if (future.isDone()) {
+			instance.complete(command);
+		}
+		return future;
+	}
+
+	/**
+	 * Suspends the request until the command queued with {@link #queue} ran.
+	 *
+	 * On a Jetty connector with continuations the request leaves its thread
+	 * and is dispatched again once resumed, calling this again returns right
+	 * away. On the others this blocks.
+	 */
+	public static void suspend(HystrixCommand<?> command, Continuation continuation) {
+		// A continuation that is not suspended yet cannot be resumed: the command
+		// completing waits for the lock, until the request is suspended
+		synchronized (continuation) {
+			Waiters waiters = instance.running.get(command);
+			if (waiters != null && waiters.add(continuation)) {
+				continuation.suspend(command.getProperties().executionIsolationThreadTimeoutInMilliseconds().get() + TIMEOUT_MARGIN_MS);
+			}
+		}
+	}
+
+	@Override
+	public <T> void onThreadComplete(HystrixCommand<T> command) {
+		complete(command);
+	}
+
+	private void complete(HystrixCommand<?> command) {
+		Waiters waiters = running.remove(command);
+		if (waiters != null) {
+			for (Continuation continuation: waiters.complete()) {
+				synchronized (continuation) {
+					continuation.resume();
+				}
+			}
+		}
+	}
+
+	private static class Waiters {
+		private List<Continuation> continuations = new ArrayList<Continuation>();
+
+		/**
+		 * @return false if the command is complete
+		 */
+		synchronized boolean add(Continuation continuation) {
+			if (continuations == null) return false;
+			continuations.add(continuation);
+			return true;
+		}
+
+		synchronized List<Continuation> complete() {
+			List<Continuation> waiting = continuations;
+			continuations = null;
+			return waiting;
+		}
+	}
+}
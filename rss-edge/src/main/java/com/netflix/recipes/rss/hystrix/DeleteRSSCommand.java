@@ -59,6 +59,8 @@ public class DeleteRSSCommand extends HystrixCommand<String> {
 			HttpClientRequest request = HttpClientRequest
 					.newBuilder()
 					.setVerb(Verb.DELETE)
+					// The calls of a user go to the same middle tier, see ConsistentHashRule
+					.setLoadBalancerKey(RSSConstants.DEFUALT_USER)
 					.setUri(new URI("/"
                             + RSSConstants.MIDDLETIER_WEB_RESOURCE_ROOT_PATH
                             + RSSConstants.RSS_ENTRY_POINT
@@ -66,8 +68,11 @@ public class DeleteRSSCommand extends HystrixCommand<String> {
                     )
 					.build();
 			HttpClientResponse response = client.executeWithLoadBalancer(request);
+			String result = IOUtils.toString(response.getRawEntity(), Charsets.UTF_8);
 
-			return IOUtils.toString(response.getRawEntity(), Charsets.UTF_8);
+			// The cached pages miss or still have the feed
+			SubscriptionsCache.getInstance().invalidate();
+			return result;
 		} catch (Exception exc) {
 			throw new RuntimeException("Exception", exc);
 		}
@@ -15,8 +15,9 @@
  */
 package com.netflix.recipes.rss.hystrix;
 
-import com.google.common.base.Charsets;
 import com.netflix.client.ClientFactory;
+import com.netflix.config.DynamicBooleanProperty;
+import com.netflix.config.DynamicPropertyFactory;
 import com.netflix.hystrix.HystrixCommand;
 import com.netflix.hystrix.HystrixCommandGroupKey;
 import com.netflix.hystrix.HystrixCommandKey;
@@ -26,50 +27,139 @@ import com.netflix.niws.client.http.HttpClientRequest.Verb;
 import com.netflix.niws.client.http.HttpClientResponse;
 import com.netflix.niws.client.http.RestClient;
 import com.netflix.recipes.rss.RSSConstants;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
 import org.apache.commons.io.IOUtils;
 
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import java.io.InputStream;
 import java.net.URI;
+import java.net.URLEncoder;
+import java.util.Collection;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
- * Calls the middle tier Get RSS entry point
+ * Calls the middle tier Get RSS entry point for a page of the subscribed feeds,
+ * or with a watermark the entry point for the items published since, and
+ * returns the subscriptions as sent (see {@link SubscriptionsPayload}).
+ * The pages are cached by {@link SubscriptionsCache}.
  */
-public class GetRSSCommand extends HystrixCommand<String> {
+public class GetRSSCommand extends HystrixCommand<SubscriptionsPayload> {
+    private static final DynamicBooleanProperty binaryEnabled =
+            DynamicPropertyFactory.getInstance().getBooleanProperty(RSSConstants.EDGE_BINARY_ENABLED, true);
+
+    // Middle tiers that cannot write the binary encoding answer JSON
+    private static final String ACCEPT_BINARY = RSSConstants.RSS_BINARY_MEDIA_TYPE + ", " + MediaType.APPLICATION_JSON + ";q=0.5";
+
+    // Page of the subscribed feeds and items per feed, 0 for no limit
+    private final int offset;
+    private final int feedLimit;
+    private final int itemsPerFeed;
+    // Watermark returned by a previous call, null for all the items
+    private final String watermark;
+
 	public GetRSSCommand() {
+		this(0, 0, 0);
+	}
+
+	public GetRSSCommand(int offset, int feedLimit, int itemsPerFeed) {
+		this(offset, feedLimit, itemsPerFeed, null);
+	}
+
+	public GetRSSCommand(int offset, int feedLimit, int itemsPerFeed, String watermark) {
         super (
             Setter.withGroupKey(
                 HystrixCommandGroupKey.Factory.asKey(RSSConstants.HYSTRIX_RSS_GET_GROUP))
-                .andCommandKey(HystrixCommandKey.Factory.asKey(RSSConstants.HYSTRIX_RSS_GET_COMMAND_KEY))
+                .andCommandKey(HystrixCommandKey.Factory.asKey(watermark == null
+                        ? RSSConstants.HYSTRIX_RSS_GET_COMMAND_KEY : RSSConstants.HYSTRIX_RSS_GET_SINCE_COMMAND_KEY))
                 .andThreadPoolKey(HystrixThreadPoolKey.Factory.asKey(RSSConstants.HYSTRIX_RSS_THREAD_POOL)
             )
         );
+        this.offset = offset;
+        this.feedLimit = feedLimit;
+        this.itemsPerFeed = itemsPerFeed;
+        this.watermark = watermark;
 	}
 
 	@Override
-	protected String run() {
+	protected SubscriptionsPayload run() {
 		try {
 			// The named client param must match the prefix for the ribbon
 			// configuration specified in the edge.properties file
 			RestClient client = (RestClient) ClientFactory.getNamedClient(RSSConstants.MIDDLETIER_REST_CLIENT);
 
+			MultivaluedMap<String, String> headers = new MultivaluedMapImpl();
+			headers.putSingle(HttpHeaders.ACCEPT, binaryEnabled.get() ? ACCEPT_BINARY : MediaType.APPLICATION_JSON);
+			headers.putSingle(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+
 			HttpClientRequest request = HttpClientRequest
 					.newBuilder()
 					.setVerb(Verb.GET)
+					// The calls of a user go to the same middle tier, see ConsistentHashRule
+					.setLoadBalancerKey(RSSConstants.DEFUALT_USER)
 					.setUri(new URI("/"
 							+ RSSConstants.MIDDLETIER_WEB_RESOURCE_ROOT_PATH
-							+ RSSConstants.RSS_ENTRY_POINT)
+							+ (watermark == null ? RSSConstants.RSS_ENTRY_POINT : RSSConstants.RSS_SINCE_ENTRY_POINT)
+							+ "?offset=" + offset
+							+ "&feedLimit=" + feedLimit
+							+ "&itemsPerFeed=" + itemsPerFeed
+							+ (watermark == null ? "" : "&watermark=" + URLEncoder.encode(watermark, "UTF-8")))
                     )
+					.setHeaders(headers)
 					.build();
 			HttpClientResponse response = client.executeWithLoadBalancer(request);
 
-			return IOUtils.toString(response.getRawEntity(), Charsets.UTF_8);
+			InputStream entity = response.getRawEntity();
+			try {
+				// Large responses are compressed by the middle tier
+				String contentEncoding = getHeader(response, HttpHeaders.CONTENT_ENCODING);
+				if ("gzip".equalsIgnoreCase(contentEncoding)) {
+					entity = new GZIPInputStream(entity, 8192);
+				} else if ("deflate".equalsIgnoreCase(contentEncoding)) {
+					entity = new InflaterInputStream(entity);
+				}
+
+				String contentType = getHeader(response, HttpHeaders.CONTENT_TYPE);
+				SubscriptionsPayload subscriptions = new SubscriptionsPayload(IOUtils.toByteArray(entity),
+						contentType != null && contentType.startsWith(RSSConstants.RSS_BINARY_MEDIA_TYPE));
+				// Decoded again by every page rendering it, but checked once
+				subscriptions.validate();
+				if (watermark == null) {
+					SubscriptionsCache.getInstance().putLastGood(offset, feedLimit, itemsPerFeed, subscriptions);
+				}
+				return subscriptions;
+			} finally {
+				IOUtils.closeQuietly(entity);
+			}
 		} catch (Exception exc) {
 			throw new RuntimeException("Exception", exc);
 		}
 	}
 
 	@Override
-	protected String getFallback() {
-        // Empty json
-		return "{}";
+	protected SubscriptionsPayload getFallback() {
+		// The last page returned by the middle tier, stale rather than empty
+		if (watermark == null) {
+			SubscriptionsPayload subscriptions = SubscriptionsCache.getInstance().getLastGood(offset, feedLimit, itemsPerFeed);
+			if (subscriptions != null) {
+				return subscriptions;
+			}
+		}
+        // No subscriptions
+		return SubscriptionsPayload.EMPTY;
+	}
+
+	private static String getHeader(HttpClientResponse response, String name) {
+		Map<String, ? extends Collection<String>> headers = response.getHeaders();
+		if (headers == null) return null;
+		for (Map.Entry<String, ? extends Collection<String>> header : headers.entrySet()) {
+			if (name.equalsIgnoreCase(header.getKey()) && header.getValue() != null && !header.getValue().isEmpty()) {
+				return header.getValue().iterator().next();
+			}
+		}
+		return null;
 	}
 }
\ No newline at end of file
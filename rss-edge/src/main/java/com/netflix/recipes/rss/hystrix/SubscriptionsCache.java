@@ -0,0 +1,202 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.hystrix;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.netflix.config.DynamicPropertyFactory;
+import com.netflix.recipes.rss.RSSConstants;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.BasicGauge;
+import com.netflix.servo.monitor.Counter;
+import com.netflix.servo.monitor.Gauge;
+import com.netflix.servo.monitor.MonitorConfig;
+
+/**
+ * Edge cache of the pages of subscriptions returned by {@link GetRSSCommand},
+ * so that reloading the page does not call the middle tier every time.
+ *
+ * Pages are kept for rss.edge.cache.ttlMs, and concurrent requests of a page
+ * that is not cached wait for a single middle tier call, see {@link Load}.
+ * AddRSSCommand and DeleteRSSCommand invalidate the pages once they succeed.
+ *
+ * The last page returned by the middle tier is also kept for
+ * rss.edge.cache.staleMs, it is the fallback of GetRSSCommand.
+ * Fallback responses are not cached, the next request tries again.
+ */
+public class SubscriptionsCache {
+
+	// JMX:  com.netflix.servo.COUNTER.EdgeRSS_*
+	private static final Counter missCounter  = new BasicCounter(MonitorConfig.builder("EdgeRSS_cacheMissCounter").build());
+	private static final Counter staleCounter = new BasicCounter(MonitorConfig.builder("EdgeRSS_cacheStaleCounter").build());
+
+	static {
+		DefaultMonitorRegistry.getInstance().register(missCounter);
+		DefaultMonitorRegistry.getInstance().register(staleCounter);
+	}
+
+	private static final SubscriptionsCache instance = new SubscriptionsCache();
+
+	private final Cache<String, SubscriptionsPayload> pages;
+	private final Cache<String, SubscriptionsPayload> lastGood;
+	private final ConcurrentMap<String, Load> loads = new ConcurrentHashMap<String, Load>();
+
+	// Bumped by every add and delete: a page read before does not get cached
+	private final AtomicLong writes = new AtomicLong();
+
+	public static SubscriptionsCache getInstance() {
+		return instance;
+	}
+
+	private SubscriptionsCache() {
+		int maxPages = DynamicPropertyFactory.getInstance().getIntProperty(RSSConstants.EDGE_CACHE_MAX_PAGES, 1000).get();
+		pages = CacheBuilder.newBuilder()
+				.maximumSize(maxPages)
+				.expireAfterWrite(DynamicPropertyFactory.getInstance().getLongProperty(RSSConstants.EDGE_CACHE_TTL_MS, 5000).get(), TimeUnit.MILLISECONDS)
+				.build();
+		lastGood = CacheBuilder.newBuilder()
+				.maximumSize(maxPages)
+				.expireAfterWrite(DynamicPropertyFactory.getInstance().getLongProperty(RSSConstants.EDGE_CACHE_STALE_MS, 3600000).get(), TimeUnit.MILLISECONDS)
+				.build();
+
+		Gauge<Double> hitRatioGauge = new BasicGauge<Double>(MonitorConfig.builder("EdgeRSS_cacheHitRatio").build(),
+				new Callable<Double>() {
+					public Double call() {
+						return pages.stats().hitRate();
+					}
+				});
+		DefaultMonitorRegistry.getInstance().register(hitRatioGauge);
+	}
+
+	/**
+	 * @return the page of subscriptions, see {@link GetRSSCommand#GetRSSCommand(int, int, int)}
+	 */
+	public SubscriptionsPayload get(int offset, int feedLimit, int itemsPerFeed) {
+		SubscriptionsPayload subscriptions = getIfPresent(offset, feedLimit, itemsPerFeed);
+		return subscriptions != null ? subscriptions : load(offset, feedLimit, itemsPerFeed).get();
+	}
+
+	/**
+	 * @return the cached page, or null
+	 */
+	public SubscriptionsPayload getIfPresent(int offset, int feedLimit, int itemsPerFeed) {
+		return pages.getIfPresent(getKey(offset, feedLimit, itemsPerFeed));
+	}
+
+	/**
+	 * Calls the middle tier for the page, or joins the call already in flight
+	 */
+	public Load load(int offset, int feedLimit, int itemsPerFeed) {
+		String key = getKey(offset, feedLimit, itemsPerFeed);
+		Load load = loads.get(key);
+		if (load == null) {
+			Load newLoad = new Load(key, new GetRSSCommand(offset, feedLimit, itemsPerFeed));
+			// The requests joining it wait for it to be queued
+			synchronized (newLoad) {
+				load = loads.putIfAbsent(key, newLoad);
+				if (load == null) {
+					missCounter.increment();
+					newLoad.future = CommandContinuations.queue(newLoad.command);
+					load = newLoad;
+				}
+			}
+		}
+		return load;
+	}
+
+	/**
+	 * Called once the subscriptions changed
+	 */
+	public void invalidate() {
+		writes.incrementAndGet();
+		pages.invalidateAll();
+		// Requests from now on do not join the calls made before
+		loads.clear();
+	}
+
+	void putLastGood(int offset, int feedLimit, int itemsPerFeed, SubscriptionsPayload subscriptions) {
+		lastGood.put(getKey(offset, feedLimit, itemsPerFeed), subscriptions);
+	}
+
+	/**
+	 * @return the last page returned by the middle tier, or null
+	 */
+	SubscriptionsPayload getLastGood(int offset, int feedLimit, int itemsPerFeed) {
+		SubscriptionsPayload subscriptions = lastGood.getIfPresent(getKey(offset, feedLimit, itemsPerFeed));
+		if (subscriptions != null) {
+			staleCounter.increment();
+		}
+		return subscriptions;
+	}
+
+	private static String getKey(int offset, int feedLimit, int itemsPerFeed) {
+		return offset + "/" + feedLimit + "/" + itemsPerFeed;
+	}
+
+	/**
+	 * Middle tier call for a page, shared by the requests of the page while
+	 * it is in flight. Requests can wait for it without holding a thread with
+	 * {@link CommandContinuations#suspend}, then get the page.
+	 */
+	public class Load {
+		private final String key;
+		private final GetRSSCommand command;
+		private final long version = writes.get();
+		private Future<SubscriptionsPayload> future;
+		private SubscriptionsPayload subscriptions;
+
+		private Load(String key, GetRSSCommand command) {
+			this.key = key;
+			this.command = command;
+		}
+
+		public GetRSSCommand getCommand() {
+			return command;
+		}
+
+		/**
+		 * @return the page, once the call completed
+		 */
+		public synchronized SubscriptionsPayload get() {
+			if (subscriptions == null) {
+				try {
+					subscriptions = future.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException(e);
+				} catch (ExecutionException e) {
+					throw Throwables.propagate(e.getCause());
+				} finally {
+					loads.remove(key, this);
+				}
+				if (!command.isResponseFromFallback() && writes.get() == version) {
+					pages.put(key, subscriptions);
+				}
+			}
+			return subscriptions;
+		}
+	}
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.hystrix;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.netflix.recipes.rss.RSSConstants;
+import com.netflix.recipes.rss.util.BinaryReader;
+
+/**
+ * Decodes the middle tier subscriptions, JSON or binary, as they are read into
+ * a {@link SubscriptionsHandler}, or into the JSON objects of the streams:
+ *  {"user": .., "subscriptions": [{"url": .., "title": .., "items": [{"id": .., "title": .., "link": .., "description": ..}]}],
+ *   "timedOut": [..], "nextOffset": .., "watermark": ..}
+ * "subscriptions", "items" and "timedOut" are always arrays, "nextOffset" is a number, missing on the last page.
+ */
+public final class SubscriptionsDecoder {
+	private static final JsonFactory jsonFactory = new JsonFactory();
+
+	private SubscriptionsDecoder() {
+	}
+
+	/**
+	 * Decodes the encoding written by the middle tier SubscriptionsBinaryWriter
+	 */
+	public static void decodeBinary(InputStream in, SubscriptionsHandler handler) throws IOException {
+		BinaryReader reader = new BinaryReader(in);
+		int version = reader.readByte();
+		if (version != RSSConstants.RSS_BINARY_VERSION) {
+			throw new IOException("Unsupported subscriptions encoding version " + version);
+		}
+
+		handler.user(reader.readString());
+		for (int i = reader.readSize(); i > 0; i--) {
+			handler.feed(reader.readString(), reader.readString());
+			for (int j = reader.readSize(); j > 0; j--) {
+				String title = reader.readString();
+				String link = reader.readString();
+				String description = reader.readString();
+				handler.item(reader.readString(), title, link, description);
+			}
+			handler.endFeed();
+		}
+
+		for (int i = reader.readSize(); i > 0; i--) {
+			handler.timedOut(reader.readString());
+		}
+
+		int nextOffset = reader.readSize();
+		if (nextOffset >= 0) handler.nextOffset(nextOffset);
+		String watermark = reader.readString();
+		if (watermark != null) handler.watermark(watermark);
+	}
+
+	public static JSONObject decodeBinary(InputStream in) throws IOException, JSONException {
+		JSONObjectHandler handler = new JSONObjectHandler();
+		decodeBinary(in, handler);
+		return handler.result;
+	}
+
+	/**
+	 * Parses the JSON encoding as it is read, where a list of a single element
+	 * comes as the element itself
+	 */
+	public static void decodeJson(InputStream in, SubscriptionsHandler handler) throws IOException {
+		JsonParser parser = jsonFactory.createJsonParser(in);
+		try {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				throw new IOException("Unexpected subscriptions " + parser.getCurrentToken());
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String name = parser.getCurrentName();
+				JsonToken token = parser.nextToken();
+				if ("user".equals(name)) {
+					handler.user(getText(parser));
+				} else if ("subscriptions".equals(name)) {
+					if (token == JsonToken.START_ARRAY) {
+						while (parser.nextToken() != JsonToken.END_ARRAY) {
+							decodeJsonFeed(parser, handler);
+						}
+					} else if (token == JsonToken.START_OBJECT) {
+						decodeJsonFeed(parser, handler);
+					}
+				} else if ("timedOut".equals(name)) {
+					if (token == JsonToken.START_ARRAY) {
+						while (parser.nextToken() != JsonToken.END_ARRAY) {
+							handler.timedOut(getText(parser));
+						}
+					} else if (token != JsonToken.VALUE_NULL) {
+						handler.timedOut(getText(parser));
+					}
+				} else if ("nextOffset".equals(name)) {
+					// Numbers may be written as strings
+					if (token != JsonToken.VALUE_NULL) handler.nextOffset(Integer.parseInt(parser.getText()));
+				} else if ("watermark".equals(name)) {
+					if (token != JsonToken.VALUE_NULL) handler.watermark(parser.getText());
+				} else {
+					parser.skipChildren();
+				}
+			}
+		} finally {
+			parser.close();
+		}
+	}
+
+	/**
+	 * Parses the JSON encoding, where a list of a single element comes as the element itself
+	 */
+	public static JSONObject decodeJson(String json) throws JSONException {
+		JSONObject result = new JSONObject(json);
+		JSONArray subscriptions = toArray(result, "subscriptions");
+		for (int i = 0; i < subscriptions.length(); i++) {
+			toArray(subscriptions.getJSONObject(i), "items");
+		}
+		toArray(result, "timedOut");
+		if (result.has("nextOffset")) {
+			// Numbers may be written as strings
+			result.put("nextOffset", result.getInt("nextOffset"));
+		}
+		return result;
+	}
+
+	/**
+	 * The items are streamed once the url and title are known: they are buffered
+	 * if they come first, or if the feed has no title
+	 */
+	private static void decodeJsonFeed(JsonParser parser, SubscriptionsHandler handler) throws IOException {
+		String url = null;
+		String title = null;
+		boolean hasUrl = false;
+		boolean hasTitle = false;
+		boolean started = false;
+		List<String[]> pending = null;
+
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String name = parser.getCurrentName();
+			JsonToken token = parser.nextToken();
+			if ("url".equals(name)) {
+				url = getText(parser);
+				hasUrl = true;
+			} else if ("title".equals(name)) {
+				title = getText(parser);
+				hasTitle = true;
+			} else if ("items".equals(name) && token != JsonToken.VALUE_NULL) {
+				if (!started && hasUrl && hasTitle) {
+					handler.feed(url, title);
+					started = true;
+				}
+				if (pending == null && !started) {
+					pending = new ArrayList<String[]>();
+				}
+				if (token == JsonToken.START_ARRAY) {
+					while (parser.nextToken() != JsonToken.END_ARRAY) {
+						decodeJsonItem(parser, handler, pending);
+					}
+				} else {
+					decodeJsonItem(parser, handler, pending);
+				}
+			} else {
+				parser.skipChildren();
+			}
+		}
+
+		if (!started) {
+			handler.feed(url, title);
+			if (pending != null) {
+				for (String[] item: pending) {
+					handler.item(item[0], item[1], item[2], item[3]);
+				}
+			}
+		}
+		handler.endFeed();
+	}
+
+	/**
+	 * @param pending the items not streamed yet, or null to stream this one
+	 */
+	private static void decodeJsonItem(JsonParser parser, SubscriptionsHandler handler, List<String[]> pending) throws IOException {
+		String id = null;
+		String title = null;
+		String link = null;
+		String description = null;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String name = parser.getCurrentName();
+			parser.nextToken();
+			if ("id".equals(name)) {
+				id = getText(parser);
+			} else if ("title".equals(name)) {
+				title = getText(parser);
+			} else if ("link".equals(name)) {
+				link = getText(parser);
+			} else if ("description".equals(name)) {
+				description = getText(parser);
+			} else {
+				parser.skipChildren();
+			}
+		}
+
+		if (pending != null) {
+			pending.add(new String[] {id, title, link, description});
+		} else {
+			handler.item(id, title, link, description);
+		}
+	}
+
+	private static String getText(JsonParser parser) throws IOException {
+		return parser.getCurrentToken() == JsonToken.VALUE_NULL ? null : parser.getText();
+	}
+
+	private static JSONArray toArray(JSONObject object, String key) throws JSONException {
+		Object value = object.opt(key);
+		JSONArray array;
+		if (value instanceof JSONArray) {
+			array = (JSONArray) value;
+		} else {
+			array = new JSONArray();
+			if (value != null) array.put(value);
+		}
+		object.put(key, array);
+		return array;
+	}
+
+	/**
+	 * Builds the JSON objects of the subscriptions
+	 */
+	private static class JSONObjectHandler implements SubscriptionsHandler {
+		private final JSONObject result = new JSONObject();
+		private final JSONArray subscriptions = new JSONArray();
+		private final JSONArray timedOut = new JSONArray();
+		private JSONArray items;
+
+		JSONObjectHandler() {
+			try {
+				result.put("subscriptions", subscriptions);
+				result.put("timedOut", timedOut);
+			} catch (JSONException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		public void user(String user) throws IOException {
+			put(result, "user", user);
+		}
+
+		public void feed(String url, String title) throws IOException {
+			JSONObject rss = new JSONObject();
+			items = new JSONArray();
+			put(rss, "url", url);
+			put(rss, "title", title);
+			put(rss, "items", items);
+			subscriptions.put(rss);
+		}
+
+		public void item(String id, String title, String link, String description) throws IOException {
+			JSONObject item = new JSONObject();
+			put(item, "title", title);
+			put(item, "link", link);
+			put(item, "description", description);
+			put(item, "id", id);
+			items.put(item);
+		}
+
+		public void endFeed() {
+		}
+
+		public void timedOut(String url) {
+			timedOut.put(url);
+		}
+
+		public void nextOffset(int nextOffset) throws IOException {
+			put(result, "nextOffset", nextOffset);
+		}
+
+		public void watermark(String watermark) throws IOException {
+			put(result, "watermark", watermark);
+		}
+
+		private static void put(JSONObject object, String key, Object value) throws IOException {
+			try {
+				object.putOpt(key, value);
+			} catch (JSONException e) {
+				throw new IOException(e.toString());
+			}
+		}
+	}
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.hystrix;
+
+import java.io.IOException;
+
+/**
+ * Receives the subscriptions as {@link SubscriptionsDecoder} decodes them,
+ * without building them first: the feeds in order, each followed by its items
+ * then endFeed. The other values may come before or after the feeds.
+ */
+public interface SubscriptionsHandler {
+
+	void user(String user) throws IOException;
+
+	void feed(String url, String title) throws IOException;
+
+	void item(String id, String title, String link, String description) throws IOException;
+
+	void endFeed() throws IOException;
+
+	void timedOut(String url) throws IOException;
+
+	/**
+	 * Not called on the last page
+	 */
+	void nextOffset(int nextOffset) throws IOException;
+
+	/**
+	 * Not called if the middle tier does not know the watermark
+	 */
+	void watermark(String watermark) throws IOException;
+}
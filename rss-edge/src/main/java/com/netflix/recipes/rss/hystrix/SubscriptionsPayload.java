@@ -0,0 +1,103 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.hystrix;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Subscriptions as the middle tier sent them, JSON or binary: the page
+ * decodes them as it renders them, without building them first.
+ */
+public final class SubscriptionsPayload {
+	// No subscriptions
+	public static final SubscriptionsPayload EMPTY = new SubscriptionsPayload("{}".getBytes(Charsets.UTF_8), false);
+
+	private static final SubscriptionsHandler IGNORE = new SubscriptionsHandler() {
+		public void user(String user) {
+		}
+
+		public void feed(String url, String title) {
+		}
+
+		public void item(String id, String title, String link, String description) {
+		}
+
+		public void endFeed() {
+		}
+
+		public void timedOut(String url) {
+		}
+
+		public void nextOffset(int nextOffset) {
+		}
+
+		public void watermark(String watermark) {
+		}
+	};
+
+	private final byte[] body;
+	private final boolean binary;
+
+	/**
+	 * @param binary whether body is the binary encoding, or JSON
+	 */
+	public SubscriptionsPayload(byte[] body, boolean binary) {
+		this.body = body;
+		this.binary = binary;
+	}
+
+	public void decode(SubscriptionsHandler handler) throws IOException {
+		if (binary) {
+			SubscriptionsDecoder.decodeBinary(new ByteArrayInputStream(body), handler);
+		} else {
+			SubscriptionsDecoder.decodeJson(new ByteArrayInputStream(body), handler);
+		}
+	}
+
+	/**
+	 * Decodes the whole payload once, so that a malformed one fails before it is used
+	 */
+	public void validate() throws IOException {
+		decode(IGNORE);
+	}
+
+	/**
+	 * @return the subscriptions as JSON objects, see {@link SubscriptionsDecoder}
+	 */
+	public JSONObject toJSON() {
+		try {
+			if (binary) {
+				return SubscriptionsDecoder.decodeBinary(new ByteArrayInputStream(body));
+			}
+			return SubscriptionsDecoder.decodeJson(new String(body, Charsets.UTF_8));
+		} catch (IOException e) {
+			// Validated when it was received
+			throw new IllegalStateException(e);
+		} catch (JSONException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public int size() {
+		return body.length;
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.loadbalancer;
+
+import java.util.HashSet;
+import java.util.List;
+
+import com.netflix.client.config.IClientConfig;
+import com.netflix.config.DynamicDoubleProperty;
+import com.netflix.config.DynamicIntProperty;
+import com.netflix.config.DynamicPropertyFactory;
+import com.netflix.loadbalancer.AbstractLoadBalancer;
+import com.netflix.loadbalancer.AbstractLoadBalancerRule;
+import com.netflix.loadbalancer.ILoadBalancer;
+import com.netflix.loadbalancer.LoadBalancerStats;
+import com.netflix.loadbalancer.RoundRobinRule;
+import com.netflix.loadbalancer.Server;
+import com.netflix.loadbalancer.ServerStats;
+import com.netflix.recipes.rss.RSSConstants;
+import com.netflix.recipes.rss.util.HashRing;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.Counter;
+import com.netflix.servo.monitor.MonitorConfig;
+
+/**
+ * Ribbon rule routing the requests by their load balancer key (the user) on
+ * a consistent hash ring of the middle tier servers, so that a user's
+ * requests go to the same server and find its state in the server caches.
+ *
+ * Bounded load: a server already serving rss.edge.routing.loadFactor times
+ * the average active requests passes the request to the next server on the
+ * ring. Failover: so do servers whose circuit breaker is tripped or which
+ * failed a connection in the last second, which is where the retries on the
+ * next server (MaxAutoRetriesNextServer) go.
+ *
+ * Requests without a key are balanced round robin.
+ *
+ *  middletier-client.ribbon.NFLoadBalancerRuleClassName=com.netflix.recipes.rss.loadbalancer.ConsistentHashRule
+ */
+public class ConsistentHashRule extends AbstractLoadBalancerRule {
+
+	// JMX:  com.netflix.servo.COUNTER.EdgeRSS_*
+	private static final Counter spilledCounter    = new BasicCounter(MonitorConfig.builder("EdgeRSS_routingSpilledCounter").build());
+	private static final Counter failedOverCounter = new BasicCounter(MonitorConfig.builder("EdgeRSS_routingFailedOverCounter").build());
+
+	static {
+		DefaultMonitorRegistry.getInstance().register(spilledCounter);
+		DefaultMonitorRegistry.getInstance().register(failedOverCounter);
+	}
+
+	private static final DynamicIntProperty virtualNodes =
+			DynamicPropertyFactory.getInstance().getIntProperty(RSSConstants.EDGE_ROUTING_VIRTUAL_NODES, 100);
+	private static final DynamicDoubleProperty loadFactor =
+			DynamicPropertyFactory.getInstance().getDoubleProperty(RSSConstants.EDGE_ROUTING_LOAD_FACTOR, 1.25);
+
+	private final RoundRobinRule roundRobin = new RoundRobinRule();
+
+	// Server list the ring was built from
+	private volatile List<Server> servers;
+	private volatile HashRing<Server> ring = new HashRing<Server>(new HashSet<Server>(), 0);
+
+	public void initWithNiwsConfig(IClientConfig clientConfig) {
+	}
+
+	@Override
+	public void setLoadBalancer(ILoadBalancer lb) {
+		super.setLoadBalancer(lb);
+		roundRobin.setLoadBalancer(lb);
+	}
+
+	public Server choose(Object key) {
+		ILoadBalancer lb = getLoadBalancer();
+		if (lb == null) return null;
+		if (key == null) return roundRobin.choose(null);
+
+		HashRing<Server> ring = getRing(lb.getServerList(false));
+		LoadBalancerStats stats = lb instanceof AbstractLoadBalancer ? ((AbstractLoadBalancer) lb).getLoadBalancerStats() : null;
+
+		int alive = 0;
+		int active = 0;
+		for (Server server: ring.getNodes()) {
+			if (server.isAlive()) {
+				alive++;
+				if (stats != null) active += stats.getSingleServerStat(server).getActiveRequestsCount();
+			}
+		}
+		if (alive == 0) return null;
+		// Counting this request, so that there is always a server under it
+		int maxActive = (int) Math.ceil(loadFactor.get() * (active + 1) / alive);
+
+		Server owner = null;
+		Server healthy = null;
+		for (Server server: ring.walk(key.toString())) {
+			if (!server.isAlive()) continue;
+			if (owner == null) owner = server;
+
+			ServerStats serverStats = stats != null ? stats.getSingleServerStat(server) : null;
+			if (serverStats != null && (serverStats.isCircuitBreakerTripped() || serverStats.getFailureCount() > 0)) {
+				continue;
+			}
+			if (healthy == null) healthy = server;
+
+			if (serverStats == null || serverStats.getActiveRequestsCount() < maxActive) {
+				if (server != healthy) spilledCounter.increment();
+				if (healthy != owner) failedOverCounter.increment();
+				return server;
+			}
+		}
+		// Every server is failing or busy, the first one it would be gets it
+		return healthy != null ? healthy : owner;
+	}
+
+	private HashRing<Server> getRing(List<Server> servers) {
+		HashRing<Server> ring = this.ring;
+		if (servers != this.servers) {
+			// The list is replaced on every refresh, the ring only when the servers changed
+			if (!new HashSet<Server>(servers).equals(new HashSet<Server>(ring.getNodes()))) {
+				ring = new HashRing<Server>(servers, virtualNodes.get());
+				this.ring = ring;
+			}
+			this.servers = servers;
+		}
+		return ring;
+	}
+}
@@ -15,11 +15,14 @@
  */
 package com.netflix.recipes.rss.server;
 
+import org.mortbay.jetty.Handler;
+import org.mortbay.jetty.servlet.Context;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.netflix.config.ConfigurationManager;
 import com.netflix.karyon.spi.PropertyNames;
+import com.netflix.recipes.rss.RSSConstants;
 
 /**
  * Edge Server
@@ -32,6 +35,18 @@ public class EdgeServer extends BaseJettyServer {
 
 	public EdgeServer() {
 	}
+
+	@Override
+	protected void addServlets(Context context) {
+		// New items of the feeds, pushed to the page
+		context.addServlet(FeedStreamServlet.class, RSSConstants.EDGE_STREAM_PATH);
+
+		// Feed page, rendered from its template as the subscriptions are decoded
+		context.addServlet(FeedPageServlet.class, RSSConstants.EDGE_PAGE_PATH);
+
+		// Middle tier calls of the feed page, made without holding a Jetty thread
+		context.addFilter(FeedPageFilter.class, RSSConstants.EDGE_PAGE_PATH, Handler.DEFAULT);
+	}
 	
 	public static void main(final String[] args) throws Exception {
 		System.setProperty("archaius.deployment.applicationId", "edge");
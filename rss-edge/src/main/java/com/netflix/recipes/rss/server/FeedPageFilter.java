@@ -0,0 +1,153 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.server;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.mortbay.util.ajax.Continuation;
+import org.mortbay.util.ajax.ContinuationSupport;
+
+import com.netflix.config.DynamicIntProperty;
+import com.netflix.config.DynamicPropertyFactory;
+import com.netflix.hystrix.HystrixCommand;
+import com.netflix.recipes.rss.RSSConstants;
+import com.netflix.recipes.rss.hystrix.AddRSSCommand;
+import com.netflix.recipes.rss.hystrix.CommandContinuations;
+import com.netflix.recipes.rss.hystrix.DeleteRSSCommand;
+import com.netflix.recipes.rss.hystrix.SubscriptionsCache;
+import com.netflix.recipes.rss.hystrix.SubscriptionsPayload;
+
+/**
+ * Makes the middle tier calls of the feed page (FeedPageServlet) before it is
+ * rendered, without holding a Jetty thread while they are in flight
+ * (see {@link CommandContinuations}):
+ *  delFeedUrl or url: deletes or adds the feed, then redirects to the page
+ *  otherwise: gets the page of subscriptions (offset), which the servlet reads
+ *  from the request attribute SUBSCRIPTIONS_ATTRIBUTE
+ *
+ * The request is dispatched again once the call completed, and goes through
+ * this filter again: the call in flight is kept in a request attribute.
+ */
+public class FeedPageFilter implements Filter {
+	public static final String SUBSCRIPTIONS_ATTRIBUTE = "rss.subscriptions";
+
+	private static final String MUTATION_ATTRIBUTE = FeedPageFilter.class.getName() + ".mutation";
+	private static final String LOAD_ATTRIBUTE     = FeedPageFilter.class.getName() + ".load";
+
+	private static final DynamicIntProperty feedsPerPage =
+			DynamicPropertyFactory.getInstance().getIntProperty(RSSConstants.EDGE_FEEDS_PER_PAGE, 30);
+	private static final DynamicIntProperty itemsPerFeed =
+			DynamicPropertyFactory.getInstance().getIntProperty(RSSConstants.EDGE_ITEMS_PER_FEED, 5);
+
+	public void init(FilterConfig filterConfig) {
+		CommandContinuations.register();
+	}
+
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+			throws IOException, ServletException {
+		if (!(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)) {
+			chain.doFilter(request, response);
+			return;
+		}
+		HttpServletRequest httpRequest = (HttpServletRequest) request;
+		Continuation continuation = ContinuationSupport.getContinuation(httpRequest, null);
+
+		Mutation mutation = (Mutation) request.getAttribute(MUTATION_ATTRIBUTE);
+		if (mutation == null) {
+			mutation = startMutation(httpRequest);
+		}
+		if (mutation != null) {
+			request.setAttribute(MUTATION_ATTRIBUTE, mutation);
+			CommandContinuations.suspend(mutation.command, continuation);
+			try {
+				mutation.future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ServletException(e);
+			} catch (ExecutionException e) {
+				throw new ServletException(e.getCause());
+			}
+			((HttpServletResponse) response).sendRedirect(RSSConstants.EDGE_PAGE_PATH);
+			return;
+		}
+
+		if (request.getAttribute(SUBSCRIPTIONS_ATTRIBUTE) == null) {
+			SubscriptionsCache.Load load = (SubscriptionsCache.Load) request.getAttribute(LOAD_ATTRIBUTE);
+			if (load == null) {
+				int offset = 0;
+				try {
+					offset = Math.max(0, Integer.parseInt(request.getParameter("offset")));
+				} catch (NumberFormatException e) {
+					// First page
+				}
+				SubscriptionsPayload subscriptions = SubscriptionsCache.getInstance().getIfPresent(offset, feedsPerPage.get(), itemsPerFeed.get());
+				if (subscriptions != null) {
+					request.setAttribute(SUBSCRIPTIONS_ATTRIBUTE, subscriptions);
+				} else {
+					load = SubscriptionsCache.getInstance().load(offset, feedsPerPage.get(), itemsPerFeed.get());
+					request.setAttribute(LOAD_ATTRIBUTE, load);
+				}
+			}
+			if (load != null) {
+				CommandContinuations.suspend(load.getCommand(), continuation);
+				request.setAttribute(SUBSCRIPTIONS_ATTRIBUTE, load.get());
+			}
+		}
+		chain.doFilter(request, response);
+	}
+
+	public void destroy() {
+	}
+
+	/**
+	 * @return the delete or add of a feed requested, queued, or null
+	 */
+	private Mutation startMutation(HttpServletRequest request) throws IOException {
+		HystrixCommand<String> command;
+		String delFeedUrl = request.getParameter("delFeedUrl");
+		String url = request.getParameter("url");
+		if (delFeedUrl != null) {
+			command = new DeleteRSSCommand(delFeedUrl);
+		} else if (url != null) {
+			command = new AddRSSCommand(URLEncoder.encode(url, "UTF-8"));
+		} else {
+			return null;
+		}
+		return new Mutation(command, CommandContinuations.queue(command));
+	}
+
+	private static class Mutation {
+		private final HystrixCommand<String> command;
+		private final Future<String> future;
+
+		private Mutation(HystrixCommand<String> command, Future<String> future) {
+			this.command = command;
+			this.future = future;
+		}
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.server;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URLEncoder;
+
+import com.netflix.recipes.rss.hystrix.SubscriptionsHandler;
+import com.netflix.recipes.rss.hystrix.SubscriptionsPayload;
+
+/**
+ * Writes the feeds of the page as the subscriptions are decoded (see
+ * {@link SubscriptionsPayload#decode}): rows of three feeds, each with its
+ * title, delete link and items. Everything written is HTML escaped, the item
+ * descriptions are HTML themselves, shown by the popovers of the page.
+ *
+ * Not thread safe, one per rendering.
+ */
+public class FeedPageRenderer implements SubscriptionsHandler {
+	private static final int FEEDS_PER_ROW = 3;
+
+	private final Writer out;
+	private final int itemsPerFeed;
+
+	private int feeds;
+	private int items;
+	private int nextOffset = -1;
+	private String watermark;
+
+	/**
+	 * @param itemsPerFeed items shown per feed, 0 for all of them
+	 */
+	public FeedPageRenderer(Writer out, int itemsPerFeed) {
+		this.out = out;
+		this.itemsPerFeed = itemsPerFeed;
+	}
+
+	public void user(String user) {
+	}
+
+	public void feed(String url, String title) throws IOException {
+		if (feeds % FEEDS_PER_ROW == 0) {
+			out.write("<div class=\"row\">\n");
+		}
+		feeds++;
+		items = 0;
+		out.write("<div class=\"span4\" data-url=\"");
+		escape(url);
+		out.write("\">\n<h4>");
+		escape(title);
+		out.write(" <a href=\"?delFeedUrl=");
+		if (url != null) {
+			out.write(URLEncoder.encode(url, "UTF-8"));
+		}
+		out.write("\"><i class=\"icon-remove\"></i> </a></h4>\n");
+	}
+
+	public void item(String id, String title, String link, String description) throws IOException {
+		// Middle tiers that do not limit the items send them all
+		if (itemsPerFeed > 0 && items >= itemsPerFeed) return;
+		items++;
+		out.write("<p data-container=\"body\" data-content=\"");
+		escape(description);
+		out.write("\" data-trigger=\"hover\" data-placement=\"right\" data-html=\"true\"><a href=\"");
+		escape(link);
+		out.write("\">");
+		escape(title);
+		out.write("</a></p>\n");
+	}
+
+	public void endFeed() throws IOException {
+		out.write("</div>\n");
+		if (feeds % FEEDS_PER_ROW == 0) {
+			out.write("</div>\n");
+		}
+	}
+
+	public void timedOut(String url) {
+	}
+
+	public void nextOffset(int nextOffset) {
+		this.nextOffset = nextOffset;
+	}
+
+	public void watermark(String watermark) {
+		this.watermark = watermark;
+	}
+
+	/**
+	 * Closes the last row, once the subscriptions are decoded
+	 */
+	public void finish() throws IOException {
+		if (feeds % FEEDS_PER_ROW != 0) {
+			out.write("</div>\n");
+		}
+	}
+
+	/**
+	 * Writes the previous and more feeds links, once the subscriptions are decoded
+	 */
+	public void writePager(int offset, int feedsPerPage) throws IOException {
+		if (offset > 0) {
+			out.write("<li class=\"previous\"><a href=\"?offset=");
+			out.write(Integer.toString(Math.max(0, offset - feedsPerPage)));
+			out.write("\">&larr; Previous feeds</a></li>\n");
+		}
+		if (nextOffset >= 0) {
+			out.write("<li class=\"next\"><a href=\"?offset=");
+			out.write(Integer.toString(nextOffset));
+			out.write("\">More feeds &rarr;</a></li>\n");
+		}
+	}
+
+	/**
+	 * @return the watermark of the subscriptions, or null if the middle tier does not know it
+	 */
+	public String getWatermark() {
+		return watermark;
+	}
+
+	/**
+	 * Writes the text escaped for HTML text and attribute values, without copying it
+	 */
+	void escape(String text) throws IOException {
+		if (text == null) return;
+		int start = 0;
+		for (int i = 0; i < text.length(); i++) {
+			String entity;
+			switch (text.charAt(i)) {
+			case '&':  entity = "&amp;";  break;
+			case '<':  entity = "&lt;";   break;
+			case '>':  entity = "&gt;";   break;
+			case '"':  entity = "&quot;"; break;
+			case '\'': entity = "&#39;";  break;
+			default:   continue;
+			}
+			out.write(text, start, i - start);
+			out.write(entity);
+			start = i + 1;
+		}
+		out.write(text, start, text.length() - start);
+	}
+}
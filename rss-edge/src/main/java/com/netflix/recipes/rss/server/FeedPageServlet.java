@@ -0,0 +1,96 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.server;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URLEncoder;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.netflix.config.DynamicIntProperty;
+import com.netflix.config.DynamicPropertyFactory;
+import com.netflix.recipes.rss.RSSConstants;
+import com.netflix.recipes.rss.hystrix.SubscriptionsCache;
+import com.netflix.recipes.rss.hystrix.SubscriptionsPayload;
+
+/**
+ * Feed page of the edge: the template (templates/rss.html) is split once, and
+ * the feeds are written as the subscriptions got by {@link FeedPageFilter} are
+ * decoded, see {@link FeedPageRenderer}. Without the filter the subscriptions
+ * are got here.
+ */
+public class FeedPageServlet extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+
+	private static final PageTemplate template = PageTemplate.load("templates/rss.html");
+
+	private static final DynamicIntProperty feedsPerPage =
+			DynamicPropertyFactory.getInstance().getIntProperty(RSSConstants.EDGE_FEEDS_PER_PAGE, 30);
+	private static final DynamicIntProperty itemsPerFeed =
+			DynamicPropertyFactory.getInstance().getIntProperty(RSSConstants.EDGE_ITEMS_PER_FEED, 5);
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		int offset = 0;
+		try {
+			offset = Math.max(0, Integer.parseInt(request.getParameter("offset")));
+		} catch (NumberFormatException e) {
+			// First page
+		}
+		SubscriptionsPayload subscriptions = (SubscriptionsPayload) request.getAttribute(FeedPageFilter.SUBSCRIPTIONS_ATTRIBUTE);
+		if (subscriptions == null) {
+			subscriptions = SubscriptionsCache.getInstance().get(offset, feedsPerPage.get(), itemsPerFeed.get());
+		}
+
+		response.setContentType("text/html;charset=UTF-8");
+		render(response.getWriter(), subscriptions, offset, feedsPerPage.get(), itemsPerFeed.get());
+	}
+
+	// The add form posts to the page, FeedPageFilter makes the call then redirects
+	@Override
+	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		doGet(request, response);
+	}
+
+	/**
+	 * Writes the page of subscriptions
+	 */
+	public static void render(Writer out, final SubscriptionsPayload subscriptions, final int offset,
+			final int feedsPerPage, int itemsPerFeed) throws IOException {
+		final FeedPageRenderer renderer = new FeedPageRenderer(out, itemsPerFeed);
+		template.render(out, new PageTemplate.Slots() {
+			public void write(String slot, Writer out) throws IOException {
+				if ("feeds".equals(slot)) {
+					subscriptions.decode(renderer);
+					renderer.finish();
+				} else if ("pager".equals(slot)) {
+					renderer.writePager(offset, feedsPerPage);
+				} else if ("stream".equals(slot)) {
+					String watermark = renderer.getWatermark();
+					renderer.escape(RSSConstants.EDGE_STREAM_PATH + "?offset=" + offset
+							+ "&watermark=" + (watermark != null ? URLEncoder.encode(watermark, "UTF-8") : ""));
+				} else if ("page".equals(slot)) {
+					out.write(RSSConstants.EDGE_PAGE_PATH);
+				} else {
+					throw new IllegalArgumentException("Unknown slot " + slot);
+				}
+			}
+		});
+	}
+}
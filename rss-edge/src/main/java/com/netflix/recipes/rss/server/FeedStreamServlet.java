@@ -0,0 +1,139 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.common.base.Charsets;
+import com.netflix.config.DynamicIntProperty;
+import com.netflix.config.DynamicPropertyFactory;
+import com.netflix.recipes.rss.RSSConstants;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.BasicGauge;
+import com.netflix.servo.monitor.Counter;
+import com.netflix.servo.monitor.Gauge;
+import com.netflix.servo.monitor.MonitorConfig;
+
+/**
+ * Streams the new items of the user's feeds as server-sent events (text/event-stream),
+ * so that the page does not have to be reloaded, see {@link FeedUpdates}:
+ *  event: items, data: {"url": .., "title": .., "items": [..]} for every feed with new items
+ *  event: resync when the client fell behind and has to reload the page
+ * and a comment line every rss.edge.stream.heartbeatMs, so that idle
+ * connections are kept open by proxies and closed ones are noticed.
+ *
+ * Like hystrix.stream every connection holds a thread, so there are at most
+ * rss.edge.stream.maxConnections of them, the others get a 503.
+ * The client passes the offset and watermark of the page it shows.
+ */
+public class FeedStreamServlet extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+
+	// JMX:  com.netflix.servo.COUNTER.EdgeRSS_*
+	private static final Counter connectionCounter = new BasicCounter(MonitorConfig.builder("EdgeRSS_streamConnectionCounter").build());
+	private static final Counter rejectedCounter   = new BasicCounter(MonitorConfig.builder("EdgeRSS_streamRejectedCounter").build());
+
+	private static final AtomicInteger connections = new AtomicInteger();
+
+	static {
+		DefaultMonitorRegistry.getInstance().register(connectionCounter);
+		DefaultMonitorRegistry.getInstance().register(rejectedCounter);
+
+		Gauge<Integer> connectionsGauge = new BasicGauge<Integer>(MonitorConfig.builder("EdgeRSS_streamConnections").build(),
+				new Callable<Integer>() {
+					public Integer call() {
+						return connections.get();
+					}
+				});
+		DefaultMonitorRegistry.getInstance().register(connectionsGauge);
+	}
+
+	private static final DynamicIntProperty maxConnections =
+			DynamicPropertyFactory.getInstance().getIntProperty(RSSConstants.EDGE_STREAM_MAX_CONNECTIONS, 100);
+	private static final DynamicIntProperty heartbeatMs =
+			DynamicPropertyFactory.getInstance().getIntProperty(RSSConstants.EDGE_STREAM_HEARTBEAT_MS, 15000);
+
+	// Clients wait this long before reconnecting
+	private static final byte[] RETRY = "retry: 10000\n\n".getBytes(Charsets.UTF_8);
+	private static final byte[] HEARTBEAT = ": ping\n\n".getBytes(Charsets.UTF_8);
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		if (connections.incrementAndGet() > maxConnections.get()) {
+			connections.decrementAndGet();
+			rejectedCounter.increment();
+			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many streams");
+			return;
+		}
+
+		try {
+			connectionCounter.increment();
+			stream(request, response);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			connections.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Writes the events until the client goes away
+	 */
+	private void stream(HttpServletRequest request, HttpServletResponse response) throws IOException, InterruptedException {
+		int offset = 0;
+		try {
+			offset = Math.max(0, Integer.parseInt(request.getParameter("offset")));
+		} catch (NumberFormatException e) {
+			// First page
+		}
+
+		response.setStatus(HttpServletResponse.SC_OK);
+		response.setContentType("text/event-stream;charset=UTF-8");
+		response.setHeader("Cache-Control", "no-cache");
+		OutputStream out = response.getOutputStream();
+		out.write(RETRY);
+		response.flushBuffer();
+
+		FeedUpdates.Listener listener = FeedUpdates.getInstance().subscribe(
+				RSSConstants.DEFUALT_USER, offset, request.getParameter("watermark"));
+		try {
+			while (true) {
+				String event = listener.poll(heartbeatMs.get(), TimeUnit.MILLISECONDS);
+				if (event == null) {
+					out.write(HEARTBEAT);
+				} else {
+					// Everything pending goes out in one flush
+					for (; event != null; event = listener.poll()) {
+						out.write(event.getBytes(Charsets.UTF_8));
+					}
+				}
+				// Fails once the client is gone
+				response.flushBuffer();
+			}
+		} finally {
+			FeedUpdates.getInstance().unsubscribe(listener);
+		}
+	}
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.netflix.config.DynamicIntProperty;
+import com.netflix.config.DynamicPropertyFactory;
+import com.netflix.recipes.rss.RSSConstants;
+import com.netflix.recipes.rss.hystrix.GetRSSCommand;
+import com.netflix.recipes.rss.util.DescriptiveThreadFactory;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.Counter;
+import com.netflix.servo.monitor.MonitorConfig;
+
+/**
+ * New items of the users' feeds, for the streams of FeedStreamServlet.
+ *
+ * The middle tier has no push stream, so while a page of a user's feeds has
+ * streams open a single poller asks it for the items of the page published
+ * since the last poll (every rss.edge.stream.pollIntervalMs) and hands them to
+ * every stream of the page. Polling by page keeps the watermark, which has an
+ * entry per feed and goes in the query string, as small as the page.
+ * The pollers remember the ids of the items already handed out: a middle tier
+ * node that does not know the watermark answers every item, only the new
+ * ones are streamed.
+ *
+ * Every stream has a bounded queue of events (rss.edge.stream.queueSize).
+ * A stream that falls behind gets its queue replaced by a resync event,
+ * telling the client to reload the page.
+ */
+public class FeedUpdates {
+	private static final Logger logger = LoggerFactory.getLogger(FeedUpdates.class);
+
+	// JMX:  com.netflix.servo.COUNTER.EdgeRSS_*
+	private static final Counter pollCounter     = new BasicCounter(MonitorConfig.builder("EdgeRSS_streamPollCounter").build());
+	private static final Counter eventCounter    = new BasicCounter(MonitorConfig.builder("EdgeRSS_streamEventCounter").build());
+	private static final Counter overflowCounter = new BasicCounter(MonitorConfig.builder("EdgeRSS_streamOverflowCounter").build());
+
+	static {
+		DefaultMonitorRegistry.getInstance().register(pollCounter);
+		DefaultMonitorRegistry.getInstance().register(eventCounter);
+		DefaultMonitorRegistry.getInstance().register(overflowCounter);
+	}
+
+	static final String RESYNC_EVENT = "event: resync\ndata: {}\n\n";
+
+	// Item ids remembered per feed, well above the items a feed keeps
+	private static final int MAX_SEEN_ITEMS = 500;
+
+	private static final FeedUpdates instance = new FeedUpdates();
+
+	private final DynamicIntProperty queueSize =
+			DynamicPropertyFactory.getInstance().getIntProperty(RSSConstants.EDGE_STREAM_QUEUE_SIZE, 100);
+	private final DynamicIntProperty itemsPerFeed =
+			DynamicPropertyFactory.getInstance().getIntProperty(RSSConstants.EDGE_ITEMS_PER_FEED, 5);
+	private final DynamicIntProperty feedsPerPage =
+			DynamicPropertyFactory.getInstance().getIntProperty(RSSConstants.EDGE_FEEDS_PER_PAGE, 30);
+	private final int pollIntervalMs =
+			DynamicPropertyFactory.getInstance().getIntProperty(RSSConstants.EDGE_STREAM_POLL_INTERVAL_MS, 30000).get();
+
+	private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(
+			DynamicPropertyFactory.getInstance().getIntProperty(RSSConstants.EDGE_STREAM_POLLER_THREADS, 4).get(),
+			new DescriptiveThreadFactory("EdgeRSS-StreamPoller", Thread.NORM_PRIORITY, true));
+
+	// By user and page offset, guarded by this
+	private final Map<String, PagePoller> pollers = new HashMap<String, PagePoller>();
+
+	public static FeedUpdates getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Events of a stream, as they are written to it
+	 */
+	public class Listener {
+		private final String page;
+		private final BlockingQueue<String> events = new ArrayBlockingQueue<String>(queueSize.get());
+
+		private Listener(String page) {
+			this.page = page;
+		}
+
+		/**
+		 * @return the next event, or null if none came within the timeout
+		 */
+		public String poll(long timeout, TimeUnit unit) throws InterruptedException {
+			return events.poll(timeout, unit);
+		}
+
+		/**
+		 * @return the next event, or null if there is none
+		 */
+		public String poll() {
+			return events.poll();
+		}
+
+		private void offer(String event) {
+			if (!events.offer(event)) {
+				// The client missed events, it has to reload
+				overflowCounter.increment();
+				events.clear();
+				events.offer(RESYNC_EVENT);
+			}
+		}
+	}
+
+	/**
+	 * Starts streaming the new items of the user's feeds to the listener
+	 *
+	 * @param offset    offset of the page the client shows
+	 * @param watermark watermark of the page the client shows, to also stream
+	 *                  what was published since it was loaded, or null
+	 */
+	public Listener subscribe(String user, int offset, String watermark) {
+		String page = user + "/" + offset;
+		Listener listener = new Listener(page);
+		synchronized (this) {
+			PagePoller poller = pollers.get(page);
+			if (poller == null) {
+				poller = new PagePoller(page, offset);
+				poller.task = scheduler.scheduleWithFixedDelay(poller, 0, pollIntervalMs, TimeUnit.MILLISECONDS);
+				pollers.put(page, poller);
+			}
+			poller.listeners.add(listener);
+		}
+
+		// The poller only streams what it has not seen, catch up on what the client has not seen.
+		// Subscribed first, so that items can only be streamed twice, never missed.
+		if (watermark != null && !watermark.isEmpty()) {
+			JSONObject subscriptions = new GetRSSCommand(offset, feedsPerPage.get(), itemsPerFeed.get(), watermark).execute().toJSON();
+			for (String event: toEvents(subscriptions, null)) {
+				listener.offer(event);
+			}
+		}
+		return listener;
+	}
+
+	public void unsubscribe(Listener listener) {
+		synchronized (this) {
+			PagePoller poller = pollers.get(listener.page);
+			if (poller != null && poller.listeners.remove(listener) && poller.listeners.isEmpty()) {
+				poller.task.cancel(false);
+				pollers.remove(listener.page);
+			}
+		}
+	}
+
+	/**
+	 * One SSE event per feed with new items: event: items, data: {"url": .., "title": .., "items": [..]}
+	 *
+	 * @param seen ids of the items already streamed by feed url, updated, or null to stream every item
+	 */
+	private static List<String> toEvents(JSONObject subscriptions, Map<String, Set<String>> seen) {
+		List<String> events = new ArrayList<String>();
+		JSONArray feeds = subscriptions.optJSONArray("subscriptions");
+		if (feeds == null) return events;
+
+		try {
+			for (int i = 0; i < feeds.length(); i++) {
+				JSONObject feed = feeds.getJSONObject(i);
+				String url = feed.optString("url");
+				JSONArray items = feed.getJSONArray("items");
+
+				Set<String> seenItems = null;
+				if (seen != null) {
+					seenItems = seen.get(url);
+					if (seenItems == null) {
+						seenItems = new LinkedHashSet<String>();
+						seen.put(url, seenItems);
+					}
+				}
+
+				JSONArray newItems = new JSONArray();
+				for (int j = 0; j < items.length(); j++) {
+					JSONObject item = items.getJSONObject(j);
+					if (seenItems == null || seenItems.add(getKey(item))) {
+						newItems.put(item);
+					}
+				}
+				if (seenItems != null) {
+					for (Iterator<String> oldest = seenItems.iterator(); seenItems.size() > MAX_SEEN_ITEMS; ) {
+						oldest.next();
+						oldest.remove();
+					}
+				}
+
+				if (newItems.length() > 0) {
+					JSONObject event = new JSONObject();
+					event.put("url", url);
+					event.put("title", feed.opt("title"));
+					event.put("items", newItems);
+					// JSON has no line breaks, the data fits on one line
+					events.add("event: items\ndata: " + event.toString() + "\n\n");
+				}
+			}
+		} catch (JSONException e) {
+			logger.error("Unexpected subscriptions " + subscriptions, e);
+		}
+		return events;
+	}
+
+	/**
+	 * Changed items are streamed again: they keep their id, not their content
+	 */
+	private static String getKey(JSONObject item) {
+		return item.optString("id") + ":" + (item.optString("title") + item.optString("link") + item.optString("description")).hashCode();
+	}
+
+	/**
+	 * Polls the middle tier for the new items of a page of a user's feeds
+	 */
+	private class PagePoller implements Runnable {
+		private final String page;
+		private final int offset;
+		private final Set<Listener> listeners = new CopyOnWriteArraySet<Listener>();
+		private final Map<String, Set<String>> seen = new HashMap<String, Set<String>>();
+		private ScheduledFuture<?> task;
+		private String watermark;
+
+		private PagePoller(String page, int offset) {
+			this.page = page;
+			this.offset = offset;
+		}
+
+		public void run() {
+			try {
+				pollCounter.increment();
+				// The page the clients show, the first poll only records what they already have
+				JSONObject subscriptions = new GetRSSCommand(offset, feedsPerPage.get(), itemsPerFeed.get(), watermark).execute().toJSON();
+				String newWatermark = subscriptions.optString("watermark", null);
+				if (newWatermark == null) {
+					// Fallback, or a middle tier that does not know watermarks: try again next time
+					return;
+				}
+
+				List<String> events = toEvents(subscriptions, seen);
+				if (watermark != null) {
+					for (String event: events) {
+						eventCounter.increment();
+						for (Listener listener: listeners) {
+							listener.offer(event);
+						}
+					}
+				}
+				watermark = newWatermark;
+			} catch (Exception e) {
+				// Keep polling
+				logger.error("Exception occurred when polling the new items of " + page, e);
+			}
+		}
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+
+import com.google.common.base.Charsets;
+
+/**
+ * HTML page with {{name}} slots, split once when it is loaded: rendering it
+ * writes the static text as is, and calls back for the slots.
+ */
+public class PageTemplate {
+	private final String[] texts;
+	private final String[] slots;
+
+	public interface Slots {
+		void write(String slot, Writer out) throws IOException;
+	}
+
+	public PageTemplate(String template) {
+		List<String> texts = new ArrayList<String>();
+		List<String> slots = new ArrayList<String>();
+		int start = 0;
+		for (int open = template.indexOf("{{"); open >= 0; open = template.indexOf("{{", start)) {
+			int close = template.indexOf("}}", open);
+			if (close < 0) {
+				throw new IllegalArgumentException("Slot not closed at " + open);
+			}
+			texts.add(template.substring(start, open));
+			slots.add(template.substring(open + 2, close).trim());
+			start = close + 2;
+		}
+		texts.add(template.substring(start));
+		this.texts = texts.toArray(new String[texts.size()]);
+		this.slots = slots.toArray(new String[slots.size()]);
+	}
+
+	/**
+	 * @param resource classpath resource of the template, UTF-8
+	 */
+	public static PageTemplate load(String resource) {
+		InputStream in = PageTemplate.class.getClassLoader().getResourceAsStream(resource);
+		if (in == null) {
+			throw new IllegalArgumentException("No template " + resource);
+		}
+		try {
+			return new PageTemplate(IOUtils.toString(in, Charsets.UTF_8));
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Cannot read template " + resource, e);
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	public void render(Writer out, Slots values) throws IOException {
+		for (int i = 0; i < slots.length; i++) {
+			out.write(texts[i]);
+			values.write(slots[i], out);
+		}
+		out.write(texts[slots.length]);
+	}
+}
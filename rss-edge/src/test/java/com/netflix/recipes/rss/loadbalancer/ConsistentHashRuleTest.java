@@ -0,0 +1,157 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.loadbalancer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.netflix.loadbalancer.BaseLoadBalancer;
+import com.netflix.loadbalancer.Server;
+import com.netflix.loadbalancer.ServerStats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConsistentHashRuleTest {
+	private static final int KEYS = 1000;
+
+	private BaseLoadBalancer lb;
+	private ConsistentHashRule rule;
+	private List<Server> servers;
+
+	@Before
+	public void setUp() {
+		servers = new ArrayList<Server>();
+		for (int i = 1; i <= 4; i++) {
+			servers.add(new Server("middletier-" + i, 9191));
+		}
+		rule = new ConsistentHashRule();
+		lb = new BaseLoadBalancer();
+		lb.setRule(rule);
+		lb.addServers(servers);
+	}
+
+	@After
+	public void tearDown() {
+		lb.cancelPingTask();
+	}
+
+	@Test
+	public void keysStayOnTheSameServer() {
+		Map<String, Server> chosen = chooseAll();
+		assertEquals(new HashSet<Server>(servers), new HashSet<Server>(chosen.values()));
+		assertEquals(chosen, chooseAll());
+	}
+
+	@Test
+	public void removingAServerOnlyMovesItsKeys() {
+		Map<String, Server> before = chooseAll();
+		Server removed = servers.get(2);
+
+		List<Server> remaining = new ArrayList<Server>(servers);
+		remaining.remove(removed);
+		lb.setServersList(remaining);
+
+		Map<String, Server> after = chooseAll();
+		for (String key: before.keySet()) {
+			assertFalse(removed.equals(after.get(key)));
+			if (!before.get(key).equals(removed)) {
+				assertEquals(before.get(key), after.get(key));
+			}
+		}
+	}
+
+	@Test
+	public void failsOverFromADownServer() {
+		Map<String, Server> before = chooseAll();
+		Server down = servers.get(1);
+		lb.markServerDown(down);
+
+		Map<String, Server> after = chooseAll();
+		for (String key: before.keySet()) {
+			assertNotNull(after.get(key));
+			assertFalse(down.equals(after.get(key)));
+			if (!before.get(key).equals(down)) {
+				assertEquals(before.get(key), after.get(key));
+			}
+		}
+	}
+
+	@Test
+	public void failsOverFromATrippedCircuitBreaker() {
+		Map<String, Server> before = chooseAll();
+		Server failing = servers.get(3);
+		ServerStats stats = lb.getLoadBalancerStats().getSingleServerStat(failing);
+		for (int i = 0; i < 10; i++) {
+			stats.incrementSuccessiveConnectionFailureCount();
+		}
+		assertTrue(stats.isCircuitBreakerTripped());
+
+		Map<String, Server> after = chooseAll();
+		for (String key: before.keySet()) {
+			assertFalse(failing.equals(after.get(key)));
+			if (!before.get(key).equals(failing)) {
+				assertEquals(before.get(key), after.get(key));
+			}
+		}
+	}
+
+	@Test
+	public void spillsOverBusyServers() {
+		// Every request stays active, no server gets more than the bound
+		Map<Server, Integer> active = new HashMap<Server, Integer>();
+		for (int i = 0; i < KEYS; i++) {
+			// The same hot user
+			Server server = rule.choose(i % 2 == 0 ? "hot-user" : "user" + i);
+			lb.getLoadBalancerStats().getSingleServerStat(server).incrementActiveRequestsCount();
+			Integer count = active.get(server);
+			active.put(server, count == null ? 1 : count + 1);
+		}
+
+		int maxActive = (int) Math.ceil(1.25 * KEYS / servers.size());
+		for (Server server: servers) {
+			int count = active.containsKey(server) ? active.get(server) : 0;
+			assertTrue(server + " got " + count + " requests", count <= maxActive);
+		}
+	}
+
+	@Test
+	public void balancesRequestsWithoutAKeyRoundRobin() {
+		Set<Server> chosen = new HashSet<Server>();
+		for (int i = 0; i < servers.size(); i++) {
+			chosen.add(rule.choose(null));
+		}
+		assertEquals(new HashSet<Server>(servers), chosen);
+	}
+
+	private Map<String, Server> chooseAll() {
+		Map<String, Server> chosen = new HashMap<String, Server>();
+		for (int i = 0; i < KEYS; i++) {
+			chosen.put("user" + i, rule.choose("user" + i));
+		}
+		return chosen;
+	}
+}
@@ -20,6 +20,11 @@ package com.netflix.recipes.rss;
  */
 public interface RSSItem {
 
+    /**
+     * Stable id of the item: its guid (RSS) or id (Atom), or else a hash of its link
+     */
+    String getId();
+
     /**
      * The title of the item
      */
@@ -1,6 +1,11 @@
 package com.netflix.recipes.rss;
 
+import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface RSSStore {
     List<String> getSubscribedUrls(String userId) throws Exception;
@@ -8,4 +13,27 @@ public interface RSSStore {
     void subscribeUrl(String userId, String url) throws Exception;
 
     void unsubscribeUrl(String userId, String url) throws Exception;
-}
\ No newline at end of file
+
+    /**
+     * Feed urls of many users in one round trip, users without subscriptions are left out
+     */
+    Map<String, List<String>> getSubscribedUrls(Collection<String> userIds) throws Exception;
+
+    /**
+     * Adds all the (user, url) pairs in one batch
+     */
+    void subscribeUrls(Multimap<String, String> urlsByUser) throws Exception;
+
+    /**
+     * Deletes all the (user, url) pairs in one batch
+     */
+    void unsubscribeUrls(Multimap<String, String> urlsByUser) throws Exception;
+
+    ListenableFuture<List<String>> getSubscribedUrlsAsync(String userId);
+
+    ListenableFuture<Map<String, List<String>>> getSubscribedUrlsAsync(Collection<String> userIds);
+
+    ListenableFuture<Void> subscribeUrlsAsync(Multimap<String, String> urlsByUser);
+
+    ListenableFuture<Void> unsubscribeUrlsAsync(Multimap<String, String> urlsByUser);
+}
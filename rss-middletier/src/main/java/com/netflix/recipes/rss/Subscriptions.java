@@ -34,5 +34,19 @@ public interface Subscriptions {
      * List of the subscribed RSS feeds along with its contents 
      */
     List<RSS> getSubscriptions();
-    
+
+    /**
+     * Urls of the subscribed feeds that could not be fetched in time
+     */
+    List<String> getTimedOutUrls();
+
+    /**
+     * Offset of the next page of subscribed feeds, null if this is the last page
+     */
+    Integer getNextOffset();
+
+    /**
+     * Watermarks of the feeds of this page, to only get their new items the next time, null if unknown
+     */
+    String getWatermark();
 }
@@ -0,0 +1,94 @@
+package com.netflix.recipes.rss.impl;
+
+import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.netflix.config.DynamicPropertyFactory;
+import com.netflix.recipes.rss.RSSConstants;
+import com.netflix.recipes.rss.RSSStore;
+import com.netflix.recipes.rss.util.DescriptiveThreadFactory;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
+/**
+ * Batch operations made of single operations, and async operations that run
+ * the blocking ones on a shared thread pool. Stores override the ones their
+ * backend can do better.
+ */
+public abstract class AbstractRSSStore implements RSSStore {
+
+    private static final ListeningExecutorService asyncExecutor = MoreExecutors.listeningDecorator(
+            Executors.newFixedThreadPool(
+                    DynamicPropertyFactory.getInstance().getIntProperty(RSSConstants.RSS_STORE_ASYNC_THREADS, 16).get(),
+                    new DescriptiveThreadFactory("RSSStore-Async", Thread.NORM_PRIORITY, true)));
+
+    @Override
+    public Map<String, List<String>> getSubscribedUrls(Collection<String> userIds) throws Exception {
+        Map<String, List<String>> result = new LinkedHashMap<String, List<String>>();
+        for (String userId: userIds) {
+            List<String> urls = getSubscribedUrls(userId);
+            if (!urls.isEmpty()) {
+                result.put(userId, urls);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void subscribeUrls(Multimap<String, String> urlsByUser) throws Exception {
+        for (Map.Entry<String, String> entry: urlsByUser.entries()) {
+            subscribeUrl(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public void unsubscribeUrls(Multimap<String, String> urlsByUser) throws Exception {
+        for (Map.Entry<String, String> entry: urlsByUser.entries()) {
+            unsubscribeUrl(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public ListenableFuture<List<String>> getSubscribedUrlsAsync(final String userId) {
+        return asyncExecutor.submit(new Callable<List<String>>() {
+            public List<String> call() throws Exception {
+                return getSubscribedUrls(userId);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<Map<String, List<String>>> getSubscribedUrlsAsync(final Collection<String> userIds) {
+        return asyncExecutor.submit(new Callable<Map<String, List<String>>>() {
+            public Map<String, List<String>> call() throws Exception {
+                return getSubscribedUrls(userIds);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<Void> subscribeUrlsAsync(final Multimap<String, String> urlsByUser) {
+        return asyncExecutor.submit(new Callable<Void>() {
+            public Void call() throws Exception {
+                subscribeUrls(urlsByUser);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<Void> unsubscribeUrlsAsync(final Multimap<String, String> urlsByUser) {
+        return asyncExecutor.submit(new Callable<Void>() {
+            public Void call() throws Exception {
+                unsubscribeUrls(urlsByUser);
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,254 @@
+package com.netflix.recipes.rss.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Multimap;
+import com.netflix.config.DynamicPropertyFactory;
+import com.netflix.recipes.rss.RSSConstants;
+import com.netflix.recipes.rss.RSSStore;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.BasicGauge;
+import com.netflix.servo.monitor.Counter;
+import com.netflix.servo.monitor.Gauge;
+import com.netflix.servo.monitor.MonitorConfig;
+import com.netflix.servo.monitor.Stopwatch;
+import com.netflix.servo.monitor.StatsTimer;
+import com.netflix.servo.stats.StatsConfig;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Read-through cache of the users' subscriptions in front of another store
+ * (rss.store.cache.enabled), for subscriptions that are read much more often
+ * than they change.
+ *
+ * Writes going through this node invalidate the user's entry, writes made
+ * through other nodes are seen once the entry expires (rss.store.cache.ttlMs).
+ * A read that raced with a write of the same user does not fill the cache.
+ */
+public class CachingStoreImpl extends AbstractRSSStore {
+
+    // JMX:  com.netflix.servo.COUNTER.MiddleTierRSS_*
+    private static final Counter hitCounter         = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_storeCacheHitCounter").build());
+    private static final Counter missCounter        = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_storeCacheMissCounter").build());
+    private static final Counter savedReadMsCounter = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_storeCacheSavedReadMsCounter").build());
+
+    // JMX:  com.netflix.servo.MiddleTierRSS_* (95th and 99th percentile)
+    private static final StatsTimer readStatsTimer = new StatsTimer(MonitorConfig.builder("MiddleTierRSS_storeReadStatsTimer").build(), new StatsConfig.Builder().build());
+
+    static {
+        DefaultMonitorRegistry.getInstance().register(hitCounter);
+        DefaultMonitorRegistry.getInstance().register(missCounter);
+        DefaultMonitorRegistry.getInstance().register(savedReadMsCounter);
+        DefaultMonitorRegistry.getInstance().register(readStatsTimer);
+    }
+
+    private final RSSStore delegate;
+    private final Cache<String, List<String>> cache;
+
+    private static final int VERSION_STRIPES = 1024;
+
+    // Version of the users of every stripe, bumped before and after every write of one of them
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+    // To estimate the read time saved by every hit
+    private final AtomicLong readCount = new AtomicLong();
+    private final AtomicLong readMs = new AtomicLong();
+
+    public CachingStoreImpl(RSSStore delegate) {
+        this(delegate,
+             DynamicPropertyFactory.getInstance().getIntProperty(RSSConstants.RSS_STORE_CACHE_MAX_USERS, 100000).get(),
+             DynamicPropertyFactory.getInstance().getLongProperty(RSSConstants.RSS_STORE_CACHE_TTL_MS, 60000).get());
+    }
+
+    public CachingStoreImpl(RSSStore delegate, int maxUsers, long ttlMs) {
+        this.delegate = delegate;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterWrite(ttlMs, TimeUnit.MILLISECONDS)
+                .build();
+
+        Gauge<Double> hitRatioGauge = new BasicGauge<Double>(MonitorConfig.builder("MiddleTierRSS_storeCacheHitRatio").build(),
+                new Callable<Double>() {
+                    public Double call() {
+                        return cache.stats().hitRate();
+                    }
+                });
+        Gauge<Long> sizeGauge = new BasicGauge<Long>(MonitorConfig.builder("MiddleTierRSS_storeCacheSize").build(),
+                new Callable<Long>() {
+                    public Long call() {
+                        return cache.size();
+                    }
+                });
+        DefaultMonitorRegistry.getInstance().register(hitRatioGauge);
+        DefaultMonitorRegistry.getInstance().register(sizeGauge);
+    }
+
+    @Override
+    public List<String> getSubscribedUrls(String userId) throws Exception {
+        List<String> urls = cache.getIfPresent(userId);
+        if (urls != null) {
+            recordHit();
+            return urls;
+        }
+        missCounter.increment();
+
+        long version = getVersion(userId);
+        Stopwatch stopwatch = readStatsTimer.start();
+        try {
+            urls = ImmutableList.copyOf(delegate.getSubscribedUrls(userId));
+        } finally {
+            recordRead(stopwatch);
+        }
+        fill(userId, version, urls);
+        return urls;
+    }
+
+    /**
+     * Serves the cached users and reads the others from the delegate in one batch
+     */
+    @Override
+    public Map<String, List<String>> getSubscribedUrls(Collection<String> userIds) throws Exception {
+        Map<String, List<String>> result = new LinkedHashMap<String, List<String>>();
+        List<String> missing = new ArrayList<String>();
+        for (String userId: userIds) {
+            List<String> urls = cache.getIfPresent(userId);
+            if (urls == null) {
+                missCounter.increment();
+                missing.add(userId);
+            } else {
+                recordHit();
+                if (!urls.isEmpty()) result.put(userId, urls);
+            }
+        }
+        if (missing.isEmpty()) return result;
+
+        long[] missingVersions = new long[missing.size()];
+        for (int i = 0; i < missingVersions.length; i++) {
+            missingVersions[i] = getVersion(missing.get(i));
+        }
+        Map<String, List<String>> loaded;
+        Stopwatch stopwatch = readStatsTimer.start();
+        try {
+            loaded = delegate.getSubscribedUrls(missing);
+        } finally {
+            recordRead(stopwatch);
+        }
+
+        for (int i = 0; i < missingVersions.length; i++) {
+            String userId = missing.get(i);
+            List<String> urls = loaded.get(userId);
+            List<String> cached = urls == null ? ImmutableList.<String>of() : ImmutableList.copyOf(urls);
+            fill(userId, missingVersions[i], cached);
+            if (!cached.isEmpty()) result.put(userId, cached);
+        }
+        return result;
+    }
+
+    @Override
+    public void subscribeUrl(String userId, String url) throws Exception {
+        startWrite(userId);
+        try {
+            delegate.subscribeUrl(userId, url);
+        } finally {
+            endWrite(userId);
+        }
+    }
+
+    @Override
+    public void unsubscribeUrl(String userId, String url) throws Exception {
+        startWrite(userId);
+        try {
+            delegate.unsubscribeUrl(userId, url);
+        } finally {
+            endWrite(userId);
+        }
+    }
+
+    @Override
+    public void subscribeUrls(Multimap<String, String> urlsByUser) throws Exception {
+        for (String userId: urlsByUser.keySet()) {
+            startWrite(userId);
+        }
+        try {
+            delegate.subscribeUrls(urlsByUser);
+        } finally {
+            for (String userId: urlsByUser.keySet()) {
+                endWrite(userId);
+            }
+        }
+    }
+
+    @Override
+    public void unsubscribeUrls(Multimap<String, String> urlsByUser) throws Exception {
+        for (String userId: urlsByUser.keySet()) {
+            startWrite(userId);
+        }
+        try {
+            delegate.unsubscribeUrls(urlsByUser);
+        } finally {
+            for (String userId: urlsByUser.keySet()) {
+                endWrite(userId);
+            }
+        }
+    }
+
+    private static int getStripe(String userId) {
+        return (userId.hashCode() & Integer.MAX_VALUE) % VERSION_STRIPES;
+    }
+
+    private long getVersion(String userId) {
+        return versions.get(getStripe(userId));
+    }
+
+    private void startWrite(String userId) {
+        versions.incrementAndGet(getStripe(userId));
+    }
+
+    /**
+     * Bumped again once the write landed: a read that started during the write
+     * may have read the store before it
+     */
+    private void endWrite(String userId) {
+        versions.incrementAndGet(getStripe(userId));
+        cache.invalidate(userId);
+    }
+
+    /**
+     * Caches the urls read at the version, unless the user was written since
+     */
+    private void fill(String userId, long version, List<String> urls) {
+        if (getVersion(userId) != version) return;
+        cache.put(userId, urls);
+        // A write that started before the put may have invalidated the entry already
+        if (getVersion(userId) != version) {
+            cache.invalidate(userId);
+        }
+    }
+
+    private void recordHit() {
+        hitCounter.increment();
+        long reads = readCount.get();
+        if (reads > 0) {
+            savedReadMsCounter.increment(readMs.get() / reads);
+        }
+    }
+
+    private void recordRead(Stopwatch stopwatch) {
+        stopwatch.stop();
+        long duration = stopwatch.getDuration(TimeUnit.MILLISECONDS);
+        readStatsTimer.record(duration, TimeUnit.MILLISECONDS);
+        readCount.incrementAndGet();
+        readMs.addAndGet(duration);
+    }
+}
@@ -1,7 +1,10 @@
 package com.netflix.recipes.rss.impl;
 
+import com.google.common.collect.Multimap;
 import com.netflix.astyanax.AstyanaxContext;
+import com.netflix.astyanax.ColumnListMutation;
 import com.netflix.astyanax.Keyspace;
+import com.netflix.astyanax.MutationBatch;
 import com.netflix.astyanax.connectionpool.NodeDiscoveryType;
 import com.netflix.astyanax.connectionpool.OperationResult;
 import com.netflix.astyanax.connectionpool.exceptions.NotFoundException;
@@ -11,20 +14,24 @@ import com.netflix.astyanax.impl.AstyanaxConfigurationImpl;
 import com.netflix.astyanax.model.Column;
 import com.netflix.astyanax.model.ColumnFamily;
 import com.netflix.astyanax.model.ColumnList;
+import com.netflix.astyanax.model.Row;
+import com.netflix.astyanax.model.Rows;
 import com.netflix.astyanax.serializers.StringSerializer;
 import com.netflix.astyanax.thrift.ThriftFamilyFactory;
 import com.netflix.config.DynamicPropertyFactory;
 import com.netflix.recipes.rss.RSSConstants;
-import com.netflix.recipes.rss.RSSStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 
-public class CassandraStoreImpl implements RSSStore {
+public class CassandraStoreImpl extends AbstractRSSStore {
 
     private static final Logger logger = LoggerFactory.getLogger(CassandraStoreImpl.class);
 
@@ -34,6 +41,9 @@ public class CassandraStoreImpl implements RSSStore {
     // Data model is documented in the wiki
     private static final ColumnFamily<String, String> CF_SUBSCRIPTIONS = new ColumnFamily<String, String>("Subscriptions", StringSerializer.get(), StringSerializer.get());
 
+    // Bulk updates are split in batches of at most this many columns
+    private static final int MAX_BATCH_COLUMNS = 1000;
+
     /**
      * Get the feed urls from Cassandra
      */
@@ -91,6 +101,85 @@ public class CassandraStoreImpl implements RSSStore {
         }
     }
 
+    /**
+     * Get the feed urls of many users with a single multiget
+     */
+    @Override
+    public Map<String, List<String>> getSubscribedUrls(Collection<String> userIds) throws Exception {
+        OperationResult<Rows<String, String>> response;
+        try {
+            response = getKeyspace().prepareQuery(CF_SUBSCRIPTIONS).getKeySlice(userIds).execute();
+            logger.info("Time taken to read " + userIds.size() + " users from Cassandra (in ms): " + response.getLatency(TimeUnit.MILLISECONDS));
+        } catch (Exception e) {
+            logger.error("Exception occurred when fetching from Cassandra: " + e);
+            throw e;
+        }
+
+        final Map<String, List<String>> items = new LinkedHashMap<String, List<String>>();
+        for (Row<String, String> row : response.getResult()) {
+            final ColumnList<String> columns = row.getColumns();
+            if (columns.isEmpty()) continue;
+
+            final List<String> urls = new ArrayList<String>(columns.size());
+            for (Column<String> column : columns) {
+                urls.add(column.getName());
+            }
+            items.put(row.getKey(), urls);
+        }
+
+        return items;
+    }
+
+    /**
+     * Add feed urls into Cassandra with mutation batches
+     */
+    @Override
+    public void subscribeUrls(Multimap<String, String> urlsByUser) throws Exception {
+        mutate(urlsByUser, true);
+    }
+
+    /**
+     * Delete feed urls from Cassandra with mutation batches
+     */
+    @Override
+    public void unsubscribeUrls(Multimap<String, String> urlsByUser) throws Exception {
+        mutate(urlsByUser, false);
+    }
+
+    private void mutate(Multimap<String, String> urlsByUser, boolean subscribe) throws Exception {
+        try {
+            MutationBatch batch = getKeyspace().prepareMutationBatch();
+            int columns = 0;
+            for (Map.Entry<String, Collection<String>> entry : urlsByUser.asMap().entrySet()) {
+                ColumnListMutation<String> row = batch.withRow(CF_SUBSCRIPTIONS, entry.getKey());
+                for (String url : entry.getValue()) {
+                    if (subscribe) {
+                        row.putColumn(url, "1", null);
+                    } else {
+                        row.deleteColumn(url);
+                    }
+
+                    if (++columns == MAX_BATCH_COLUMNS) {
+                        execute(batch, columns);
+                        batch = getKeyspace().prepareMutationBatch();
+                        row = batch.withRow(CF_SUBSCRIPTIONS, entry.getKey());
+                        columns = 0;
+                    }
+                }
+            }
+            if (columns > 0) {
+                execute(batch, columns);
+            }
+        } catch (Exception e) {
+            logger.error("Exception occurred when writing to Cassandra: " + e);
+            throw e;
+        }
+    }
+
+    private static void execute(MutationBatch batch, int columns) throws Exception {
+        OperationResult<Void> opr = batch.execute();
+        logger.info("Time taken to write a batch of " + columns + " columns to Cassandra (in ms): " + opr.getLatency(TimeUnit.MILLISECONDS));
+    }
 
     /**
      * Connect to Cassandra
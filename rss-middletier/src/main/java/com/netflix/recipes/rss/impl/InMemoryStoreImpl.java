@@ -1,43 +1,391 @@
 package com.netflix.recipes.rss.impl;
 
-import com.netflix.recipes.rss.RSSStore;
+import com.google.common.collect.Multimap;
+import com.netflix.config.DynamicPropertyFactory;
+import com.netflix.recipes.rss.RSSConstants;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-public class InMemoryStoreImpl implements RSSStore {
+/**
+ * Thread safe in memory store.
+ *
+ * Feed urls are interned into int ids and every user maps to a sorted int[]
+ * of the ids it subscribed to. The arrays are never modified in place:
+ * updates build a new array and swap it in with a compare-and-set on the
+ * user's entry, retrying if another update won the race. Reads are lock free
+ * and always see a consistent set. A subscription costs 4 bytes plus the
+ * per-user array and map entry, instead of a HashMap entry per url.
+ *
+ * With rss.store.inmemory.persistence.enabled the store survives restarts:
+ * every update is logged, and only returns once the log has been synced,
+ * see {@link SubscriptionJournal}. An update that could not be logged is
+ * undone, so that retrying it logs it again. Until its record is settled
+ * (synced or undone), the other updates of the same user and url wait.
+ */
+public class InMemoryStoreImpl extends AbstractRSSStore {
 
-    // Maintain the same data model as Cassandra
-    private static final Map<String, HashMap<String, String>> map = new HashMap<String, HashMap<String, String>>();
+    private static final int[] NO_SUBSCRIPTIONS = new int[0];
+
+    final UrlInterner urls = new UrlInterner();
+    final ConcurrentMap<String, int[]> subscriptions;
+
+    // Only when persistent: orders the updates of a user in the log the same way they were applied
+    private final SubscriptionJournal journal;
+    private final Object[] locks;
+    // Records not settled yet by user and url, only used with the user's lock held
+    private final ConcurrentMap<String, Map<String, SubscriptionJournal.Commit>> pending =
+            new ConcurrentHashMap<String, Map<String, SubscriptionJournal.Commit>>();
+
+    public InMemoryStoreImpl() {
+        this(getDataDir());
+    }
+
+    /**
+     * @param dataDir directory to persist the subscriptions into and recover them
+     *                from, or null to keep them in memory only
+     */
+    public InMemoryStoreImpl(File dataDir) {
+        // The map is striped into this many independently locked segments
+        int concurrencyLevel = DynamicPropertyFactory.getInstance()
+                .getIntProperty(RSSConstants.RSS_STORE_INMEMORY_CONCURRENCY, 64).get();
+        this.subscriptions = new ConcurrentHashMap<String, int[]>(1024, 0.75f, concurrencyLevel);
+
+        if (dataDir == null) {
+            this.journal = null;
+            this.locks = null;
+            return;
+        }
+
+        this.locks = new Object[concurrencyLevel];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        this.journal = new SubscriptionJournal(dataDir, this);
+        try {
+            journal.recover();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not recover the subscriptions from " + dataDir, e);
+        }
+        journal.start();
+    }
+
+    private static File getDataDir() {
+        DynamicPropertyFactory properties = DynamicPropertyFactory.getInstance();
+        if (!properties.getBooleanProperty(RSSConstants.RSS_STORE_INMEMORY_PERSISTENCE_ENABLED, false).get()) {
+            return null;
+        }
+        return new File(properties.getStringProperty(RSSConstants.RSS_STORE_INMEMORY_PERSISTENCE_DIR, "rss-store").get());
+    }
 
     @Override
     public List<String> getSubscribedUrls(String userId) {
-        List<String> urls = new ArrayList<String>();
-        if (map.containsKey(userId)) {
-            for (final Map.Entry<String, String> entry: map.get(userId).entrySet()) {
-                urls.add(entry.getKey());
-            }
+        int[] ids = getIds(userId);
+        List<String> result = new ArrayList<String>(ids.length);
+        for (int id: ids) {
+            result.add(urls.getUrl(id));
         }
+        return result;
+    }
 
-        return urls;
+    @Override
+    public void subscribeUrl(String userId, String url) throws IOException {
+        if (journal == null) {
+            add(userId, urls.intern(url));
+            return;
+        }
+
+        SubscriptionJournal.Commit commit;
+        Object lock = getLock(userId);
+        synchronized (lock) {
+            awaitSettled(lock, userId, url);
+            if (!add(userId, urls.intern(url))) return;
+            commit = log(SubscriptionJournal.SUBSCRIBE, userId, url);
+        }
+        commit.await();
     }
 
     @Override
-    public void subscribeUrl(String userId, String url) {
-        HashMap<String, String> feeds;
-        if (map.containsKey(userId)) {
-            feeds = map.get(userId);
-        } else {
-            feeds = new HashMap<String, String>(1);
+    public void unsubscribeUrl(String userId, String url) throws IOException {
+        int id = urls.getId(url);
+        if (id < 0) return;
+
+        if (journal == null) {
+            remove(userId, id);
+            return;
         }
-        feeds.put(url, "1");
-        map.put(userId, feeds);
+
+        SubscriptionJournal.Commit commit;
+        Object lock = getLock(userId);
+        synchronized (lock) {
+            awaitSettled(lock, userId, url);
+            if (!remove(userId, id)) return;
+            commit = log(SubscriptionJournal.UNSUBSCRIBE, userId, url);
+        }
+        commit.await();
     }
 
+    /**
+     * Logs the whole batch before waiting, so that it is synced at once
+     */
     @Override
-    public void unsubscribeUrl(String userId, String url) {
-        map.get(userId).remove(url);
+    public void subscribeUrls(Multimap<String, String> urlsByUser) throws Exception {
+        if (journal == null) {
+            super.subscribeUrls(urlsByUser);
+            return;
+        }
+
+        List<SubscriptionJournal.Commit> commits = new ArrayList<SubscriptionJournal.Commit>();
+        try {
+            for (Map.Entry<String, Collection<String>> entry: urlsByUser.asMap().entrySet()) {
+                String userId = entry.getKey();
+                Object lock = getLock(userId);
+                synchronized (lock) {
+                    for (String url: entry.getValue()) {
+                        awaitSettled(lock, userId, url);
+                        if (add(userId, urls.intern(url))) {
+                            commits.add(log(SubscriptionJournal.SUBSCRIBE, userId, url));
+                        }
+                    }
+                }
+            }
+        } finally {
+            await(commits);
+        }
+    }
+
+    @Override
+    public void unsubscribeUrls(Multimap<String, String> urlsByUser) throws Exception {
+        if (journal == null) {
+            super.unsubscribeUrls(urlsByUser);
+            return;
+        }
+
+        List<SubscriptionJournal.Commit> commits = new ArrayList<SubscriptionJournal.Commit>();
+        try {
+            for (Map.Entry<String, Collection<String>> entry: urlsByUser.asMap().entrySet()) {
+                String userId = entry.getKey();
+                Object lock = getLock(userId);
+                synchronized (lock) {
+                    for (String url: entry.getValue()) {
+                        int id = urls.getId(url);
+                        if (id < 0) continue;
+                        awaitSettled(lock, userId, url);
+                        if (remove(userId, id)) {
+                            commits.add(log(SubscriptionJournal.UNSUBSCRIBE, userId, url));
+                        }
+                    }
+                }
+            }
+        } finally {
+            await(commits);
+        }
+    }
+
+    /**
+     * Waits for the whole batch, so that it is synced at once
+     *
+     * @throws IOException the first record that could not be logged, the others are undone too
+     */
+    private static void await(List<SubscriptionJournal.Commit> commits) throws IOException {
+        IOException error = null;
+        for (SubscriptionJournal.Commit commit: commits) {
+            try {
+                commit.await();
+            } catch (IOException e) {
+                if (error == null) error = e;
+            }
+        }
+        if (error != null) throw error;
+    }
+
+    /**
+     * Writes a snapshot now, so that recovery does not have to replay the log
+     */
+    public void snapshot() throws IOException {
+        if (journal != null) {
+            journal.snapshot();
+        }
+    }
+
+    public void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /**
+     * Queues the record of an update already applied, with the user's lock held
+     */
+    private SubscriptionJournal.Commit log(byte op, String userId, String url) throws IOException {
+        SubscriptionJournal.Commit commit;
+        try {
+            commit = journal.append(op, userId, url);
+        } catch (IOException e) {
+            undo(op, userId, url);
+            throw e;
+        }
+        Map<String, SubscriptionJournal.Commit> urlCommits = pending.get(userId);
+        if (urlCommits == null) {
+            urlCommits = new HashMap<String, SubscriptionJournal.Commit>();
+            pending.put(userId, urlCommits);
+        }
+        urlCommits.put(url, commit);
+        return commit;
+    }
+
+    /**
+     * Waits until the record of the last update of the user and url is settled, with the user's lock held
+     */
+    private void awaitSettled(Object lock, String userId, String url) throws IOException {
+        while (true) {
+            Map<String, SubscriptionJournal.Commit> urlCommits = pending.get(userId);
+            if (urlCommits == null || !urlCommits.containsKey(url)) return;
+            try {
+                lock.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the subscription log");
+            }
+        }
+    }
+
+    /**
+     * Called by the journal once the record is synced, or could not be written
+     * (error): the update is undone before its caller is told
+     */
+    void settle(SubscriptionJournal.Commit commit, IOException error) {
+        Object lock = getLock(commit.getUserId());
+        synchronized (lock) {
+            Map<String, SubscriptionJournal.Commit> urlCommits = pending.get(commit.getUserId());
+            if (urlCommits != null && urlCommits.get(commit.getUrl()) == commit) {
+                urlCommits.remove(commit.getUrl());
+                if (urlCommits.isEmpty()) {
+                    pending.remove(commit.getUserId());
+                }
+            }
+            if (error != null) {
+                undo(commit.getOp(), commit.getUserId(), commit.getUrl());
+            }
+            lock.notifyAll();
+        }
+    }
+
+    private void undo(byte op, String userId, String url) {
+        if (op == SubscriptionJournal.SUBSCRIBE) {
+            remove(userId, urls.getId(url));
+        } else {
+            add(userId, urls.intern(url));
+        }
+    }
+
+    /**
+     * @return the users with subscriptions, or with updates not settled yet
+     */
+    Set<String> getUserIds() {
+        Set<String> userIds = new HashSet<String>(subscriptions.keySet());
+        userIds.addAll(pending.keySet());
+        return userIds;
+    }
+
+    /**
+     * The url ids of the user without the updates not settled yet, for a snapshot:
+     * those are in the log it is replayed with, or undone
+     */
+    int[] getSettledIds(String userId) {
+        synchronized (getLock(userId)) {
+            int[] ids = getIds(userId);
+            Map<String, SubscriptionJournal.Commit> urlCommits = pending.get(userId);
+            if (urlCommits == null) return ids;
+
+            ids = ids.clone();
+            for (SubscriptionJournal.Commit commit: urlCommits.values()) {
+                int id = urls.getId(commit.getUrl());
+                int pos = Arrays.binarySearch(ids, id);
+                if (commit.getOp() == SubscriptionJournal.SUBSCRIBE && pos >= 0) {
+                    int[] updated = new int[ids.length - 1];
+                    System.arraycopy(ids, 0, updated, 0, pos);
+                    System.arraycopy(ids, pos + 1, updated, pos, ids.length - pos - 1);
+                    ids = updated;
+                } else if (commit.getOp() == SubscriptionJournal.UNSUBSCRIBE && pos < 0) {
+                    int insertAt = -pos - 1;
+                    int[] updated = new int[ids.length + 1];
+                    System.arraycopy(ids, 0, updated, 0, insertAt);
+                    updated[insertAt] = id;
+                    System.arraycopy(ids, insertAt, updated, insertAt + 1, ids.length - insertAt);
+                    ids = updated;
+                }
+            }
+            return ids;
+        }
+    }
+
+    private Object getLock(String userId) {
+        return locks[(userId.hashCode() & Integer.MAX_VALUE) % locks.length];
+    }
+
+    /**
+     * @return the sorted url ids the user subscribed to, never modified
+     */
+    int[] getIds(String userId) {
+        int[] ids = subscriptions.get(userId);
+        return ids == null ? NO_SUBSCRIPTIONS : ids;
+    }
+
+    /**
+     * @return false if the user already subscribed to this url
+     */
+    boolean add(String userId, int id) {
+        while (true) {
+            int[] current = subscriptions.get(userId);
+            if (current == null) {
+                if (subscriptions.putIfAbsent(userId, new int[] {id}) == null) return true;
+                continue;
+            }
+
+            int pos = Arrays.binarySearch(current, id);
+            if (pos >= 0) return false;
+
+            int insertAt = -pos - 1;
+            int[] updated = new int[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, insertAt);
+            updated[insertAt] = id;
+            System.arraycopy(current, insertAt, updated, insertAt + 1, current.length - insertAt);
+            if (subscriptions.replace(userId, current, updated)) return true;
+        }
+    }
+
+    /**
+     * @return false if the user was not subscribed to this url
+     */
+    boolean remove(String userId, int id) {
+        while (true) {
+            int[] current = subscriptions.get(userId);
+            if (current == null) return false;
+
+            int pos = Arrays.binarySearch(current, id);
+            if (pos < 0) return false;
+
+            if (current.length == 1) {
+                if (subscriptions.remove(userId, current)) return true;
+                continue;
+            }
+
+            int[] updated = new int[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, pos);
+            System.arraycopy(current, pos + 1, updated, pos, current.length - pos - 1);
+            if (subscriptions.replace(userId, current, updated)) return true;
+        }
     }
 }
@@ -15,6 +15,9 @@
  */
 package com.netflix.recipes.rss.impl;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.hash.Hashing;
 import com.netflix.recipes.rss.RSSItem;
 
 import javax.xml.bind.annotation.XmlAccessType;
@@ -26,22 +29,37 @@ import javax.xml.bind.annotation.XmlRootElement;
 @XmlAccessorType(XmlAccessType.NONE)
 public class RSSItemImpl implements RSSItem {
 
+    private final String id;
     private final String title;
     private final String link;
     private final String description;
     
     public RSSItemImpl() {
+        this.id = null;
         this.title = null;
         this.link = null;
         this.description = null;                
     }
     
     public RSSItemImpl(String title, String link, String description) {
+        this(null, title, link, description);
+    }
+
+    /**
+     * @param id guid of the item, or null to derive one from its link (or its title if it has none)
+     */
+    public RSSItemImpl(String id, String title, String link, String description) {
+        this.id = Strings.isNullOrEmpty(id) ? hashId(link != null ? link : title) : id;
         this.title = title;
         this.link = link;
         this.description = description;
     }
     
+    @XmlElement(name="id")
+    public String getId() {
+        return id;
+    }
+
     @XmlElement(name="title")
     public String getTitle() {
         return title;
@@ -56,4 +74,8 @@ public class RSSItemImpl implements RSSItem {
     public String getDescription() {
         return description;
     }
+
+    private static String hashId(String value) {
+        return Long.toHexString(Hashing.md5().hashString(Strings.nullToEmpty(value), Charsets.UTF_8).asLong());
+    }
 }
@@ -0,0 +1,712 @@
+package com.netflix.recipes.rss.impl;
+
+import com.google.common.base.Charsets;
+import com.netflix.config.DynamicBooleanProperty;
+import com.netflix.config.DynamicLongProperty;
+import com.netflix.config.DynamicPropertyFactory;
+import com.netflix.recipes.rss.RSSConstants;
+import com.netflix.recipes.rss.util.DescriptiveThreadFactory;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.BasicGauge;
+import com.netflix.servo.monitor.Counter;
+import com.netflix.servo.monitor.Gauge;
+import com.netflix.servo.monitor.MonitorConfig;
+import com.netflix.servo.monitor.StatsTimer;
+import com.netflix.servo.stats.StatsConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Persists an InMemoryStoreImpl into a directory, as
+ *  1) an append-only log of subscribe/unsubscribe operations (wal-N.log)
+ *  2) periodic snapshots of the whole store (snapshot-N.dat)
+ *
+ * A single writer thread appends the log: everything queued while it was
+ * syncing the previous batch is written and synced at once (group commit),
+ * so many concurrent writers share one fsync.
+ *
+ * Taking a snapshot first switches to a new log generation N, then writes
+ * the store through memory-mapped windows. snapshot-N holds everything logged
+ * before wal-N, possibly plus some of wal-N. That is fine because replaying
+ * subscribe/unsubscribe on top of a state that already has them gives the
+ * same result. Logs and snapshots older than N are deleted once snapshot-N
+ * is on disk.
+ *
+ * Recovery loads the newest snapshot, then replays the logs from its
+ * generation on. A torn record at the end of a log (crash mid-write) is
+ * detected by its checksum and truncated.
+ *
+ * A group that could not be written or synced is truncated from the log,
+ * so that the next ones do not follow a torn record, and its updates are
+ * undone in the store (InMemoryStoreImpl.settle). If the log cannot be
+ * truncated it stops: every update fails from then on.
+ */
+class SubscriptionJournal {
+    private static final Logger logger = LoggerFactory.getLogger(SubscriptionJournal.class);
+
+    static final byte SUBSCRIBE   = 1;
+    static final byte UNSUBSCRIBE = 2;
+
+    private static final String LOG_PREFIX      = "wal-";
+    private static final String LOG_SUFFIX      = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".dat";
+
+    private static final int SNAPSHOT_MAGIC   = 0x52535353;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int SNAPSHOT_END     = 0x454e4421;
+
+    private static final int MAX_RECORD_BYTES = 1 << 20;
+    private static final int MAX_BATCH        = 4096;
+    private static final long MAP_WINDOW_BYTES = 64L << 20;
+
+    // JMX:  com.netflix.servo.COUNTER.MiddleTierRSS_*
+    private static final Counter logRecordCounter   = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_storeLogRecordCounter").build());
+    private static final Counter groupCommitCounter = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_storeGroupCommitCounter").build());
+
+    // JMX:  com.netflix.servo.MiddleTierRSS_* (95th and 99th percentile)
+    private static final StatsTimer fsyncStatsTimer    = new StatsTimer(MonitorConfig.builder("MiddleTierRSS_storeFsyncStatsTimer").build(), new StatsConfig.Builder().build());
+    private static final StatsTimer snapshotStatsTimer = new StatsTimer(MonitorConfig.builder("MiddleTierRSS_storeSnapshotStatsTimer").build(), new StatsConfig.Builder().build());
+
+    private static final AtomicLong recoveryTimeMs = new AtomicLong();
+
+    static {
+        DefaultMonitorRegistry.getInstance().register(logRecordCounter);
+        DefaultMonitorRegistry.getInstance().register(groupCommitCounter);
+        DefaultMonitorRegistry.getInstance().register(fsyncStatsTimer);
+        DefaultMonitorRegistry.getInstance().register(snapshotStatsTimer);
+
+        Gauge<Long> recoveryTimeGauge = new BasicGauge<Long>(MonitorConfig.builder("MiddleTierRSS_storeRecoveryTimeMs").build(),
+                new Callable<Long>() {
+                    public Long call() {
+                        return recoveryTimeMs.get();
+                    }
+                });
+        DefaultMonitorRegistry.getInstance().register(recoveryTimeGauge);
+    }
+
+    private static final DynamicBooleanProperty fsync =
+            DynamicPropertyFactory.getInstance().getBooleanProperty(RSSConstants.RSS_STORE_INMEMORY_FSYNC, true);
+    private static final DynamicLongProperty snapshotIntervalMs =
+            DynamicPropertyFactory.getInstance().getLongProperty(RSSConstants.RSS_STORE_INMEMORY_SNAPSHOT_INTERVAL_MS, 600000);
+
+    /**
+     * A log record (or a switch to a new log generation) queued for the writer
+     */
+    static class Commit {
+        private final byte op;
+        private final String userId;
+        private final String url;
+        private final ByteBuffer record;
+        private final long generation;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile IOException error;
+
+        Commit(byte op, String userId, String url, ByteBuffer record) {
+            this.op = op;
+            this.userId = userId;
+            this.url = url;
+            this.record = record;
+            this.generation = 0;
+        }
+
+        Commit(long generation) {
+            this.op = 0;
+            this.userId = null;
+            this.url = null;
+            this.record = null;
+            this.generation = generation;
+        }
+
+        byte getOp() {
+            return op;
+        }
+
+        String getUserId() {
+            return userId;
+        }
+
+        String getUrl() {
+            return url;
+        }
+
+        void complete(IOException error) {
+            this.error = error;
+            done.countDown();
+        }
+
+        /**
+         * Waits until the record is on disk
+         */
+        void await() throws IOException {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the subscription log");
+            }
+            if (error != null) {
+                throw new IOException("Could not write the subscription log", error);
+            }
+        }
+    }
+
+    private final File dir;
+    private final InMemoryStoreImpl store;
+    private final BlockingQueue<Commit> queue = new LinkedBlockingQueue<Commit>();
+    private final AtomicLong recordsSinceSnapshot = new AtomicLong();
+    private final Thread writer;
+    private final ScheduledExecutorService snapshotter;
+
+    // Only used by the writer thread once started
+    private FileChannel log;
+    private volatile long generation;
+    private volatile boolean closed;
+    // Set if the log could not be truncated after a failed write
+    private volatile IOException failure;
+
+    SubscriptionJournal(File dir, InMemoryStoreImpl store) {
+        this.dir = dir;
+        this.store = store;
+        this.writer = new DescriptiveThreadFactory("RSSStore-Journal", Thread.NORM_PRIORITY, true).newThread(new Runnable() {
+            public void run() {
+                writeLoop();
+            }
+        });
+        this.snapshotter = Executors.newSingleThreadScheduledExecutor(
+                new DescriptiveThreadFactory("RSSStore-Snapshot", Thread.NORM_PRIORITY, true));
+    }
+
+    /**
+     * Loads the snapshot and replays the logs into the (empty) store, then starts logging
+     */
+    void recover() throws IOException {
+        long start = System.currentTimeMillis();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+
+        List<Long> snapshots = getGenerations(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        long from = 0;
+        if (!snapshots.isEmpty()) {
+            from = snapshots.get(snapshots.size() - 1);
+            loadSnapshot(getFile(SNAPSHOT_PREFIX, from, SNAPSHOT_SUFFIX));
+        }
+
+        long replayed = 0;
+        long last = from;
+        for (long gen: getGenerations(LOG_PREFIX, LOG_SUFFIX)) {
+            if (gen >= from) {
+                replayed += replay(getFile(LOG_PREFIX, gen, LOG_SUFFIX));
+            }
+            last = Math.max(last, gen);
+        }
+        deleteBefore(from);
+
+        openLog(last + 1);
+        recordsSinceSnapshot.set(replayed);
+        recoveryTimeMs.set(System.currentTimeMillis() - start);
+        logger.info("Recovered " + store.subscriptions.size() + " users from " + dir + " (snapshot " + from + ", "
+                + replayed + " log records) in " + recoveryTimeMs.get() + " ms");
+    }
+
+    void start() {
+        writer.start();
+        long interval = snapshotIntervalMs.get();
+        snapshotter.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    if (recordsSinceSnapshot.get() > 0) {
+                        snapshot();
+                    }
+                } catch (Exception e) {
+                    logger.error("Exception occurred when writing the subscription snapshot", e);
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues an operation for the log. Callers wait on the returned commit
+     * to know when it is durable.
+     */
+    Commit append(byte op, String userId, String url) throws IOException {
+        if (closed) throw new IOException("Subscription log is closed");
+        if (failure != null) throw new IOException("Subscription log stopped after a failed write", failure);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8 + 5 + userId.length() + url.length());
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeByte(op);
+        out.writeUTF(userId);
+        out.writeUTF(url);
+
+        // Header: payload length and checksum
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 8, record.limit() - 8);
+        record.putInt(0, record.limit() - 8);
+        record.putInt(4, (int) crc.getValue());
+
+        Commit commit = new Commit(op, userId, url, record);
+        queue.add(commit);
+        recordsSinceSnapshot.incrementAndGet();
+        logRecordCounter.increment();
+        return commit;
+    }
+
+    /**
+     * Writes a snapshot of the store and deletes the logs it covers
+     */
+    synchronized void snapshot() throws IOException {
+        long start = System.currentTimeMillis();
+
+        // From now on the operations go to the new log, which is replayed on top of this snapshot
+        long gen = generation + 1;
+        Commit rotate = new Commit(gen);
+        queue.add(rotate);
+        rotate.await();
+        recordsSinceSnapshot.set(0);
+
+        // The int[] are never modified, holding on to them is enough for a consistent copy per user.
+        // Updates not synced yet are left out, they are in the new log or get undone
+        List<Map.Entry<String, int[]>> users = new ArrayList<Map.Entry<String, int[]>>(store.subscriptions.size());
+        for (String userId: store.getUserIds()) {
+            int[] ids = store.getSettledIds(userId);
+            if (ids.length > 0) {
+                users.add(new AbstractMap.SimpleImmutableEntry<String, int[]>(userId, ids));
+            }
+        }
+        // Read after the users, so that it covers every id they use
+        int urlCount = store.urls.size();
+
+        long size = 4 + 4 + 4 + 4 + 4;
+        byte[][] urls = new byte[urlCount][];
+        for (int id = 0; id < urlCount; id++) {
+            urls[id] = store.urls.getUrl(id).getBytes(Charsets.UTF_8);
+            size += 4 + urls[id].length;
+        }
+        byte[][] userIds = new byte[users.size()][];
+        for (int i = 0; i < users.size(); i++) {
+            userIds[i] = users.get(i).getKey().getBytes(Charsets.UTF_8);
+            size += 4 + userIds[i].length + 4 + 4L * users.get(i).getValue().length;
+        }
+
+        File tmp = getFile(SNAPSHOT_PREFIX, gen, ".tmp");
+        MappedFile out = new MappedFile(tmp, FileChannel.MapMode.READ_WRITE, size);
+        try {
+            out.putInt(SNAPSHOT_MAGIC);
+            out.putInt(SNAPSHOT_VERSION);
+            out.putInt(urlCount);
+            for (byte[] url: urls) {
+                out.putBytes(url);
+            }
+            out.putInt(users.size());
+            for (int i = 0; i < users.size(); i++) {
+                int[] ids = users.get(i).getValue();
+                out.putBytes(userIds[i]);
+                out.putInt(ids.length);
+                out.putInts(ids);
+            }
+            out.putInt(SNAPSHOT_END);
+            out.force();
+        } finally {
+            out.close();
+        }
+
+        File snapshot = getFile(SNAPSHOT_PREFIX, gen, SNAPSHOT_SUFFIX);
+        if (!tmp.renameTo(snapshot)) {
+            throw new IOException("Could not rename " + tmp + " to " + snapshot);
+        }
+        deleteBefore(gen);
+
+        long duration = System.currentTimeMillis() - start;
+        snapshotStatsTimer.record(duration, TimeUnit.MILLISECONDS);
+        logger.info("Wrote " + snapshot + " (" + users.size() + " users, " + size + " bytes) in " + duration + " ms");
+    }
+
+    /**
+     * Stops logging once everything queued is written
+     */
+    void close() throws IOException {
+        closed = true;
+        snapshotter.shutdownNow();
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (log != null) {
+            log.close();
+        }
+    }
+
+    private void writeLoop() {
+        List<Commit> batch = new ArrayList<Commit>();
+        List<Commit> group = new ArrayList<Commit>();
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Commit first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH);
+
+                for (Commit commit: batch) {
+                    if (commit.record == null) {
+                        // The records before the switch are settled first, the snapshot leaves out the others
+                        commit(group, failure);
+                        commit.complete(rotate(commit.generation));
+                    } else {
+                        group.add(commit);
+                    }
+                }
+                commit(group, failure);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+                group.clear();
+            }
+        }
+
+        // Appended while closing
+        IOException closedError = new IOException("Subscription log is closed");
+        for (Commit commit = queue.poll(); commit != null; commit = queue.poll()) {
+            if (commit.record != null) {
+                store.settle(commit, closedError);
+            }
+            commit.complete(closedError);
+        }
+    }
+
+    /**
+     * Writes a group of records, unless the log stopped (error), and tells their callers
+     */
+    private void commit(List<Commit> group, IOException error) {
+        if (group.isEmpty()) return;
+
+        if (error == null) {
+            error = write(group);
+        }
+        for (Commit commit: group) {
+            store.settle(commit, error);
+            commit.complete(error);
+        }
+        group.clear();
+    }
+
+    /**
+     * Writes and syncs a group of records, or truncates them from the log
+     *
+     * @return the error if they could not be written
+     */
+    private IOException write(List<Commit> group) {
+        ByteBuffer[] buffers = new ByteBuffer[group.size()];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = group.get(i).record;
+        }
+
+        long position = -1;
+        try {
+            position = log.position();
+            ByteBuffer lastBuffer = buffers[buffers.length - 1];
+            while (lastBuffer.hasRemaining()) {
+                log.write(buffers);
+            }
+
+            if (fsync.get()) {
+                long start = System.nanoTime();
+                log.force(false);
+                fsyncStatsTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+            groupCommitCounter.increment();
+            return null;
+        } catch (IOException e) {
+            logger.error("Exception occurred when writing the subscription log", e);
+            // Replay stops at a torn record, the records written after it would be lost
+            try {
+                if (position < 0) throw e;
+                log.truncate(position);
+                log.position(position);
+            } catch (IOException truncateError) {
+                logger.error("Could not truncate the subscription log, no more updates are logged", truncateError);
+                failure = e;
+            }
+            return e;
+        }
+    }
+
+    /**
+     * Switches to a new log generation, unless the log stopped
+     *
+     * @return the error if it could not
+     */
+    private IOException rotate(long gen) {
+        if (failure != null) return failure;
+        try {
+            openLog(gen);
+            return null;
+        } catch (IOException e) {
+            logger.error("Could not open the subscription log " + gen + ", no more updates are logged", e);
+            failure = e;
+            return e;
+        }
+    }
+
+    private void openLog(long gen) throws IOException {
+        if (log != null) {
+            log.close();
+        }
+        log = new RandomAccessFile(getFile(LOG_PREFIX, gen, LOG_SUFFIX), "rw").getChannel();
+        log.position(log.size());
+        generation = gen;
+    }
+
+    /**
+     * Applies the records of a log to the store
+     *
+     * @return the number of records replayed
+     */
+    private long replay(File file) throws IOException {
+        long valid = 0;
+        long count = 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+        try {
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length <= 0 || length > MAX_RECORD_BYTES) break;
+
+                byte[] payload = new byte[length];
+                int checksum;
+                try {
+                    checksum = in.readInt();
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) break;
+
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                byte op = record.readByte();
+                String userId = record.readUTF();
+                String url = record.readUTF();
+                if (op == SUBSCRIBE) {
+                    store.add(userId, store.urls.intern(url));
+                } else if (op == UNSUBSCRIBE) {
+                    int id = store.urls.getId(url);
+                    if (id >= 0) store.remove(userId, id);
+                }
+
+                valid += 8 + length;
+                count++;
+            }
+        } finally {
+            in.close();
+        }
+
+        if (valid < file.length()) {
+            logger.warn("Truncating " + file + " after " + count + " records, the rest was not completely written");
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(valid);
+            } finally {
+                raf.close();
+            }
+        }
+        return count;
+    }
+
+    private void loadSnapshot(File file) throws IOException {
+        MappedFile in = new MappedFile(file, FileChannel.MapMode.READ_ONLY, file.length());
+        try {
+            if (in.getInt() != SNAPSHOT_MAGIC || in.getInt() != SNAPSHOT_VERSION) {
+                throw new IOException(file + " is not a subscription snapshot");
+            }
+
+            int urlCount = in.getInt();
+            for (int id = 0; id < urlCount; id++) {
+                if (store.urls.intern(new String(in.getBytes(), Charsets.UTF_8)) != id) {
+                    throw new IOException("Duplicate url in " + file);
+                }
+            }
+
+            int userCount = in.getInt();
+            for (int i = 0; i < userCount; i++) {
+                String userId = new String(in.getBytes(), Charsets.UTF_8);
+                int[] ids = new int[in.getInt()];
+                in.getInts(ids);
+                store.subscriptions.put(userId, ids);
+            }
+
+            if (in.getInt() != SNAPSHOT_END) {
+                throw new IOException(file + " is corrupt");
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private void deleteBefore(long gen) {
+        for (long old: getGenerations(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+            if (old < gen) getFile(SNAPSHOT_PREFIX, old, SNAPSHOT_SUFFIX).delete();
+        }
+        for (long old: getGenerations(LOG_PREFIX, LOG_SUFFIX)) {
+            if (old < gen) getFile(LOG_PREFIX, old, LOG_SUFFIX).delete();
+        }
+    }
+
+    private List<Long> getGenerations(String prefix, String suffix) {
+        List<Long> generations = new ArrayList<Long>();
+        String[] names = dir.list();
+        if (names != null) {
+            for (String name: names) {
+                if (name.startsWith(prefix) && name.endsWith(suffix)) {
+                    try {
+                        generations.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+                    } catch (NumberFormatException e) {
+                        logger.warn("Ignoring " + name + " in " + dir);
+                    }
+                }
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    private File getFile(String prefix, long gen, String suffix) {
+        return new File(dir, prefix + gen + suffix);
+    }
+
+    /**
+     * Sequential access to a file through memory-mapped windows, so that
+     * snapshots are not limited to the 2GB of a single mapping
+     */
+    private static class MappedFile {
+        private final RandomAccessFile file;
+        private final FileChannel.MapMode mode;
+        private final long size;
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        MappedFile(File path, FileChannel.MapMode mode, long size) throws IOException {
+            this.mode = mode;
+            this.size = size;
+            if (mode == FileChannel.MapMode.READ_ONLY) {
+                this.file = new RandomAccessFile(path, "r");
+            } else {
+                this.file = new RandomAccessFile(path, "rw");
+                this.file.setLength(size);
+            }
+        }
+
+        /**
+         * Makes sure the next n bytes are in the current window
+         */
+        private void ensure(int n) throws IOException {
+            if (window != null && window.remaining() >= n) return;
+
+            long position = window == null ? 0 : windowStart + window.position();
+            if (window != null && mode == FileChannel.MapMode.READ_WRITE) {
+                window.force();
+            }
+            if (position + n > size) {
+                throw new EOFException("Unexpected end of " + size + " bytes snapshot");
+            }
+            windowStart = position;
+            window = file.getChannel().map(mode, position, Math.min(MAP_WINDOW_BYTES, size - position));
+        }
+
+        int getInt() throws IOException {
+            ensure(4);
+            return window.getInt();
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            window.putInt(value);
+        }
+
+        byte[] getBytes() throws IOException {
+            byte[] bytes = new byte[getInt()];
+            ensure(bytes.length);
+            window.get(bytes);
+            return bytes;
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            putInt(bytes.length);
+            ensure(bytes.length);
+            window.put(bytes);
+        }
+
+        void getInts(int[] values) throws IOException {
+            int offset = 0;
+            while (offset < values.length) {
+                ensure(4);
+                int n = Math.min(values.length - offset, window.remaining() / 4);
+                window.asIntBuffer().get(values, offset, n);
+                window.position(window.position() + 4 * n);
+                offset += n;
+            }
+        }
+
+        void putInts(int[] values) throws IOException {
+            int offset = 0;
+            while (offset < values.length) {
+                ensure(4);
+                int n = Math.min(values.length - offset, window.remaining() / 4);
+                window.asIntBuffer().put(values, offset, n);
+                window.position(window.position() + 4 * n);
+                offset += n;
+            }
+        }
+
+        void force() {
+            if (window != null) window.force();
+        }
+
+        void close() throws IOException {
+            file.close();
+        }
+    }
+}
@@ -27,15 +27,37 @@ public class SubscriptionsImpl implements Subscriptions {
 
     private String user;
     private List<RSS> subscriptions;
+    private List<String> timedOutUrls;
+    private Integer nextOffset;
+    private String watermark;
     
     public SubscriptionsImpl() {
         this.user = null;
         this.subscriptions = null;
+        this.timedOutUrls = null;
+        this.nextOffset = null;
+        this.watermark = null;
     }
     
     public SubscriptionsImpl(String user, List<RSS> subscriptions) {
+        this(user, subscriptions, null);
+    }
+
+    public SubscriptionsImpl(String user, List<RSS> subscriptions, List<String> timedOutUrls) {
+        this(user, subscriptions, timedOutUrls, null);
+    }
+
+    public SubscriptionsImpl(String user, List<RSS> subscriptions, List<String> timedOutUrls, Integer nextOffset) {
+        this(user, subscriptions, timedOutUrls, nextOffset, null);
+    }
+
+    public SubscriptionsImpl(String user, List<RSS> subscriptions, List<String> timedOutUrls, Integer nextOffset,
+                             String watermark) {
         this.user = user;
         this.subscriptions = subscriptions;
+        this.timedOutUrls = timedOutUrls;
+        this.nextOffset = nextOffset;
+        this.watermark = watermark;
     }
     
     @XmlElement(name="user")
@@ -48,4 +70,18 @@ public class SubscriptionsImpl implements Subscriptions {
         return subscriptions;
     }
 
+    @XmlElement(name="timedOut")
+    public List<String> getTimedOutUrls() {
+        return timedOutUrls;
+    }
+
+    @XmlElement(name="nextOffset")
+    public Integer getNextOffset() {
+        return nextOffset;
+    }
+
+    @XmlElement(name="watermark")
+    public String getWatermark() {
+        return watermark;
+    }
 }
@@ -0,0 +1,59 @@
+package com.netflix.recipes.rss.impl;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Maps every distinct feed url to a small int id, so that subscriptions can
+ * be kept as int sets and each url string is held in memory only once.
+ *
+ * Lookups are lock free; only the first intern of a new url takes the lock.
+ * Ids are never reused: the number of distinct feeds is small compared to
+ * the number of subscriptions, so urls nobody follows anymore are kept.
+ */
+class UrlInterner {
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+
+    // Written under the lock, always before the url is published in ids
+    private volatile String[] urls = new String[1024];
+    private int size;
+
+    /**
+     * @return the id of this url, assigning a new one if it was never seen
+     */
+    int intern(String url) {
+        Integer id = ids.get(url);
+        if (id != null) return id;
+
+        synchronized (this) {
+            id = ids.get(url);
+            if (id != null) return id;
+
+            String[] current = urls;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, size * 2);
+            }
+            current[size] = url;
+            urls = current;
+            ids.put(url, size);
+            return size++;
+        }
+    }
+
+    /**
+     * @return the id of this url, or -1 if it was never interned
+     */
+    int getId(String url) {
+        Integer id = ids.get(url);
+        return id == null ? -1 : id;
+    }
+
+    String getUrl(int id) {
+        return urls[id];
+    }
+
+    int size() {
+        return ids.size();
+    }
+}
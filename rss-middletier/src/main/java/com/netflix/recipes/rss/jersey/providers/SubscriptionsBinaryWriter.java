@@ -0,0 +1,100 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.jersey.providers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.List;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+import com.netflix.recipes.rss.RSS;
+import com.netflix.recipes.rss.RSSConstants;
+import com.netflix.recipes.rss.RSSItem;
+import com.netflix.recipes.rss.Subscriptions;
+import com.netflix.recipes.rss.util.BinaryWriter;
+
+/**
+ * Writes Subscriptions in the compact binary encoding the edge asks for
+ * (RSSConstants.RSS_BINARY_MEDIA_TYPE) instead of JSON. Written with a
+ * {@link BinaryWriter}, in this order:
+ *  1) version (byte), user (string)
+ *  2) subscriptions (size), and for each: url, title (strings), items (size),
+ *     and for each item: title, link, description, id (strings)
+ *  3) timed out urls (size), and the urls (strings)
+ *  4) the offset of the next page (size, null on the last page)
+ *  5) the watermark (string)
+ * A list is always written as a list, whatever its size.
+ */
+@Provider
+@Produces(RSSConstants.RSS_BINARY_MEDIA_TYPE)
+public class SubscriptionsBinaryWriter implements MessageBodyWriter<Subscriptions> {
+
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return Subscriptions.class.isAssignableFrom(type);
+    }
+
+    public long getSize(Subscriptions subscriptions, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return -1;
+    }
+
+    public void writeTo(Subscriptions subscriptions, Class<?> type, Type genericType, Annotation[] annotations,
+                        MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream)
+            throws IOException {
+        BinaryWriter writer = new BinaryWriter(entityStream);
+        writer.writeByte(RSSConstants.RSS_BINARY_VERSION);
+        writer.writeString(subscriptions.getUser());
+
+        List<RSS> feeds = subscriptions.getSubscriptions();
+        writer.writeSize(feeds == null ? -1 : feeds.size());
+        if (feeds != null) {
+            for (RSS rss: feeds) {
+                writer.writeString(rss.getUrl());
+                writer.writeString(rss.getTitle());
+
+                List<RSSItem> items = rss.getItems();
+                writer.writeSize(items == null ? -1 : items.size());
+                if (items != null) {
+                    for (RSSItem item: items) {
+                        writer.writeString(item.getTitle());
+                        writer.writeString(item.getLink());
+                        writer.writeString(item.getDescription());
+                        writer.writeString(item.getId());
+                    }
+                }
+            }
+        }
+
+        List<String> timedOutUrls = subscriptions.getTimedOutUrls();
+        writer.writeSize(timedOutUrls == null ? -1 : timedOutUrls.size());
+        if (timedOutUrls != null) {
+            for (String url: timedOutUrls) {
+                writer.writeString(url);
+            }
+        }
+
+        Integer nextOffset = subscriptions.getNextOffset();
+        writer.writeSize(nextOffset == null ? -1 : nextOffset);
+        writer.writeString(subscriptions.getWatermark());
+        writer.flush();
+    }
+}
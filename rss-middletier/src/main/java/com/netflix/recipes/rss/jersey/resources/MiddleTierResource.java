@@ -15,7 +15,11 @@
  */
 package com.netflix.recipes.rss.jersey.resources;
 
+import com.netflix.recipes.rss.RSSConstants;
+import com.netflix.recipes.rss.RSS;
 import com.netflix.recipes.rss.Subscriptions;
+import com.netflix.recipes.rss.impl.SubscriptionsImpl;
+import com.netflix.recipes.rss.manager.FeedCache;
 import com.netflix.recipes.rss.manager.RSSManager;
 import com.netflix.servo.DefaultMonitorRegistry;
 import com.netflix.servo.monitor.*;
@@ -27,6 +31,7 @@ import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.net.URLDecoder;
+import java.util.Collections;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -39,41 +44,63 @@ public class MiddleTierResource {
 
     // JMX:  com.netflix.servo.COUNTER.MiddleTierRSS_*
     private static final Counter getRSSRequestCounter = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_getRequestCounter").build());
+    private static final Counter sinceRSSRequestCounter = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_sinceRequestCounter").build());
     private static final Counter addRSSRequestCounter = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_addRequestCounter").build());
     private static final Counter delRSSRequestCounter = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_delRequestCounter").build());
+    private static final Counter ownedFeedRequestCounter = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_ownedFeedRequestCounter").build());
 
     // JMX:  com.netflix.servo.COUNTER.MiddleTierRSS_*
     private static final Counter getRSSErrorCounter = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_getErrorCounter").build());
+    private static final Counter sinceRSSErrorCounter = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_sinceErrorCounter").build());
     private static final Counter addRSSErrorCounter = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_addErrorCounter").build());
     private static final Counter delRSSErrorCounter = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_delErrorCounter").build());
+    private static final Counter ownedFeedErrorCounter = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_ownedFeedErrorCounter").build());
 
     // JMX:  com.netflix.servo.COUNTER.MiddleTierRSS_*
     // JMX:  com.netflix.servo.MiddleTierRSS_* (95th and 99th percentile)
     private static final StatsTimer getRSSStatsTimer = new StatsTimer(MonitorConfig.builder("MiddleTierRSS_getStatsTimer").build(), new StatsConfig.Builder().build());
+    private static final StatsTimer sinceRSSStatsTimer = new StatsTimer(MonitorConfig.builder("MiddleTierRSS_sinceStatsTimer").build(), new StatsConfig.Builder().build());
     private static final StatsTimer addRSSStatsTimer = new StatsTimer(MonitorConfig.builder("MiddleTierRSS_addStatsTimer").build(), new StatsConfig.Builder().build());
     private static final StatsTimer delRSSStatsTimer = new StatsTimer(MonitorConfig.builder("MiddleTierRSS_delStatsTimer").build(), new StatsConfig.Builder().build());
+    private static final StatsTimer ownedFeedStatsTimer = new StatsTimer(MonitorConfig.builder("MiddleTierRSS_ownedFeedStatsTimer").build(), new StatsConfig.Builder().build());
 
     static {
         DefaultMonitorRegistry.getInstance().register(getRSSRequestCounter);
+        DefaultMonitorRegistry.getInstance().register(sinceRSSRequestCounter);
         DefaultMonitorRegistry.getInstance().register(addRSSRequestCounter);
         DefaultMonitorRegistry.getInstance().register(delRSSRequestCounter);
+        DefaultMonitorRegistry.getInstance().register(ownedFeedRequestCounter);
 
         DefaultMonitorRegistry.getInstance().register(getRSSErrorCounter);
+        DefaultMonitorRegistry.getInstance().register(sinceRSSErrorCounter);
         DefaultMonitorRegistry.getInstance().register(addRSSErrorCounter);
         DefaultMonitorRegistry.getInstance().register(delRSSErrorCounter);
+        DefaultMonitorRegistry.getInstance().register(ownedFeedErrorCounter);
 
         DefaultMonitorRegistry.getInstance().register(getRSSStatsTimer);
+        DefaultMonitorRegistry.getInstance().register(sinceRSSStatsTimer);
         DefaultMonitorRegistry.getInstance().register(addRSSStatsTimer);
         DefaultMonitorRegistry.getInstance().register(delRSSStatsTimer);
+        DefaultMonitorRegistry.getInstance().register(ownedFeedStatsTimer);
     }
 
     public MiddleTierResource() {
     }
 
+    /**
+     * JSON, or the compact binary encoding of SubscriptionsBinaryWriter if the client accepts it.
+     * Pages through the subscribed feeds with offset and feedLimit, the response
+     * carries the offset of the next page (nextOffset) unless it is the last one,
+     * and the watermark of the page for the since entry point.
+     */
     @GET
     @Path("/rss/user/{user}")
-    @Produces({MediaType.APPLICATION_JSON})
-    public Response fetchSubscriptions (final @PathParam("user") String user) {
+    @Produces({MediaType.APPLICATION_JSON, RSSConstants.RSS_BINARY_MEDIA_TYPE})
+    public Response fetchSubscriptions (
+            final @PathParam("user") String user,
+            final @QueryParam("offset") @DefaultValue("0") int offset,
+            final @QueryParam("feedLimit") @DefaultValue("0") int feedLimit,
+            final @QueryParam("itemsPerFeed") @DefaultValue("0") int itemsPerFeed) {
 
         // Start timer
         Stopwatch stopwatch = getRSSStatsTimer.start();
@@ -81,8 +108,11 @@ public class MiddleTierResource {
         try {
             getRSSRequestCounter.increment();
 
-            Subscriptions subscriptions = RSSManager.getInstance().getSubscriptions(user);
+            Subscriptions subscriptions = RSSManager.getInstance().getSubscriptions(user, offset, feedLimit, itemsPerFeed, null);
             return Response.ok(subscriptions).build();
+        } catch (IllegalArgumentException e) {
+            getRSSErrorCounter.increment();
+            return Response.status(Response.Status.BAD_REQUEST).build();
         } catch (Exception e) {
             logger.error("Exception occurred when fetching subscriptions", e);
             getRSSErrorCounter.increment();
@@ -93,6 +123,42 @@ public class MiddleTierResource {
         }
     }
 
+    /**
+     * Same as fetchSubscriptions, with only the items published or changed since the
+     * watermark returned by a previous call. Feeds without new items are returned
+     * without items, so that unsubscribed feeds can be told apart.
+     */
+    @GET
+    @Path("/rss/user/{user}/since")
+    @Produces({MediaType.APPLICATION_JSON, RSSConstants.RSS_BINARY_MEDIA_TYPE})
+    public Response fetchSubscriptionsSince (
+            final @PathParam("user") String user,
+            final @QueryParam("watermark") String watermark,
+            final @QueryParam("offset") @DefaultValue("0") int offset,
+            final @QueryParam("feedLimit") @DefaultValue("0") int feedLimit,
+            final @QueryParam("itemsPerFeed") @DefaultValue("0") int itemsPerFeed) {
+
+        // Start timer
+        Stopwatch stopwatch = sinceRSSStatsTimer.start();
+
+        try {
+            sinceRSSRequestCounter.increment();
+
+            Subscriptions subscriptions = RSSManager.getInstance().getSubscriptions(user, offset, feedLimit, itemsPerFeed, watermark);
+            return Response.ok(subscriptions).build();
+        } catch (IllegalArgumentException e) {
+            sinceRSSErrorCounter.increment();
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        } catch (Exception e) {
+            logger.error("Exception occurred when fetching new items", e);
+            sinceRSSErrorCounter.increment();
+            return Response.serverError().build();
+        } finally {
+            stopwatch.stop();
+            sinceRSSStatsTimer.record(stopwatch.getDuration(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+        }
+    }
+
     @POST
     @Path("/rss/user/{user}")
     @Produces({MediaType.APPLICATION_JSON})
@@ -144,4 +210,42 @@ public class MiddleTierResource {
             delRSSStatsTimer.record(stopwatch.getDuration(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Internal entry point of the other middle tiers, for a feed this one owns
+     * (see FeedOwnership): the parsed feed as the only subscription, in the
+     * binary encoding, with the time it was fetched (RSS_FETCHED_AT_HEADER).
+     * 503 if it could not be fetched.
+     */
+    @GET
+    @Path(RSSConstants.RSS_OWNED_FEED_ENTRY_POINT)
+    @Produces(RSSConstants.RSS_BINARY_MEDIA_TYPE)
+    public Response fetchOwnedFeed (
+            final @QueryParam("url") String url) {
+
+        // Start timer
+        Stopwatch stopwatch = ownedFeedStatsTimer.start();
+
+        try {
+            ownedFeedRequestCounter.increment();
+            if (url == null) {
+                return Response.status(Response.Status.BAD_REQUEST).build();
+            }
+
+            FeedCache.Entry entry = RSSManager.getInstance().getOwnedRSSFeed(url);
+            if (entry == null) {
+                ownedFeedErrorCounter.increment();
+                return Response.status(Response.Status.SERVICE_UNAVAILABLE).build();
+            }
+            Subscriptions feed = new SubscriptionsImpl(null, Collections.<RSS>singletonList(entry.getFeed()));
+            return Response.ok(feed).header(RSSConstants.RSS_FETCHED_AT_HEADER, entry.getFetchedAt()).build();
+        } catch (Exception e) {
+            logger.error("Exception occurred when fetching an owned feed", e);
+            ownedFeedErrorCounter.increment();
+            return Response.serverError().build();
+        } finally {
+            stopwatch.stop();
+            ownedFeedStatsTimer.record(stopwatch.getDuration(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+        }
+    }
+}
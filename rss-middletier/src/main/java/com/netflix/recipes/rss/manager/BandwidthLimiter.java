@@ -0,0 +1,98 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.manager;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+import com.netflix.config.DynamicLongProperty;
+
+/**
+ * Token bucket shared by all the streams it wraps, capping their combined
+ * throughput to a (dynamic) number of bytes per second. Readers that go over
+ * the budget are put to sleep until the bucket has refilled.
+ */
+public class BandwidthLimiter {
+    private final DynamicLongProperty bytesPerSecond;
+
+    private long available;
+    private long lastRefill = System.nanoTime();
+
+    public BandwidthLimiter(DynamicLongProperty bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.available = bytesPerSecond.get();
+    }
+
+    /**
+     * Accounts for bytes that were just read, sleeping if the budget is exceeded
+     */
+    public void acquire(long bytes) throws InterruptedException {
+        long sleepMs;
+        synchronized (this) {
+            long rate = Math.max(1, bytesPerSecond.get());
+            long now = System.nanoTime();
+
+            // Allow bursts of up to one second worth of bytes, more idle time than that would only
+            // overflow the multiplication
+            long elapsed = Math.min(now - lastRefill, TimeUnit.SECONDS.toNanos(1));
+            available = Math.min(rate, available + elapsed * rate / TimeUnit.SECONDS.toNanos(1));
+            lastRefill = now;
+
+            // Readers sleep at most a second for the bytes read over the budget
+            available = Math.max(-rate, available - bytes);
+            sleepMs = available < 0 ? -available * 1000 / rate : 0;
+        }
+        if (sleepMs > 0) {
+            Thread.sleep(sleepMs);
+        }
+    }
+
+    public InputStream wrap(InputStream in) {
+        return new LimitedInputStream(in);
+    }
+
+    private class LimitedInputStream extends FilterInputStream {
+        LimitedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) throttle(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) throttle(n);
+            return n;
+        }
+
+        private void throttle(int bytes) throws IOException {
+            try {
+                acquire(bytes);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttling the feed download");
+            }
+        }
+    }
+}
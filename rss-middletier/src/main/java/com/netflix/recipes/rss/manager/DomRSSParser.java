@@ -0,0 +1,63 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.manager;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import com.netflix.recipes.rss.RSS;
+import com.netflix.recipes.rss.RSSItem;
+import com.netflix.recipes.rss.impl.RSSImpl;
+import com.netflix.recipes.rss.impl.RSSItemImpl;
+
+/**
+ * Builds a DOM of the whole feed and walks it.
+ * Kept as a fallback (rss.parser=dom) and as the baseline for benchmarks.
+ */
+public class DomRSSParser implements RSSParser {
+    private static final String FEATURE = "http://apache.org/xml/features/disallow-doctype-decl";
+
+    public RSS parse(String url, InputStream in, int maxItems) throws Exception {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setFeature(FEATURE, true);
+        DocumentBuilder db = dbf.newDocumentBuilder();
+
+        Document dom = db.parse(new InputSource(in));
+        Element docEle = dom.getDocumentElement();
+
+        List<RSSItem> items = new ArrayList<RSSItem>();
+        String title = docEle.getElementsByTagName("title").item(0).getTextContent();
+        NodeList nl  = docEle.getElementsByTagName("item");
+        if (nl != null && nl.getLength() > 0) {
+            for (int i = 0 ; i < nl.getLength() && i < maxItems; i++) {
+                Element el = (Element) nl.item(i);
+                NodeList guid = el.getElementsByTagName("guid");
+                String id = guid.getLength() > 0 ? guid.item(0).getTextContent().trim() : null;
+                items.add(new RSSItemImpl(id, el.getElementsByTagName("title").item(0).getTextContent(), el.getElementsByTagName("link").item(0).getTextContent(), el.getElementsByTagName("description").item(0).getTextContent()));
+            }
+        }
+        return new RSSImpl(url, title, items);
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.manager;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.netflix.config.DynamicLongProperty;
+import com.netflix.config.DynamicPropertyFactory;
+import com.netflix.recipes.rss.RSS;
+import com.netflix.recipes.rss.RSSConstants;
+import com.netflix.recipes.rss.RSSItem;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.BasicGauge;
+import com.netflix.servo.monitor.Counter;
+import com.netflix.servo.monitor.Gauge;
+import com.netflix.servo.monitor.MonitorConfig;
+
+/**
+ * Process wide cache of parsed RSS feeds keyed by feed url.
+ *
+ * Entries are fresh for rss.cache.ttlMs. Stale entries are kept (up to
+ * rss.cache.retentionMs) along with the ETag/Last-Modified validators of the
+ * response they were parsed from, so that they can be revalidated upstream
+ * with a conditional GET instead of being downloaded and parsed again.
+ *
+ * Every cached item is numbered: items that are new or changed since the
+ * previous entry of the feed get the next numbers of a sequence shared by all
+ * the feeds, unchanged ones keep theirs. A client that has seen a feed up to
+ * a number only needs the items numbered above it. Numbers are only
+ * meaningful within this process, identified by its epoch.
+ */
+public class FeedCache {
+
+    // JMX:  com.netflix.servo.COUNTER.MiddleTierRSS_*
+    private static final Counter hitCounter          = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_feedCacheHitCounter").build());
+    private static final Counter missCounter         = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_feedCacheMissCounter").build());
+    private static final Counter evictionCounter     = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_feedCacheEvictionCounter").build());
+    private static final Counter revalidationCounter = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_feedCacheRevalidationCounter").build());
+    private static final Counter notModifiedCounter  = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_feedCacheNotModifiedCounter").build());
+
+    static {
+        DefaultMonitorRegistry.getInstance().register(hitCounter);
+        DefaultMonitorRegistry.getInstance().register(missCounter);
+        DefaultMonitorRegistry.getInstance().register(evictionCounter);
+        DefaultMonitorRegistry.getInstance().register(revalidationCounter);
+        DefaultMonitorRegistry.getInstance().register(notModifiedCounter);
+    }
+
+    private static final DynamicLongProperty ttlMs =
+            DynamicPropertyFactory.getInstance().getLongProperty(RSSConstants.RSS_CACHE_TTL_MS, 300000);
+
+    /**
+     * A parsed feed along with the validators of the response it was parsed from
+     */
+    public static class Entry {
+        private final RSS feed;
+        private final String etag;
+        private final String lastModified;
+        private final long fetchedAt;
+        // Sequence numbers of the items, null until the entry is cached
+        private final long[] sequences;
+
+        public Entry(RSS feed, String etag, String lastModified, long fetchedAt) {
+            this(feed, etag, lastModified, fetchedAt, null);
+        }
+
+        private Entry(RSS feed, String etag, String lastModified, long fetchedAt, long[] sequences) {
+            this.feed = feed;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.fetchedAt = fetchedAt;
+            this.sequences = sequences;
+        }
+
+        public RSS getFeed() {
+            return feed;
+        }
+
+        public String getETag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public long getFetchedAt() {
+            return fetchedAt;
+        }
+
+        /**
+         * Sequence number of the item at this index of the feed
+         */
+        public long getSequence(int index) {
+            return sequences[index];
+        }
+
+        /**
+         * Highest sequence number of the items, 0 if there are none
+         */
+        public long getWatermark() {
+            long watermark = 0;
+            if (sequences != null) {
+                for (long sequence: sequences) {
+                    watermark = Math.max(watermark, sequence);
+                }
+            }
+            return watermark;
+        }
+
+        public boolean isSequenced() {
+            return sequences != null;
+        }
+
+        public boolean hasValidators() {
+            return etag != null || lastModified != null;
+        }
+
+        /**
+         * Same content, confirmed unchanged upstream at the given time
+         */
+        public Entry revalidated(long now) {
+            return new Entry(feed, etag, lastModified, now, sequences);
+        }
+
+        /**
+         * Same entry with its items numbered, from the oldest (last) one so that newer items get higher numbers
+         */
+        private Entry sequenced(Entry previous, AtomicLong sequence) {
+            List<RSSItem> items = feed.getItems();
+            if (sequences != null || items == null) return this;
+
+            Map<String, Integer> previousIndexes = new HashMap<String, Integer>();
+            if (previous != null && previous.sequences != null) {
+                List<RSSItem> previousItems = previous.feed.getItems();
+                for (int i = 0; i < previousItems.size(); i++) {
+                    previousIndexes.put(previousItems.get(i).getId(), i);
+                }
+            }
+
+            long[] sequences = new long[items.size()];
+            for (int i = items.size() - 1; i >= 0; i--) {
+                RSSItem item = items.get(i);
+                Integer index = previousIndexes.get(item.getId());
+                if (index != null && isSameContent(previous.feed.getItems().get(index), item)) {
+                    sequences[i] = previous.sequences[index];
+                } else {
+                    sequences[i] = sequence.incrementAndGet();
+                }
+            }
+            return new Entry(feed, etag, lastModified, fetchedAt, sequences);
+        }
+
+        private static boolean isSameContent(RSSItem a, RSSItem b) {
+            return Objects.equal(a.getTitle(), b.getTitle())
+                    && Objects.equal(a.getLink(), b.getLink())
+                    && Objects.equal(a.getDescription(), b.getDescription());
+        }
+    }
+
+    private final Cache<String, Entry> cache;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final int epoch = new Random().nextInt();
+
+    public FeedCache() {
+        this(DynamicPropertyFactory.getInstance().getIntProperty(RSSConstants.RSS_CACHE_MAX_FEEDS, 10000).get(),
+             DynamicPropertyFactory.getInstance().getLongProperty(RSSConstants.RSS_CACHE_RETENTION_MS, 3600000).get());
+    }
+
+    public FeedCache(int maxFeeds, long retentionMs) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxFeeds)
+                .expireAfterWrite(retentionMs, TimeUnit.MILLISECONDS)
+                .removalListener(new RemovalListener<String, Entry>() {
+                    public void onRemoval(RemovalNotification<String, Entry> notification) {
+                        if (notification.wasEvicted()) {
+                            evictionCounter.increment();
+                        }
+                    }
+                })
+                .build();
+
+        Gauge<Long> sizeGauge = new BasicGauge<Long>(MonitorConfig.builder("MiddleTierRSS_feedCacheSize").build(),
+                new Callable<Long>() {
+                    public Long call() {
+                        return cache.size();
+                    }
+                });
+        DefaultMonitorRegistry.getInstance().register(sizeGauge);
+    }
+
+    /**
+     * Returns the cached entry for this url, fresh or stale, or null if there is none
+     */
+    public Entry get(String url) {
+        return cache.getIfPresent(url);
+    }
+
+    /**
+     * Whether the entry can be served without checking upstream
+     */
+    public boolean isFresh(Entry entry) {
+        return System.currentTimeMillis() - entry.getFetchedAt() < ttlMs.get();
+    }
+
+    /**
+     * Numbers the items of the entry against the entry it replaces
+     *
+     * @return the entry as cached
+     */
+    public Entry put(String url, Entry entry) {
+        Entry sequenced = entry.sequenced(cache.getIfPresent(url), sequence);
+        cache.put(url, sequenced);
+        return sequenced;
+    }
+
+    /**
+     * Identifies the sequence the item numbers come from
+     */
+    public int getEpoch() {
+        return epoch;
+    }
+
+    public void invalidate(String url) {
+        cache.invalidate(url);
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public void recordHit() {
+        hitCounter.increment();
+    }
+
+    public void recordMiss() {
+        missCounter.increment();
+    }
+
+    public void recordRevalidation(boolean notModified) {
+        revalidationCounter.increment();
+        if (notModified) {
+            notModifiedCounter.increment();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.manager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.netflix.recipes.rss.RSS;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.Counter;
+import com.netflix.servo.monitor.MonitorConfig;
+
+/**
+ * Fetches the feeds of a single request concurrently
+ *  1) At most maxConcurrent feeds of the request are in flight at any time
+ *  2) Feeds that are not fetched by the deadline, or whose shared fetch was
+ *     interrupted, are reported as timed out instead of failing the whole request
+ * Only the request stops waiting at the deadline: the fetches still in flight
+ * complete and cache the feed, they may be shared with other requests.
+ */
+public class FeedFanOut {
+    private static final Logger logger = LoggerFactory.getLogger(FeedFanOut.class);
+
+    // JMX:  com.netflix.servo.COUNTER.MiddleTierRSS_*
+    private static final Counter fetchTimeoutCounter = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_fetchTimeoutCounter").build());
+
+    static {
+        DefaultMonitorRegistry.getInstance().register(fetchTimeoutCounter);
+    }
+
+    /**
+     * Feeds fetched within the deadline (in subscription order) and the urls that were not
+     */
+    public static class Result {
+        private final List<RSS> feeds;
+        private final List<String> timedOutUrls;
+
+        Result(List<RSS> feeds, List<String> timedOutUrls) {
+            this.feeds = feeds;
+            this.timedOutUrls = timedOutUrls;
+        }
+
+        public List<RSS> getFeeds() {
+            return feeds;
+        }
+
+        public List<String> getTimedOutUrls() {
+            return timedOutUrls;
+        }
+    }
+
+    /**
+     * Fetches all urls using the given async fetcher, waiting at most deadlineMs for the whole batch.
+     * Only the caller waits: fetches still in flight at the deadline are left to complete, they
+     * hold no thread and may be shared with other requests.
+     */
+    public Result fetchAsync(List<String> urls, Function<String, ListenableFuture<RSS>> fetcher, int maxConcurrent, long deadlineMs)
+            throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMs);
+        final BlockingQueue<Integer> completed = new LinkedBlockingQueue<Integer>();
+        final List<ListenableFuture<RSS>> futures = new ArrayList<ListenableFuture<RSS>>(urls.size());
+        final RSS[] fetched = new RSS[urls.size()];
+        final boolean[] done = new boolean[urls.size()];
+
+        int next = 0;
+        int inFlight = 0;
+        while (next < urls.size() && inFlight < Math.max(1, maxConcurrent)) {
+            futures.add(start(fetcher, urls.get(next), next, completed));
+            next++;
+            inFlight++;
+        }
+
+        while (inFlight > 0) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) break;
+
+            Integer index = completed.poll(remaining, TimeUnit.NANOSECONDS);
+            if (index == null) break;
+
+            inFlight--;
+            done[index] = true;
+            try {
+                fetched[index] = futures.get(index).get();
+            } catch (CancellationException e) {
+                done[index] = false;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof InterruptedException) {
+                    done[index] = false;
+                } else {
+                    logger.error("Exception occurred when fetching " + urls.get(index), e.getCause());
+                }
+            }
+
+            if (next < urls.size()) {
+                futures.add(start(fetcher, urls.get(next), next, completed));
+                next++;
+                inFlight++;
+            }
+        }
+
+        return toResult(urls, fetched, done, deadlineMs);
+    }
+
+    private static ListenableFuture<RSS> start(Function<String, ListenableFuture<RSS>> fetcher, String url,
+                                               final int index, final BlockingQueue<Integer> completed) {
+        ListenableFuture<RSS> future;
+        try {
+            future = fetcher.apply(url);
+        } catch (RuntimeException e) {
+            future = Futures.immediateFailedFuture(e);
+        }
+        future.addListener(new Runnable() {
+            public void run() {
+                completed.add(index);
+            }
+        }, MoreExecutors.sameThreadExecutor());
+        return future;
+    }
+
+    private static Result toResult(List<String> urls, RSS[] fetched, boolean[] done, long deadlineMs) {
+        List<RSS> feeds = new ArrayList<RSS>(urls.size());
+        List<String> timedOutUrls = new ArrayList<String>();
+        for (int i = 0; i < urls.size(); i++) {
+            if (done[i]) {
+                if (fetched[i] != null) feeds.add(fetched[i]);
+            } else {
+                timedOutUrls.add(urls.get(i));
+            }
+        }
+
+        if (!timedOutUrls.isEmpty()) {
+            logger.info("Feeds not fetched within " + deadlineMs + " ms: " + timedOutUrls);
+            fetchTimeoutCounter.increment(timedOutUrls.size());
+        }
+        return new Result(feeds, timedOutUrls);
+    }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.manager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Downloads feeds from their (external) sites
+ */
+public interface FeedFetcher {
+
+    /**
+     * Response of a feed site, whose content must be closed once read
+     */
+    interface Response {
+        int getStatus();
+
+        /**
+         * @return the first value of the header (case insensitive), or null
+         */
+        String getHeader(String name);
+
+        /**
+         * @return the content, decompressed
+         */
+        InputStream getContent() throws IOException;
+
+        void close();
+    }
+
+    /**
+     * GETs the url, following redirects
+     *
+     * @param headers extra request headers, e.g. for conditional requests
+     * @return the response once its headers are in, or failed if the site
+     *         could not be reached
+     */
+    ListenableFuture<Response> fetch(String url, Map<String, String> headers);
+
+    void close();
+}
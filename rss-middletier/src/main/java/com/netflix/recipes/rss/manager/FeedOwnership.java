@@ -0,0 +1,187 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.manager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.netflix.appinfo.ApplicationInfoManager;
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.config.ConfigurationManager;
+import com.netflix.config.DynamicPropertyFactory;
+import com.netflix.config.DynamicStringProperty;
+import com.netflix.discovery.DiscoveryClient;
+import com.netflix.discovery.DiscoveryManager;
+import com.netflix.recipes.rss.RSS;
+import com.netflix.recipes.rss.RSSConstants;
+import com.netflix.recipes.rss.RSSItem;
+import com.netflix.recipes.rss.impl.RSSImpl;
+import com.netflix.recipes.rss.impl.RSSItemImpl;
+import com.netflix.recipes.rss.util.BinaryReader;
+import com.netflix.recipes.rss.util.DescriptiveThreadFactory;
+import com.netflix.recipes.rss.util.HashRing;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.BasicGauge;
+import com.netflix.servo.monitor.Gauge;
+import com.netflix.servo.monitor.MonitorConfig;
+
+/**
+ * Splits the feed urls between the middle tiers on a consistent hash ring
+ * (host:port of every middle tier), so that a feed is downloaded and parsed
+ * by a single node: the others ask it for the parsed feed (see
+ * RSSManager.getOwnedRSSFeed).
+ *
+ * The middle tiers are the ones up in Eureka under the middletier VIP, or
+ * rss.ownership.peers on a single box (this node being rss.ownership.self).
+ * They are read again every rss.ownership.refreshMs, the ring is rebuilt
+ * when they changed and only the feeds of the nodes that joined or left
+ * move. Without any other node, this one owns every feed.
+ */
+public class FeedOwnership {
+    private static final Logger logger = LoggerFactory.getLogger(FeedOwnership.class);
+
+    private static final DynamicStringProperty peers =
+            DynamicPropertyFactory.getInstance().getStringProperty(RSSConstants.RSS_OWNERSHIP_PEERS, "");
+    private static final DynamicStringProperty self =
+            DynamicPropertyFactory.getInstance().getStringProperty(RSSConstants.RSS_OWNERSHIP_SELF, null);
+
+    private final int virtualNodes;
+    private final ScheduledExecutorService refresher;
+    private volatile HashRing<String> ring = new HashRing<String>(Collections.<String>emptyList(), 0);
+
+    public FeedOwnership() {
+        virtualNodes = DynamicPropertyFactory.getInstance().getIntProperty(RSSConstants.RSS_OWNERSHIP_VIRTUAL_NODES, 100).get();
+        long refreshMs = DynamicPropertyFactory.getInstance().getLongProperty(RSSConstants.RSS_OWNERSHIP_REFRESH_MS, 10000).get();
+
+        Gauge<Integer> nodesGauge = new BasicGauge<Integer>(MonitorConfig.builder("MiddleTierRSS_ownershipNodes").build(),
+                new Callable<Integer>() {
+                    public Integer call() {
+                        return ring.getNodes().size();
+                    }
+                });
+        DefaultMonitorRegistry.getInstance().register(nodesGauge);
+
+        refresher = Executors.newSingleThreadScheduledExecutor(
+                new DescriptiveThreadFactory("RSSOwnership-Thread", Thread.NORM_PRIORITY, true));
+        refresher.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    refresh();
+                } catch (Exception e) {
+                    logger.error("Exception occurred when reading the middle tiers", e);
+                }
+            }
+        }, 0, refreshMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return host:port of the middle tier owning the feed, or null if it is this one
+     */
+    public String getOwner(String url) {
+        String owner = ring.get(url);
+        return owner == null || owner.equals(getSelf()) ? null : owner;
+    }
+
+    /**
+     * @return the internal entry point of the owner for the feed
+     */
+    public static String getOwnedFeedUrl(String owner, String url) throws IOException {
+        return "http://" + owner + "/" + RSSConstants.MIDDLETIER_WEB_RESOURCE_ROOT_PATH
+                + RSSConstants.RSS_OWNED_FEED_ENTRY_POINT + "?url=" + URLEncoder.encode(url, "UTF-8");
+    }
+
+    /**
+     * Reads the feed sent by the owner: subscriptions of that single feed, as
+     * SubscriptionsBinaryWriter writes them
+     */
+    public static RSS readOwnedFeed(InputStream in) throws IOException {
+        BinaryReader reader = new BinaryReader(in);
+        int version = reader.readByte();
+        if (version != RSSConstants.RSS_BINARY_VERSION) {
+            throw new IOException("Unsupported subscriptions encoding version " + version);
+        }
+        reader.readString();
+        if (reader.readSize() != 1) {
+            throw new IOException("Not a single feed");
+        }
+        String url = reader.readString();
+        String title = reader.readString();
+        int size = reader.readSize();
+        List<RSSItem> items = new ArrayList<RSSItem>(Math.max(0, size));
+        for (int i = 0; i < size; i++) {
+            String itemTitle = reader.readString();
+            String link = reader.readString();
+            String description = reader.readString();
+            items.add(new RSSItemImpl(reader.readString(), itemTitle, link, description));
+        }
+        return new RSSImpl(url, title, items);
+    }
+
+    void refresh() {
+        List<String> nodes = getNodes();
+        HashRing<String> ring = this.ring;
+        if (!new HashSet<String>(nodes).equals(new HashSet<String>(ring.getNodes()))) {
+            logger.info("Feeds owned by " + nodes + ", this node being " + getSelf());
+            this.ring = new HashRing<String>(nodes, virtualNodes);
+        }
+    }
+
+    private List<String> getNodes() {
+        List<String> nodes = new ArrayList<String>();
+        if (peers.get().trim().length() > 0) {
+            for (String peer: peers.get().split(",")) {
+                if (peer.trim().length() > 0) nodes.add(peer.trim());
+            }
+            return nodes;
+        }
+
+        DiscoveryClient discoveryClient = DiscoveryManager.getInstance().getDiscoveryClient();
+        if (discoveryClient != null) {
+            for (InstanceInfo instance: discoveryClient.getInstancesByVipAddress(RSSConstants.MIDDLETIER_EUREKA_SERVICE_NAME, false)) {
+                if (instance.getStatus() == InstanceInfo.InstanceStatus.UP) {
+                    nodes.add(instance.getHostName() + ":" + instance.getPort());
+                }
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * @return host:port of this middle tier, as the other ones know it
+     */
+    private static String getSelf() {
+        if (self.get() != null) {
+            return self.get();
+        }
+        InstanceInfo instance = ApplicationInfoManager.getInstance().getInfo();
+        if (instance != null && peers.get().trim().length() == 0) {
+            return instance.getHostName() + ":" + instance.getPort();
+        }
+        return "localhost:" + ConfigurationManager.getConfigInstance().getInt("netty.http.port", Integer.MIN_VALUE);
+    }
+}
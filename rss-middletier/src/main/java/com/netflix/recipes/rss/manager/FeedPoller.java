@@ -0,0 +1,295 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.manager;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.netflix.config.DynamicDoubleProperty;
+import com.netflix.config.DynamicIntProperty;
+import com.netflix.config.DynamicLongProperty;
+import com.netflix.config.DynamicPropertyFactory;
+import com.netflix.recipes.rss.RSSConstants;
+import com.netflix.recipes.rss.util.DescriptiveThreadFactory;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.BasicGauge;
+import com.netflix.servo.monitor.Counter;
+import com.netflix.servo.monitor.Gauge;
+import com.netflix.servo.monitor.MonitorConfig;
+
+/**
+ * Keeps the feed cache up to date in the background so that reading a user's
+ * subscriptions does not have to wait for the publishers.
+ *
+ * Every distinct subscribed url is polled on its own schedule:
+ *  1) the interval shrinks when the feed changed since the last poll and
+ *     grows when it did not, within [minIntervalMs, maxIntervalMs]
+ *  2) feeds with more subscribers are polled more often
+ *  3) every delay is jittered so that feeds do not all fire at once
+ *
+ * At most maxConcurrentPerHost polls run against one upstream host at a time
+ * and all downloads share a single bandwidth budget.
+ */
+public class FeedPoller {
+    private static final Logger logger = LoggerFactory.getLogger(FeedPoller.class);
+
+    // JMX:  com.netflix.servo.COUNTER.MiddleTierRSS_*
+    private static final Counter pollCounter        = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_pollCounter").build());
+    private static final Counter pollChangedCounter = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_pollChangedCounter").build());
+    private static final Counter pollErrorCounter   = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_pollErrorCounter").build());
+    private static final Counter hostBusyCounter    = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_pollHostBusyCounter").build());
+
+    static {
+        DefaultMonitorRegistry.getInstance().register(pollCounter);
+        DefaultMonitorRegistry.getInstance().register(pollChangedCounter);
+        DefaultMonitorRegistry.getInstance().register(pollErrorCounter);
+        DefaultMonitorRegistry.getInstance().register(hostBusyCounter);
+    }
+
+    private static final DynamicLongProperty minIntervalMs =
+            DynamicPropertyFactory.getInstance().getLongProperty(RSSConstants.RSS_POLLER_MIN_INTERVAL_MS, 60000);
+    private static final DynamicLongProperty maxIntervalMs =
+            DynamicPropertyFactory.getInstance().getLongProperty(RSSConstants.RSS_POLLER_MAX_INTERVAL_MS, 1800000);
+    private static final DynamicDoubleProperty jitter =
+            DynamicPropertyFactory.getInstance().getDoubleProperty(RSSConstants.RSS_POLLER_JITTER, 0.2);
+    private static final DynamicIntProperty maxConcurrentPerHost =
+            DynamicPropertyFactory.getInstance().getIntProperty(RSSConstants.RSS_POLLER_MAX_CONCURRENT_PER_HOST, 2);
+    private static final DynamicLongProperty maxBytesPerSecond =
+            DynamicPropertyFactory.getInstance().getLongProperty(RSSConstants.RSS_POLLER_MAX_BYTES_PER_SECOND, 2097152);
+
+    // Delay before retrying a feed whose host is already at its concurrency limit
+    private static final long HOST_BUSY_RETRY_MS = 1000;
+
+    /**
+     * Refreshes a feed into the feed cache
+     */
+    public interface Refresher {
+        /**
+         * @return true if the feed content changed
+         */
+        boolean refresh(String url, BandwidthLimiter limiter) throws Exception;
+    }
+
+    private class PolledFeed {
+        final String url;
+        final String host;
+        final Set<String> subscribers = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        // Guarded by this
+        long intervalMs = minIntervalMs.get();
+        ScheduledFuture<?> scheduled;
+        boolean polling;
+        boolean polled;
+
+        PolledFeed(String url) {
+            this.url = url;
+            this.host = getHost(url);
+        }
+
+        synchronized void schedule(long delayMs) {
+            if (polling || !feeds.containsKey(url)) return;
+            if (scheduled != null) scheduled.cancel(false);
+            scheduled = timer.schedule(new Runnable() {
+                public void run() {
+                    poll(PolledFeed.this);
+                }
+            }, delayMs, TimeUnit.MILLISECONDS);
+        }
+
+        synchronized boolean startPolling() {
+            if (polling) return false;
+            polling = true;
+            scheduled = null;
+            return true;
+        }
+
+        synchronized void stopPolling(boolean changed) {
+            polling = false;
+            polled = true;
+            if (changed) {
+                intervalMs = Math.max(minIntervalMs.get(), intervalMs / 2);
+            } else {
+                intervalMs = Math.min(maxIntervalMs.get(), intervalMs + intervalMs / 2);
+            }
+        }
+
+        /**
+         * Polls right away unless the feed was polled before, failing feeds keep their backoff
+         */
+        synchronized void scheduleFirstPoll() {
+            if (!polled) schedule(0);
+        }
+
+        synchronized void cancel() {
+            if (scheduled != null) scheduled.cancel(false);
+            scheduled = null;
+        }
+
+        /**
+         * Adaptive interval, shortened logarithmically with the number of subscribers
+         */
+        synchronized long nextDelayMs() {
+            double popularity = 1 + Math.log(Math.max(1, subscribers.size())) / Math.log(2);
+            long delay = (long) (intervalMs / popularity);
+            return Math.max(minIntervalMs.get(), Math.min(maxIntervalMs.get(), delay));
+        }
+    }
+
+    private final Refresher refresher;
+    private final ConcurrentMap<String, PolledFeed> feeds = new ConcurrentHashMap<String, PolledFeed>();
+    private final ConcurrentMap<String, Semaphore> hostPermits = new ConcurrentHashMap<String, Semaphore>();
+    private final ScheduledExecutorService timer;
+    private final ExecutorService pollExecutor;
+    private final BandwidthLimiter limiter = new BandwidthLimiter(maxBytesPerSecond);
+    private final Random random = new Random();
+
+    public FeedPoller(Refresher refresher, int numThreads) {
+        this.refresher = refresher;
+        this.timer = Executors.newSingleThreadScheduledExecutor(
+                new DescriptiveThreadFactory("RSSPoller-Timer", Thread.NORM_PRIORITY, true));
+        this.pollExecutor = Executors.newFixedThreadPool(numThreads,
+                new DescriptiveThreadFactory("RSSPoller-Thread", Thread.NORM_PRIORITY, true));
+
+        Gauge<Integer> polledFeedsGauge = new BasicGauge<Integer>(MonitorConfig.builder("MiddleTierRSS_polledFeeds").build(),
+                new Callable<Integer>() {
+                    public Integer call() {
+                        return feeds.size();
+                    }
+                });
+        DefaultMonitorRegistry.getInstance().register(polledFeedsGauge);
+    }
+
+    /**
+     * Starts polling this url if it is not polled yet and counts the user as a subscriber
+     */
+    public void register(String url, String userId) {
+        PolledFeed feed = feeds.get(url);
+        if (feed == null) {
+            PolledFeed newFeed = new PolledFeed(url);
+            feed = feeds.putIfAbsent(url, newFeed);
+            if (feed == null) {
+                feed = newFeed;
+                feed.schedule(jittered(0));
+            }
+        }
+        feed.subscribers.add(userId);
+    }
+
+    /**
+     * Stops counting the user as a subscriber, and stops polling the url once nobody follows it
+     */
+    public void unregister(String url, String userId) {
+        PolledFeed feed = feeds.get(url);
+        if (feed == null) return;
+
+        feed.subscribers.remove(userId);
+        if (feed.subscribers.isEmpty() && feeds.remove(url, feed)) {
+            feed.cancel();
+        }
+    }
+
+    /**
+     * Polls the url as soon as possible if it has never been polled, e.g. when it is
+     * missing from the feed cache. Feeds that were polled but could not be cached are
+     * left on their schedule rather than downloaded again on every read.
+     */
+    public void pollNow(String url) {
+        PolledFeed feed = feeds.get(url);
+        if (feed != null) {
+            feed.scheduleFirstPoll();
+        }
+    }
+
+    private void poll(final PolledFeed feed) {
+        final Semaphore permits = getHostPermits(feed.host);
+        if (!permits.tryAcquire()) {
+            hostBusyCounter.increment();
+            feed.schedule(jittered(HOST_BUSY_RETRY_MS));
+            return;
+        }
+        if (!feed.startPolling()) {
+            permits.release();
+            return;
+        }
+
+        pollExecutor.execute(new Runnable() {
+            public void run() {
+                boolean changed = false;
+                try {
+                    changed = refresher.refresh(feed.url, limiter);
+                    pollCounter.increment();
+                    if (changed) pollChangedCounter.increment();
+                } catch (Exception e) {
+                    pollErrorCounter.increment();
+                    logger.error("Exception occurred when polling " + feed.url, e);
+                } finally {
+                    permits.release();
+                    feed.stopPolling(changed);
+                }
+                feed.schedule(jittered(feed.nextDelayMs()));
+            }
+        });
+    }
+
+    private Semaphore getHostPermits(String host) {
+        Semaphore permits = hostPermits.get(host);
+        if (permits == null) {
+            Semaphore newPermits = new Semaphore(Math.max(1, maxConcurrentPerHost.get()));
+            permits = hostPermits.putIfAbsent(host, newPermits);
+            if (permits == null) permits = newPermits;
+        }
+        return permits;
+    }
+
+    /**
+     * Spreads the delay uniformly over [delay * (1 - jitter), delay * (1 + jitter)],
+     * or over the first second for immediate polls
+     */
+    private long jittered(long delayMs) {
+        double spread = delayMs == 0 ? 1000 : delayMs * jitter.get();
+        double offset = delayMs == 0 ? random.nextDouble() * spread : (random.nextDouble() * 2 - 1) * spread;
+        return Math.max(0, (long) (delayMs + offset));
+    }
+
+    private static String getHost(String url) {
+        try {
+            String host = new URI(url).getHost();
+            return host == null ? url : host.toLowerCase();
+        } catch (Exception e) {
+            return url;
+        }
+    }
+
+    public void close() {
+        timer.shutdownNow();
+        pollExecutor.shutdownNow();
+    }
+}
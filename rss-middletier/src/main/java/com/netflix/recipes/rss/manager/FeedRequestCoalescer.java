@@ -0,0 +1,152 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.manager;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.netflix.recipes.rss.RSS;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.BasicGauge;
+import com.netflix.servo.monitor.Counter;
+import com.netflix.servo.monitor.Gauge;
+import com.netflix.servo.monitor.MonitorConfig;
+
+/**
+ * Makes concurrent fetches of the same feed url share a single upstream
+ * fetch and parse. The first caller for a url starts the fetch on the
+ * executor, not on its own thread: no request owns the shared fetch, so
+ * a caller that stops waiting (deadline, interrupt) does not decide the
+ * result of the others. All of them get the same result or the same
+ * failure. Async fetches are shared the same way.
+ */
+public class FeedRequestCoalescer {
+
+    // JMX:  com.netflix.servo.COUNTER.MiddleTierRSS_*
+    private static final Counter coalescedCounter = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_coalescedFetchCounter").build());
+
+    static {
+        DefaultMonitorRegistry.getInstance().register(coalescedCounter);
+    }
+
+    private final ConcurrentMap<String, ListenableFuture<RSS>> inFlight = new ConcurrentHashMap<String, ListenableFuture<RSS>>();
+    private final Executor executor;
+
+    /**
+     * @param executor runs the blocking fetches
+     */
+    public FeedRequestCoalescer(Executor executor) {
+        this.executor = executor;
+
+        Gauge<Integer> inFlightGauge = new BasicGauge<Integer>(MonitorConfig.builder("MiddleTierRSS_inFlightFetches").build(),
+                new Callable<Integer>() {
+                    public Integer call() {
+                        return inFlight.size();
+                    }
+                });
+        DefaultMonitorRegistry.getInstance().register(inFlightGauge);
+    }
+
+    /**
+     * Runs the fetch for this url, or joins the one already in flight, and waits for it
+     */
+    public RSS fetch(String url, Callable<RSS> fetcher) throws Exception {
+        return getResult(load(url, fetcher));
+    }
+
+    /**
+     * Starts the fetch for this url on the executor, or joins the one already in flight
+     */
+    public ListenableFuture<RSS> load(final String url, final Callable<RSS> fetcher) {
+        final SettableFuture<RSS> shared = SettableFuture.create();
+        ListenableFuture<RSS> existing = inFlight.putIfAbsent(url, shared);
+        if (existing != null) {
+            coalescedCounter.increment();
+            return existing;
+        }
+
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        RSS rss = fetcher.call();
+                        inFlight.remove(url, shared);
+                        shared.set(rss);
+                    } catch (Throwable t) {
+                        inFlight.remove(url, shared);
+                        shared.setException(t);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(url, shared);
+            shared.setException(e);
+        }
+        return shared;
+    }
+
+    /**
+     * Starts the async fetch for this url, or joins the one already in flight
+     */
+    public ListenableFuture<RSS> fetchAsync(final String url, Callable<ListenableFuture<RSS>> fetcher) {
+        final SettableFuture<RSS> shared = SettableFuture.create();
+        ListenableFuture<RSS> existing = inFlight.putIfAbsent(url, shared);
+        if (existing != null) {
+            coalescedCounter.increment();
+            return existing;
+        }
+
+        ListenableFuture<RSS> fetch;
+        try {
+            fetch = fetcher.call();
+        } catch (Exception e) {
+            fetch = Futures.immediateFailedFuture(e);
+        }
+        Futures.addCallback(fetch, new FutureCallback<RSS>() {
+            public void onSuccess(RSS rss) {
+                inFlight.remove(url, shared);
+                shared.set(rss);
+            }
+
+            public void onFailure(Throwable t) {
+                inFlight.remove(url, shared);
+                shared.setException(t);
+            }
+        });
+        return shared;
+    }
+
+    private static RSS getResult(Future<RSS> task) throws Exception {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw e;
+        }
+    }
+}
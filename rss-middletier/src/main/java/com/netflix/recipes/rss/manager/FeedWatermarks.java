@@ -0,0 +1,73 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.manager;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+/**
+ * Per feed watermarks handed to the clients as an opaque token, in hex:
+ *  epoch.feed-watermark_feed-watermark...
+ * where feed is a hash of the feed url and watermark the highest sequence
+ * number of its items the client has seen (see FeedCache). Only url safe
+ * characters are used, the token goes in the query string as is.
+ */
+final class FeedWatermarks {
+    private FeedWatermarks() {
+    }
+
+    /**
+     * @return the watermarks by feed, empty if the token was issued by another epoch (another node, or before a restart)
+     * @throws IllegalArgumentException if the token is malformed
+     */
+    static Map<Integer, Long> parse(String token, int epoch) {
+        Map<Integer, Long> watermarks = new HashMap<Integer, Long>();
+        if (token == null || token.isEmpty()) return watermarks;
+
+        try {
+            int dot = token.indexOf('.');
+            if (dot < 0 || (int) Long.parseLong(token.substring(0, dot), 16) != epoch) return watermarks;
+            if (dot == token.length() - 1) return watermarks;
+
+            for (String pair: token.substring(dot + 1).split("_")) {
+                int dash = pair.indexOf('-');
+                watermarks.put((int) Long.parseLong(pair.substring(0, dash), 16), Long.parseLong(pair.substring(dash + 1), 16));
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Malformed watermark " + token, e);
+        }
+        return watermarks;
+    }
+
+    static String format(Map<Integer, Long> watermarks, int epoch) {
+        StringBuilder token = new StringBuilder(12 + watermarks.size() * 16);
+        token.append(Integer.toHexString(epoch)).append('.');
+        boolean first = true;
+        for (Map.Entry<Integer, Long> watermark: watermarks.entrySet()) {
+            if (!first) token.append('_');
+            token.append(Integer.toHexString(watermark.getKey())).append('-').append(Long.toHexString(watermark.getValue()));
+            first = false;
+        }
+        return token.toString();
+    }
+
+    static int feedKey(String url) {
+        return Hashing.murmur3_32().hashString(url, Charsets.UTF_8).asInt();
+    }
+}
@@ -0,0 +1,468 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.manager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.channels.ClosedChannelException;
+import java.util.LinkedList;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.buffer.ChannelBufferInputStream;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.handler.codec.frame.TooLongFrameException;
+import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
+import org.jboss.netty.handler.codec.http.HttpChunkAggregator;
+import org.jboss.netty.handler.codec.http.HttpClientCodec;
+import org.jboss.netty.handler.codec.http.HttpContentDecompressor;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.jboss.netty.handler.ssl.SslHandler;
+import org.jboss.netty.handler.timeout.ReadTimeoutHandler;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timer;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.netflix.config.DynamicPropertyFactory;
+import com.netflix.recipes.rss.RSSConstants;
+import com.netflix.recipes.rss.util.DescriptiveThreadFactory;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.BasicGauge;
+import com.netflix.servo.monitor.Counter;
+import com.netflix.servo.monitor.Gauge;
+import com.netflix.servo.monitor.MonitorConfig;
+
+/**
+ * Fetches feeds with a non-blocking Netty client: a download holds no thread
+ * while it waits for the site, so thousands of them can be in flight on the
+ * few I/O threads.
+ *  1) Keep-alive connections are pooled per host, at most
+ *     maxConnectionsPerHost of them, further fetches of the host wait for one
+ *  2) Responses are gzip/deflate decoded and buffered, up to maxBodyBytes
+ *     decoded bytes, larger feeds fail
+ *  3) Fetches fail if the site cannot be connected to within connectTimeoutMs,
+ *     or sends nothing for readTimeoutMs. Pooled connections idle for
+ *     readTimeoutMs are closed too
+ *  4) Up to maxRedirects redirects are followed
+ */
+public class NettyFeedFetcher implements FeedFetcher {
+    private static final String USER_AGENT = "recipes-rss";
+
+    private static final int MAX_INITIAL_LINE_LENGTH = 4096;
+    private static final int MAX_HEADER_SIZE = 8192;
+    private static final int MAX_CHUNK_SIZE = 8192;
+
+    // JMX:  com.netflix.servo.COUNTER.MiddleTierRSS_*
+    private static final Counter connectionCounter      = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_feedClientConnectionCounter").build());
+    private static final Counter reusedConnectionCounter = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_feedClientReusedConnectionCounter").build());
+    private static final Counter redirectCounter        = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_feedClientRedirectCounter").build());
+
+    static {
+        DefaultMonitorRegistry.getInstance().register(connectionCounter);
+        DefaultMonitorRegistry.getInstance().register(reusedConnectionCounter);
+        DefaultMonitorRegistry.getInstance().register(redirectCounter);
+    }
+
+    private final int maxConnectionsPerHost;
+    private final int maxRedirects;
+    private final ClientBootstrap bootstrap;
+    private final Timer timer;
+    private final ChannelGroup channels = new DefaultChannelGroup("feed-client");
+    private final ConcurrentMap<String, HostPool> pools = new ConcurrentHashMap<String, HostPool>();
+
+    public NettyFeedFetcher() {
+        this(DynamicPropertyFactory.getInstance().getIntProperty(RSSConstants.RSS_FETCH_NETTY_IO_THREADS, 4).get(),
+             DynamicPropertyFactory.getInstance().getIntProperty(RSSConstants.RSS_FETCH_NETTY_MAX_CONNECTIONS_PER_HOST, 8).get(),
+             DynamicPropertyFactory.getInstance().getIntProperty(RSSConstants.RSS_FETCH_NETTY_CONNECT_TIMEOUT_MS, 2000).get(),
+             DynamicPropertyFactory.getInstance().getIntProperty(RSSConstants.RSS_FETCH_NETTY_READ_TIMEOUT_MS, 5000).get(),
+             DynamicPropertyFactory.getInstance().getIntProperty(RSSConstants.RSS_FETCH_NETTY_MAX_BODY_BYTES, 4 * 1024 * 1024).get(),
+             DynamicPropertyFactory.getInstance().getIntProperty(RSSConstants.RSS_FETCH_NETTY_MAX_REDIRECTS, 5).get());
+    }
+
+    public NettyFeedFetcher(int ioThreads, int maxConnectionsPerHost, int connectTimeoutMs,
+                            final int readTimeoutMs, final int maxBodyBytes, int maxRedirects) {
+        this.maxConnectionsPerHost = Math.max(1, maxConnectionsPerHost);
+        this.maxRedirects = maxRedirects;
+        this.timer = new HashedWheelTimer(new DescriptiveThreadFactory("RSSFeedClient-Timer", Thread.NORM_PRIORITY, true));
+        this.bootstrap = new ClientBootstrap(new NioClientSocketChannelFactory(
+                Executors.newCachedThreadPool(new DescriptiveThreadFactory("RSSFeedClient-Boss", Thread.NORM_PRIORITY, true)),
+                Executors.newCachedThreadPool(new DescriptiveThreadFactory("RSSFeedClient-IO", Thread.NORM_PRIORITY, true)),
+                1, ioThreads));
+        bootstrap.setOption("tcpNoDelay", true);
+        bootstrap.setOption("keepAlive", true);
+        bootstrap.setOption("connectTimeoutMillis", connectTimeoutMs);
+        bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+            public ChannelPipeline getPipeline() {
+                ChannelPipeline pipeline = Channels.pipeline();
+                pipeline.addLast("readTimeout", new ReadTimeoutHandler(timer, readTimeoutMs, TimeUnit.MILLISECONDS));
+                pipeline.addLast("codec", new HttpClientCodec(MAX_INITIAL_LINE_LENGTH, MAX_HEADER_SIZE, MAX_CHUNK_SIZE));
+                pipeline.addLast("inflater", new HttpContentDecompressor());
+                pipeline.addLast("aggregator", new HttpChunkAggregator(maxBodyBytes));
+                pipeline.addLast("handler", new ResponseHandler());
+                return pipeline;
+            }
+        });
+
+        Gauge<Integer> connectionsGauge = new BasicGauge<Integer>(MonitorConfig.builder("MiddleTierRSS_feedClientOpenConnections").build(),
+                new Callable<Integer>() {
+                    public Integer call() {
+                        return channels.size();
+                    }
+                });
+        DefaultMonitorRegistry.getInstance().register(connectionsGauge);
+    }
+
+    public ListenableFuture<Response> fetch(String url, Map<String, String> headers) {
+        SettableFuture<Response> result = SettableFuture.create();
+        try {
+            execute(new Exchange(new URI(url), headers, result, maxRedirects));
+        } catch (URISyntaxException e) {
+            result.setException(e);
+        }
+        return result;
+    }
+
+    public void close() {
+        channels.close().awaitUninterruptibly();
+        bootstrap.releaseExternalResources();
+        timer.stop();
+    }
+
+    private void execute(Exchange exchange) {
+        URI uri = exchange.uri;
+        String scheme = uri.getScheme() == null ? null : uri.getScheme().toLowerCase(Locale.ENGLISH);
+        if (!"http".equals(scheme) && !"https".equals(scheme) || uri.getHost() == null) {
+            exchange.result.setException(new IllegalArgumentException("Not an http(s) url: " + uri));
+            return;
+        }
+
+        boolean secure = "https".equals(scheme);
+        String host = uri.getHost().toLowerCase(Locale.ENGLISH);
+        int port = uri.getPort() != -1 ? uri.getPort() : secure ? 443 : 80;
+        String key = scheme + "://" + host + ":" + port;
+
+        HostPool pool = pools.get(key);
+        if (pool == null) {
+            HostPool created = new HostPool(host, port, secure);
+            pool = pools.putIfAbsent(key, created);
+            if (pool == null) pool = created;
+        }
+        pool.acquire(exchange);
+    }
+
+    /**
+     * A fetch, and the redirects it follows
+     */
+    private static class Exchange {
+        final URI uri;
+        final Map<String, String> headers;
+        final SettableFuture<Response> result;
+        final int redirectsLeft;
+
+        boolean reusedConnection;
+        boolean retried;
+
+        Exchange(URI uri, Map<String, String> headers, SettableFuture<Response> result, int redirectsLeft) {
+            this.uri = uri;
+            this.headers = headers;
+            this.result = result;
+            this.redirectsLeft = redirectsLeft;
+        }
+
+        HttpRequest newRequest() {
+            String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+            if (uri.getRawQuery() != null) {
+                path += "?" + uri.getRawQuery();
+            }
+
+            HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, path);
+            request.setHeader(HttpHeaders.Names.HOST, uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort());
+            request.setHeader(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.KEEP_ALIVE);
+            request.setHeader(HttpHeaders.Names.ACCEPT_ENCODING, HttpHeaders.Values.GZIP + ", " + HttpHeaders.Values.DEFLATE);
+            request.setHeader(HttpHeaders.Names.USER_AGENT, USER_AGENT);
+            for (Map.Entry<String, String> header: headers.entrySet()) {
+                request.setHeader(header.getKey(), header.getValue());
+            }
+            return request;
+        }
+    }
+
+    /**
+     * Connections to a single host: idle ones, and the fetches waiting for one
+     */
+    private class HostPool {
+        private final String host;
+        private final int port;
+        private final boolean secure;
+
+        private final LinkedList<Channel> idle = new LinkedList<Channel>();
+        private final Queue<Exchange> waiting = new LinkedList<Exchange>();
+        private int connections;
+
+        HostPool(String host, int port, boolean secure) {
+            this.host = host;
+            this.port = port;
+            this.secure = secure;
+        }
+
+        void acquire(Exchange exchange) {
+            Channel channel = null;
+            synchronized (this) {
+                while (!idle.isEmpty() && channel == null) {
+                    channel = idle.removeFirst();
+                    if (!channel.isConnected()) channel = null;
+                }
+                if (channel == null) {
+                    if (connections >= maxConnectionsPerHost) {
+                        waiting.add(exchange);
+                        return;
+                    }
+                    connections++;
+                }
+            }
+
+            if (channel == null) {
+                connect(exchange);
+            } else {
+                reusedConnectionCounter.increment();
+                send(channel, exchange, true);
+            }
+        }
+
+        /**
+         * Hands a connection whose response was fully read to the next waiting fetch, or keeps it idle
+         */
+        void release(Channel channel, boolean keepAlive) {
+            if (!keepAlive || !channel.isConnected()) {
+                channel.close();
+                return;
+            }
+
+            Exchange next;
+            synchronized (this) {
+                next = waiting.poll();
+                if (next == null) {
+                    // Most recently used first, the others time out
+                    idle.addFirst(channel);
+                    return;
+                }
+            }
+            reusedConnectionCounter.increment();
+            send(channel, next, true);
+        }
+
+        void closed(Channel channel) {
+            Exchange next;
+            synchronized (this) {
+                idle.remove(channel);
+                connections--;
+                next = waiting.poll();
+                if (next != null) connections++;
+            }
+            if (next != null) connect(next);
+        }
+
+        private void connect(final Exchange exchange) {
+            connectionCounter.increment();
+            ChannelFuture connected = bootstrap.connect(new InetSocketAddress(host, port));
+            final Channel channel = connected.getChannel();
+            channels.add(channel);
+            channel.getCloseFuture().addListener(new ChannelFutureListener() {
+                public void operationComplete(ChannelFuture future) {
+                    closed(channel);
+                }
+            });
+
+            connected.addListener(new ChannelFutureListener() {
+                public void operationComplete(ChannelFuture future) {
+                    if (!future.isSuccess()) {
+                        exchange.result.setException(future.getCause());
+                        return;
+                    }
+                    if (!secure) {
+                        send(channel, exchange, false);
+                        return;
+                    }
+
+                    SSLEngine engine;
+                    try {
+                        engine = SSLContext.getDefault().createSSLEngine(host, port);
+                    } catch (Exception e) {
+                        exchange.result.setException(e);
+                        channel.close();
+                        return;
+                    }
+                    engine.setUseClientMode(true);
+                    SslHandler ssl = new SslHandler(engine);
+                    channel.getPipeline().addFirst("ssl", ssl);
+                    ssl.handshake().addListener(new ChannelFutureListener() {
+                        public void operationComplete(ChannelFuture future) {
+                            if (future.isSuccess()) {
+                                send(channel, exchange, false);
+                            } else {
+                                exchange.result.setException(future.getCause());
+                                channel.close();
+                            }
+                        }
+                    });
+                }
+            });
+        }
+
+        private void send(Channel channel, Exchange exchange, boolean reused) {
+            ResponseHandler handler = channel.getPipeline().get(ResponseHandler.class);
+            exchange.reusedConnection = reused;
+            handler.start(this, exchange);
+            channel.write(exchange.newRequest());
+        }
+    }
+
+    /**
+     * Completes the fetch a connection is busy with
+     */
+    private class ResponseHandler extends SimpleChannelUpstreamHandler {
+        private volatile HostPool pool;
+        private volatile Exchange exchange;
+
+        void start(HostPool pool, Exchange exchange) {
+            this.pool = pool;
+            this.exchange = exchange;
+        }
+
+        private Exchange finish() {
+            Exchange current = exchange;
+            exchange = null;
+            return current;
+        }
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+            Exchange current = finish();
+            if (current == null) {
+                // Nobody asked for it
+                ctx.getChannel().close();
+                return;
+            }
+
+            HttpResponse response = (HttpResponse) e.getMessage();
+            pool.release(ctx.getChannel(), HttpHeaders.isKeepAlive(response));
+
+            int status = response.getStatus().getCode();
+            String location = response.getHeader(HttpHeaders.Names.LOCATION);
+            if (isRedirect(status) && location != null && current.redirectsLeft > 0) {
+                try {
+                    URI target = current.uri.resolve(location.trim());
+                    redirectCounter.increment();
+                    execute(new Exchange(target, current.headers, current.result, current.redirectsLeft - 1));
+                } catch (IllegalArgumentException ex) {
+                    current.result.setException(ex);
+                }
+                return;
+            }
+            current.result.set(new NettyResponse(response));
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+            Exchange current = finish();
+            ctx.getChannel().close();
+            if (current == null) return;
+
+            Throwable cause = e.getCause();
+            if (cause instanceof TooLongFrameException) {
+                cause = new IOException("Feed " + current.uri + " is too large", cause);
+            }
+            fail(current, cause);
+        }
+
+        @Override
+        public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) {
+            Exchange current = finish();
+            if (current != null) {
+                fail(current, new ClosedChannelException());
+            }
+        }
+
+        private void fail(Exchange current, Throwable cause) {
+            // A pooled connection may have been closed by the site just as it was reused
+            if (current.reusedConnection && !current.retried && cause instanceof IOException) {
+                current.retried = true;
+                execute(current);
+                return;
+            }
+            current.result.setException(cause);
+        }
+    }
+
+    private static boolean isRedirect(int status) {
+        return status == 301 || status == 302 || status == 303 || status == 307 || status == 308;
+    }
+
+    private static class NettyResponse implements Response {
+        private final HttpResponse response;
+
+        NettyResponse(HttpResponse response) {
+            this.response = response;
+        }
+
+        public int getStatus() {
+            return response.getStatus().getCode();
+        }
+
+        public String getHeader(String name) {
+            return response.getHeader(name);
+        }
+
+        public InputStream getContent() {
+            return new ChannelBufferInputStream(response.getContent());
+        }
+
+        public void close() {
+        }
+    }
+}
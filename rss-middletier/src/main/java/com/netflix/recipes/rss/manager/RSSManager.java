@@ -16,47 +16,56 @@
 package com.netflix.recipes.rss.manager;
 
 import java.io.IOException;
-import java.io.StringReader;
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
 
-import org.apache.commons.io.Charsets;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
 
-import com.netflix.client.ClientFactory;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.netflix.config.DynamicIntProperty;
 import com.netflix.config.DynamicPropertyFactory;
 import com.netflix.karyon.spi.HealthCheckHandler;
-import com.netflix.niws.client.http.HttpClientRequest;
-import com.netflix.niws.client.http.HttpClientResponse;
-import com.netflix.niws.client.http.RestClient;
 import com.netflix.recipes.rss.RSS;
 import com.netflix.recipes.rss.RSSConstants;
 import com.netflix.recipes.rss.RSSItem;
 import com.netflix.recipes.rss.RSSStore;
 import com.netflix.recipes.rss.Subscriptions;
+import com.netflix.recipes.rss.impl.CachingStoreImpl;
 import com.netflix.recipes.rss.impl.CassandraStoreImpl;
 import com.netflix.recipes.rss.impl.InMemoryStoreImpl;
 import com.netflix.recipes.rss.impl.RSSImpl;
-import com.netflix.recipes.rss.impl.RSSItemImpl;
 import com.netflix.recipes.rss.impl.SubscriptionsImpl;
+import com.netflix.recipes.rss.netty.NettyServer;
+import com.netflix.recipes.rss.util.DescriptiveThreadFactory;
+import com.netflix.recipes.rss.util.VirtualThreads;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.Counter;
+import com.netflix.servo.monitor.MonitorConfig;
 
 /**
  * RSS Manager that
- *  1) Fetches content from RSS feeds using Ribbon
- *  2) Parses RSS feeds
+ *  1) Fetches content from RSS feeds using Ribbon (or) a non-blocking Netty client
+ *  2) Parses RSS feeds and caches them by feed url, or gets them parsed from
+ *     the middle tier that owns them (see FeedOwnership)
  *  3) Persists feed urls into
  *      a) Cassandra using Astyanax (or)
  *      b) InMemoryStore
@@ -64,7 +73,35 @@ import com.netflix.recipes.rss.impl.SubscriptionsImpl;
 public class RSSManager implements HealthCheckHandler {
 
     private RSSStore store;
+    private final FeedFetcher fetcher;
+    private final boolean asyncFetch;
+    private final ExecutorService fetchExecutor;
+    private final FeedFanOut fanOut;
+    private final FeedCache feedCache;
+    private final FeedRequestCoalescer coalescer;
+    private final FeedPoller poller;
+    private final RSSParser parser;
+    private final FeedOwnership ownership;
     private static final Logger logger = LoggerFactory.getLogger(RSSManager.class);
+
+    // JMX:  com.netflix.servo.COUNTER.MiddleTierRSS_*
+    private static final Counter ownerFetchCounter      = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_ownerFetchCounter").build());
+    private static final Counter ownerFetchErrorCounter = new BasicCounter(MonitorConfig.builder("MiddleTierRSS_ownerFetchErrorCounter").build());
+
+    static {
+        DefaultMonitorRegistry.getInstance().register(ownerFetchCounter);
+        DefaultMonitorRegistry.getInstance().register(ownerFetchErrorCounter);
+    }
+
+    private static final DynamicIntProperty maxConcurrentFetches =
+            DynamicPropertyFactory.getInstance().getIntProperty(RSSConstants.RSS_FETCH_MAX_CONCURRENT, 8);
+    private static final DynamicIntProperty fetchDeadlineMs =
+            DynamicPropertyFactory.getInstance().getIntProperty(RSSConstants.RSS_FETCH_DEADLINE_MS, 2500);
+    private static final DynamicIntProperty maxItemsPerFeed =
+            DynamicPropertyFactory.getInstance().getIntProperty(RSSConstants.RSS_PARSER_MAX_ITEMS, 50);
+
+    private static final Map<String, String> NO_HEADERS = Collections.emptyMap();
+
     private static final RSSManager instance = new RSSManager();
     
     private RSSManager() {
@@ -74,6 +111,56 @@ public class RSSManager implements HealthCheckHandler {
         } else {
             store = new InMemoryStoreImpl();
         }
+        if (DynamicPropertyFactory.getInstance().getBooleanProperty(RSSConstants.RSS_STORE_CACHE_ENABLED, false).get()) {
+            store = new CachingStoreImpl(store);
+        }
+
+        if (RSSConstants.RSS_PARSER_DOM.equals(
+                DynamicPropertyFactory.getInstance().getStringProperty(RSSConstants.RSS_PARSER, RSSConstants.RSS_PARSER_STAX).get())) {
+            parser = new DomRSSParser();
+        } else {
+            parser = new StaxRSSParser();
+        }
+
+        feedCache = new FeedCache();
+        ownership = DynamicPropertyFactory.getInstance().getBooleanProperty(RSSConstants.RSS_OWNERSHIP_ENABLED, false).get()
+                ? new FeedOwnership() : null;
+
+        // The Netty client downloads without holding a thread, the fetch threads only parse
+        if (RSSConstants.RSS_FETCH_CLIENT_NETTY.equals(
+                DynamicPropertyFactory.getInstance().getStringProperty(RSSConstants.RSS_FETCH_CLIENT, RSSConstants.RSS_FETCH_CLIENT_RIBBON).get())) {
+            fetcher = new NettyFeedFetcher();
+            asyncFetch = true;
+        } else {
+            fetcher = new RibbonFeedFetcher(RSSConstants.RSS_FEED_CLIENT);
+            asyncFetch = false;
+        }
+
+        // Blocking fetches on virtual threads are not capped by rss.fetch.threads, only per request
+        ExecutorService fetchExecutor = null;
+        if (NettyServer.EXECUTOR_VIRTUAL.equals(DynamicPropertyFactory.getInstance()
+                .getStringProperty(RSSConstants.NETTY_EXECUTOR_TYPE, NettyServer.EXECUTOR_BOUNDED).get())) {
+            fetchExecutor = VirtualThreads.newThreadPerTaskExecutor("RSSFetch-VirtualThread");
+        }
+        if (fetchExecutor == null) {
+            int fetchThreads = DynamicPropertyFactory.getInstance().getIntProperty(RSSConstants.RSS_FETCH_THREADS, 32).get();
+            fetchExecutor = Executors.newFixedThreadPool(fetchThreads,
+                    new DescriptiveThreadFactory("RSSFetch-Thread", Thread.NORM_PRIORITY, true));
+        }
+        this.fetchExecutor = fetchExecutor;
+        fanOut = new FeedFanOut();
+        // Shared fetches run on the fetch threads, no request owns them
+        coalescer = new FeedRequestCoalescer(fetchExecutor);
+
+        if (DynamicPropertyFactory.getInstance().getBooleanProperty(RSSConstants.RSS_POLLER_ENABLED, false).get()) {
+            poller = new FeedPoller(new FeedPoller.Refresher() {
+                public boolean refresh(String url, BandwidthLimiter limiter) throws Exception {
+                    return refreshRSSFeed(url, limiter);
+                }
+            }, DynamicPropertyFactory.getInstance().getIntProperty(RSSConstants.RSS_POLLER_THREADS, 8).get());
+        } else {
+            poller = null;
+        }
     }
 
     public static RSSManager getInstance() {
@@ -81,19 +168,126 @@ public class RSSManager implements HealthCheckHandler {
     }
 
     /**
-     * Fetches the User subscriptions
+     * Fetches all the User subscriptions
      */
     public Subscriptions getSubscriptions(String userId) throws Exception {
-        List<String> feedUrls = store.getSubscribedUrls(userId);
-        List<RSS> feeds = new ArrayList<RSS>(feedUrls.size());
-        for (String feedUrl: feedUrls) {
-            RSS rss = RSSManager.getInstance().fetchRSSFeed(feedUrl);
+        return getSubscriptions(userId, 0, 0, 0, null);
+    }
+
+    /**
+     * Fetches a page of the User subscriptions.
+     * Only the feeds of the page are fetched, in parallel; the ones that are not
+     * fetched within the deadline are reported as timed out instead of failing
+     * the whole request.
+     *
+     * @param offset       index of the first subscribed feed of the page
+     * @param feedLimit    maximum number of subscribed feeds in the page, 0 for no limit
+     * @param itemsPerFeed maximum number of items of every feed, 0 for all the parsed ones
+     * @param watermark    watermark returned by a previous call, to only return the
+     *                     items published or changed since, or null for all of them
+     */
+    public Subscriptions getSubscriptions(String userId, int offset, int feedLimit, int itemsPerFeed, String watermark)
+            throws Exception {
+        if (offset < 0 || feedLimit < 0 || itemsPerFeed < 0) {
+            throw new IllegalArgumentException("offset, feedLimit and itemsPerFeed cannot be negative");
+        }
+        Map<Integer, Long> since = FeedWatermarks.parse(watermark, feedCache.getEpoch());
+
+        List<String> subscribedUrls = store.getSubscribedUrls(userId);
+        int end = feedLimit == 0 ? subscribedUrls.size() : (int) Math.min(subscribedUrls.size(), (long) offset + feedLimit);
+        Integer nextOffset = end < subscribedUrls.size() ? end : null;
+        List<String> feedUrls = offset < end ? subscribedUrls.subList(offset, end) : Collections.<String>emptyList();
+
+        List<RSS> feeds;
+        List<String> timedOutUrls;
+        if (poller != null) {
+            feeds = new ArrayList<RSS>(feedUrls.size());
+            timedOutUrls = readRSSFeeds(userId, feedUrls, feeds);
+        } else {
+            FeedFanOut.Result result = fanOut.fetchAsync(feedUrls, new Function<String, ListenableFuture<RSS>>() {
+                public ListenableFuture<RSS> apply(String feedUrl) {
+                    return fetchRSSFeed(feedUrl);
+                }
+            }, maxConcurrentFetches.get(), fetchDeadlineMs.get());
+            feeds = result.getFeeds();
+            timedOutUrls = result.getTimedOutUrls();
+        }
+
+        List<RSS> newFeeds = new ArrayList<RSS>(feeds.size());
+        Map<Integer, Long> watermarks = new LinkedHashMap<Integer, Long>();
+        for (RSS rss: feeds) {
             if (rss.getItems() != null && !rss.getItems().isEmpty()) {
-                feeds.add(rss);
+                newFeeds.add(newItems(rss, since, watermarks, itemsPerFeed));
+            }
+        }
+        // Feeds that could not be read this time are still up to date as of the previous watermark
+        for (String feedUrl: feedUrls) {
+            Integer feed = FeedWatermarks.feedKey(feedUrl);
+            if (!watermarks.containsKey(feed) && since.containsKey(feed)) {
+                watermarks.put(feed, since.get(feed));
             }
         }
 
-        return new SubscriptionsImpl(userId, feeds);
+        return new SubscriptionsImpl(userId, newFeeds, timedOutUrls, nextOffset,
+                FeedWatermarks.format(watermarks, feedCache.getEpoch()));
+    }
+
+    /**
+     * Reads the feeds from the feed cache kept up to date by the poller.
+     *
+     * @return the urls of the feeds that have not been polled yet
+     */
+    private List<String> readRSSFeeds(String userId, List<String> feedUrls, List<RSS> feeds) {
+        List<String> pendingUrls = new ArrayList<String>();
+        for (String feedUrl: feedUrls) {
+            poller.register(feedUrl, userId);
+            FeedCache.Entry cached = feedCache.get(feedUrl);
+            if (cached == null) {
+                poller.pollNow(feedUrl);
+                pendingUrls.add(feedUrl);
+            } else {
+                feeds.add(cached.getFeed());
+            }
+        }
+        return pendingUrls;
+    }
+
+    /**
+     * The items of the feed numbered above the client's watermark, at most itemsPerFeed,
+     * and records the new watermark of the feed. Feeds are shared by every request,
+     * the items are only copied when some are left out.
+     */
+    private RSS newItems(RSS rss, Map<Integer, Long> since, Map<Integer, Long> watermarks, int itemsPerFeed) {
+        // Only the cached entry the feed comes from knows the item numbers
+        FeedCache.Entry cached = feedCache.get(rss.getUrl());
+        if (cached == null || cached.getFeed() != rss || !cached.isSequenced()) {
+            return limitItems(rss, itemsPerFeed);
+        }
+
+        Integer feed = FeedWatermarks.feedKey(rss.getUrl());
+        watermarks.put(feed, cached.getWatermark());
+        Long watermark = since.get(feed);
+        if (watermark == null) {
+            return limitItems(rss, itemsPerFeed);
+        }
+
+        List<RSSItem> items = new ArrayList<RSSItem>();
+        for (int i = 0; i < rss.getItems().size() && (itemsPerFeed == 0 || items.size() < itemsPerFeed); i++) {
+            if (cached.getSequence(i) > watermark) {
+                items.add(rss.getItems().get(i));
+            }
+        }
+        return new RSSImpl(rss.getUrl(), rss.getTitle(), items);
+    }
+
+    /**
+     * The first items of the feed, as a view: the cached feed is shared by every request
+     */
+    private static RSS limitItems(RSS rss, int itemsPerFeed) {
+        if (itemsPerFeed == 0 || rss.getItems().size() <= itemsPerFeed) {
+            return rss;
+        }
+        return new RSSImpl(rss.getUrl(), rss.getTitle(), rss.getItems().subList(0, itemsPerFeed));
     }
 
     /**
@@ -102,6 +296,9 @@ public class RSSManager implements HealthCheckHandler {
     public void addSubscription(String user, String decodedUrl) throws Exception {
         if (decodedUrl == null) throw new IllegalArgumentException("url cannot be null");
         store.subscribeUrl(user, decodedUrl);
+        if (poller != null) {
+            poller.register(decodedUrl, user);
+        }
     }
 
     /**
@@ -110,76 +307,294 @@ public class RSSManager implements HealthCheckHandler {
     public void deleteSubscription(String user, String decodedUrl) throws Exception {
         if (decodedUrl == null) throw new IllegalArgumentException("url cannot be null");
         store.unsubscribeUrl(user, decodedUrl);
+        if (poller != null) {
+            poller.unregister(decodedUrl, user);
+        }
+    }
+
+    /**
+     * Fetch the RSS feed content.
+     * Fresh feeds are served from the feed cache, concurrent misses for the
+     * same url are coalesced into a single load, which the request does not own:
+     * it only waits for it.
+     */
+    private ListenableFuture<RSS> fetchRSSFeed(final String url) {
+        FeedCache.Entry cached = feedCache.get(url);
+        if (cached != null && feedCache.isFresh(cached)) {
+            feedCache.recordHit();
+            return Futures.immediateFuture(cached.getFeed());
+        }
+        feedCache.recordMiss();
+
+        // Concurrent requests for the same url share one upstream fetch
+        if (asyncFetch) {
+            return coalescer.fetchAsync(url, new Callable<ListenableFuture<RSS>>() {
+                public ListenableFuture<RSS> call() {
+                    return loadRSSFeedAsync(url);
+                }
+            });
+        }
+        return coalescer.load(url, new Callable<RSS>() {
+            public RSS call() throws InterruptedException {
+                return loadRSSFeed(url, false, null);
+            }
+        });
+    }
+
+    /**
+     * Refreshes the feed cache entry of this url regardless of its age
+     *
+     * @return true if the feed content changed, false if it is still not cached
+     */
+    private boolean refreshRSSFeed(final String url, final BandwidthLimiter limiter) throws Exception {
+        FeedCache.Entry before = feedCache.get(url);
+        RSS after = coalescer.fetch(url, new Callable<RSS>() {
+            public RSS call() throws InterruptedException {
+                return loadRSSFeed(url, true, limiter);
+            }
+        });
+        // Nothing cached means the feed could not be read, which should back off rather than speed up
+        if (feedCache.get(url) == null) return false;
+        return before == null || (after != before.getFeed() && !hasSameItems(before.getFeed(), after));
+    }
+
+    private static boolean hasSameItems(RSS a, RSS b) {
+        List<RSSItem> itemsA = a.getItems();
+        List<RSSItem> itemsB = b.getItems();
+        if (itemsA == null || itemsB == null) return itemsA == itemsB;
+        if (itemsA.size() != itemsB.size()) return false;
+        for (int i = 0; i < itemsA.size(); i++) {
+            String linkA = itemsA.get(i).getLink();
+            String linkB = itemsB.get(i).getLink();
+            if (linkA == null ? linkB != null : !linkA.equals(linkB)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Downloads and parses the feed, updating the feed cache.
+     * Stale feeds are revalidated upstream with a conditional GET, so
+     * unchanged feeds are neither downloaded nor parsed again.
+     *
+     * @param force   reload even if the cached entry is still fresh
+     * @param limiter optional bandwidth budget for the download
+     * @throws InterruptedException rather than the fallback, which would be shared with the other callers
+     */
+    private RSS loadRSSFeed(String url, boolean force, BandwidthLimiter limiter) throws InterruptedException {
+        // The fetch this caller was waiting on may just have refreshed the entry
+        FeedCache.Entry cached = feedCache.get(url);
+        if (!force && cached != null && feedCache.isFresh(cached)) {
+            return cached.getFeed();
+        }
+
+        // Feeds owned by another middle tier are read from it, or downloaded here if it cannot be reached
+        String owner = ownership != null ? ownership.getOwner(url) : null;
+        if (owner != null) {
+            ownerFetchCounter.increment();
+            try {
+                return handleOwnerResponse(url, fetcher.fetch(FeedOwnership.getOwnedFeedUrl(owner, url), NO_HEADERS).get());
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                ownerFetchErrorCounter.increment();
+                logger.warn("Cannot get the RSS feed " + url + " from its owner " + owner + ", downloading it", e);
+            }
+        }
+        return downloadRSSFeed(url, cached, limiter);
+    }
+
+    /**
+     * Downloads and parses the feed from its site, see loadRSSFeed
+     */
+    private RSS downloadRSSFeed(String url, FeedCache.Entry cached, BandwidthLimiter limiter) throws InterruptedException {
+        boolean revalidating = cached != null && cached.hasValidators();
+        FeedFetcher.Response response;
+        try {
+            response = fetcher.fetch(url, revalidating ? getConditionalHeaders(cached) : NO_HEADERS).get();
+        } catch (ExecutionException e) {
+            logger.error("Exception occurred when fetching the RSS feed " + url, e.getCause());
+            return fallback(cached);
+        }
+        return handleResponse(url, cached, revalidating, response, limiter);
+    }
+
+    /**
+     * Same as loadRSSFeed, the download does not hold a thread, the feed is parsed on a fetch thread
+     */
+    private ListenableFuture<RSS> loadRSSFeedAsync(final String url) {
+        final FeedCache.Entry cached = feedCache.get(url);
+        if (cached != null && feedCache.isFresh(cached)) {
+            return Futures.immediateFuture(cached.getFeed());
+        }
+
+        final String owner = ownership != null ? ownership.getOwner(url) : null;
+        if (owner == null) {
+            return downloadRSSFeedAsync(url, cached);
+        }
+        ownerFetchCounter.increment();
+        ListenableFuture<FeedFetcher.Response> response;
+        try {
+            response = fetcher.fetch(FeedOwnership.getOwnedFeedUrl(owner, url), NO_HEADERS);
+        } catch (IOException e) {
+            response = Futures.immediateFailedFuture(e);
+        }
+        final SettableFuture<RSS> result = SettableFuture.create();
+        Futures.addCallback(response, new FutureCallback<FeedFetcher.Response>() {
+                    public void onSuccess(FeedFetcher.Response response) {
+                        try {
+                            result.set(handleOwnerResponse(url, response));
+                        } catch (Exception e) {
+                            onFailure(e);
+                        }
+                    }
+
+                    public void onFailure(Throwable t) {
+                        ownerFetchErrorCounter.increment();
+                        logger.warn("Cannot get the RSS feed " + url + " from its owner " + owner + ", downloading it", t);
+                        Futures.addCallback(downloadRSSFeedAsync(url, cached), new FutureCallback<RSS>() {
+                            public void onSuccess(RSS rss) {
+                                result.set(rss);
+                            }
+
+                            public void onFailure(Throwable t) {
+                                result.set(fallback(cached));
+                            }
+                        });
+                    }
+                }, fetchExecutor);
+        return result;
     }
 
     /**
-     * Fetch the RSS feed content using Ribbon
+     * Same as downloadRSSFeed, the download does not hold a thread
      */
-    private RSS fetchRSSFeed(String url) {
+    private ListenableFuture<RSS> downloadRSSFeedAsync(final String url, final FeedCache.Entry cached) {
+        final boolean revalidating = cached != null && cached.hasValidators();
+        final SettableFuture<RSS> result = SettableFuture.create();
+        Futures.addCallback(fetcher.fetch(url, revalidating ? getConditionalHeaders(cached) : NO_HEADERS),
+                new FutureCallback<FeedFetcher.Response>() {
+                    public void onSuccess(FeedFetcher.Response response) {
+                        result.set(handleResponse(url, cached, revalidating, response, null));
+                    }
 
-        RestClient client = (RestClient) ClientFactory.getNamedClient(RSSConstants.MIDDLETIER_REST_CLIENT);
-        HttpClientResponse response;
-        String rssData = null;
+                    public void onFailure(Throwable t) {
+                        logger.error("Exception occurred when fetching the RSS feed " + url, t);
+                        result.set(fallback(cached));
+                    }
+                }, fetchExecutor);
+        return result;
+    }
 
+    /**
+     * Parses the feed and caches it, or keeps the cached one if the feed did not change
+     */
+    private RSS handleResponse(String url, FeedCache.Entry cached, boolean revalidating,
+                               FeedFetcher.Response response, BandwidthLimiter limiter) {
+        RSS rss = null;
         try {
-            HttpClientRequest request = HttpClientRequest.newBuilder().setUri(new URI(url)).build();
-            response = client.execute(request);
+            logger.info("Status code for " + url + " : " + response.getStatus());
+            if (revalidating) {
+                boolean notModified = response.getStatus() == Response.Status.NOT_MODIFIED.getStatusCode();
+                feedCache.recordRevalidation(notModified);
+                if (notModified) {
+                    feedCache.put(url, cached.revalidated(System.currentTimeMillis()));
+                    return cached.getFeed();
+                }
+            }
+            if (response.getStatus() >= 300) {
+                return fallback(cached);
+            }
 
-            if (response != null) {
-                rssData  = IOUtils.toString(response.getRawEntity(), Charsets.UTF_8);
-                logger.info("Status code for " + response.getRequestedURI() + " : " + response.getStatus());
+            // Parsed as it is read: straight off the wire with Ribbon, the Netty client buffers at most maxBodyBytes
+            InputStream entity = response.getContent();
+            if (limiter != null) {
+                entity = limiter.wrap(entity);
+            }
+            try {
+                rss = parser.parse(url, entity, maxItemsPerFeed.get());
+            } finally {
+                IOUtils.closeQuietly(entity);
             }
-        } catch (URISyntaxException e) {
-            logger.error("Exception occurred when setting the URI", e);
+            feedCache.put(url, new FeedCache.Entry(rss, response.getHeader(HttpHeaders.ETAG),
+                    response.getHeader(HttpHeaders.LAST_MODIFIED), System.currentTimeMillis()));
         } catch (Exception e) {
-            logger.error("Exception occurred when executing the HTTP request", e);
+            logger.error("Exception occurred when fetching or parsing the RSS feed " + url, e);
+        } finally {
+            response.close();
         }
 
-        return parseRSS(url, rssData);
+        return rss == null ? fallback(cached) : rss;
     }
 
     /**
-     * Parses the RSS feeds and return back a POJO
+     * Caches the feed parsed by its owner, as fresh as the owner fetched it
      */
-    private RSS parseRSS(String url, String rss) {
-        // Error case
-        if (rss == null) return new RSSImpl();
-        
-        RSS rssItems = null;
-        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-        String FEATURE = "http://apache.org/xml/features/disallow-doctype-decl";
+    private RSS handleOwnerResponse(String url, FeedFetcher.Response response) throws IOException {
         try {
-            dbf.setFeature(FEATURE, true);
-            DocumentBuilder db = dbf.newDocumentBuilder();
-            try {
-                InputSource is = new InputSource(new StringReader(rss));
-                Document dom = db.parse(is);
-                Element docEle = dom.getDocumentElement();
-                
-                List<RSSItem> items = new ArrayList<RSSItem>();
-                String title = docEle.getElementsByTagName("title").item(0).getTextContent();
-                NodeList nl  = docEle.getElementsByTagName("item");
-                if (nl != null && nl.getLength() > 0) {
-                    for (int i = 0 ; i < nl.getLength(); i++) {
-                        Element el = (Element) nl.item(i);
-                        items.add(new RSSItemImpl(el.getElementsByTagName("title").item(0).getTextContent(), el.getElementsByTagName("link").item(0).getTextContent(), el.getElementsByTagName("description").item(0).getTextContent()));
-                    }
+            if (response.getStatus() != Response.Status.OK.getStatusCode()) {
+                throw new IOException("Status code " + response.getStatus());
+            }
+            RSS rss = FeedOwnership.readOwnedFeed(response.getContent());
+            long now = System.currentTimeMillis();
+            long fetchedAt = now;
+            String header = response.getHeader(RSSConstants.RSS_FETCHED_AT_HEADER);
+            if (header != null) {
+                try {
+                    fetchedAt = Math.min(now, Long.parseLong(header));
+                } catch (NumberFormatException e) {
+                    // Fetched now
                 }
-                rssItems = new RSSImpl(url, title, items);
-                
-            } catch (SAXException e) {
-                logger.error("Exception occurred during parsing the RSS feed", e);
-            } catch (IOException e) {
-                logger.error("Exception occurred during fetching the RSS feed", e);
             }
-        } catch (ParserConfigurationException e) {
-            logger.error("Exception occurred during parsing the RSS feed", e);
+            feedCache.put(url, new FeedCache.Entry(rss, null, null, fetchedAt));
+            return rss;
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * The feed for the other middle tiers, this one owning it (see FeedOwnership):
+     * from the feed cache or downloaded, never from another middle tier, so that
+     * nodes that do not agree on the owner yet do not send the request around.
+     *
+     * @return the cache entry of the feed, or null if it could not be downloaded
+     */
+    public FeedCache.Entry getOwnedRSSFeed(final String url) throws Exception {
+        FeedCache.Entry cached = feedCache.get(url);
+        if (cached != null && feedCache.isFresh(cached)) {
+            feedCache.recordHit();
+            return cached;
         }
+        feedCache.recordMiss();
+
+        coalescer.fetch(url, new Callable<RSS>() {
+            public RSS call() throws InterruptedException {
+                FeedCache.Entry cached = feedCache.get(url);
+                if (cached != null && feedCache.isFresh(cached)) {
+                    return cached.getFeed();
+                }
+                return downloadRSSFeed(url, cached, null);
+            }
+        });
+        return feedCache.get(url);
+    }
+
+    /**
+     * Keep serving the last good copy while the feed is failing upstream
+     */
+    private static RSS fallback(FeedCache.Entry cached) {
+        return cached != null ? cached.getFeed() : new RSSImpl();
+    }
 
-        if (rssItems == null) {
-            rssItems = new RSSImpl();
+    private static Map<String, String> getConditionalHeaders(FeedCache.Entry cached) {
+        Map<String, String> headers = new HashMap<String, String>();
+        if (cached.getETag() != null) {
+            headers.put(HttpHeaders.IF_NONE_MATCH, cached.getETag());
+        }
+        if (cached.getLastModified() != null) {
+            headers.put(HttpHeaders.IF_MODIFIED_SINCE, cached.getLastModified());
         }
-        return rssItems;
+        return headers;
     }
 
     public int getStatus() {
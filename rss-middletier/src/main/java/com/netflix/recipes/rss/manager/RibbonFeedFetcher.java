@@ -0,0 +1,109 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.manager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Collection;
+import java.util.Map;
+
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.apache.commons.io.IOUtils;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.netflix.client.ClientException;
+import com.netflix.client.ClientFactory;
+import com.netflix.niws.client.http.HttpClientRequest;
+import com.netflix.niws.client.http.HttpClientResponse;
+import com.netflix.niws.client.http.RestClient;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+
+/**
+ * Fetches feeds with a blocking Ribbon RestClient: fetch() returns once the
+ * response headers are in, and the content is read off the connection.
+ */
+public class RibbonFeedFetcher implements FeedFetcher {
+    private final String clientName;
+
+    /**
+     * @param clientName Ribbon client configured for the feed sites, see RSSConstants.RSS_FEED_CLIENT
+     */
+    public RibbonFeedFetcher(String clientName) {
+        this.clientName = clientName;
+    }
+
+    public ListenableFuture<Response> fetch(String url, Map<String, String> headers) {
+        RestClient client = (RestClient) ClientFactory.getNamedClient(clientName);
+        try {
+            HttpClientRequest.Builder builder = HttpClientRequest.newBuilder().setUri(new URI(url));
+            if (!headers.isEmpty()) {
+                MultivaluedMap<String, String> requestHeaders = new MultivaluedMapImpl();
+                for (Map.Entry<String, String> header: headers.entrySet()) {
+                    requestHeaders.putSingle(header.getKey(), header.getValue());
+                }
+                builder.setHeaders(requestHeaders);
+            }
+            return Futures.<Response>immediateFuture(new RibbonResponse(client.execute(builder.build())));
+        } catch (Exception e) {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    public void close() {
+    }
+
+    private static class RibbonResponse implements Response {
+        private final HttpClientResponse response;
+        private InputStream content;
+
+        RibbonResponse(HttpClientResponse response) {
+            this.response = response;
+        }
+
+        public int getStatus() {
+            return response.getStatus();
+        }
+
+        public String getHeader(String name) {
+            Map<String, ? extends Collection<String>> headers = response.getHeaders();
+            if (headers == null) return null;
+            for (Map.Entry<String, ? extends Collection<String>> header : headers.entrySet()) {
+                if (name.equalsIgnoreCase(header.getKey()) && header.getValue() != null && !header.getValue().isEmpty()) {
+                    return header.getValue().iterator().next();
+                }
+            }
+            return null;
+        }
+
+        public InputStream getContent() throws IOException {
+            if (content == null) {
+                try {
+                    content = response.getRawEntity();
+                } catch (ClientException e) {
+                    throw new IOException(e.getMessage(), e);
+                }
+            }
+            return content;
+        }
+
+        public void close() {
+            IOUtils.closeQuietly(content);
+        }
+    }
+}
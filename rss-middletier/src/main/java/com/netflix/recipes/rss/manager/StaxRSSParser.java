@@ -0,0 +1,182 @@
+/*
+ * Copyright 2012 Netflix, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.netflix.recipes.rss.manager;
+
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.netflix.recipes.rss.RSS;
+import com.netflix.recipes.rss.RSSItem;
+import com.netflix.recipes.rss.impl.RSSImpl;
+import com.netflix.recipes.rss.impl.RSSItemImpl;
+
+/**
+ * Streaming (StAX) parser for RSS 2.0 and Atom feeds.
+ *
+ * Reads straight from the response stream and creates each item as soon as
+ * its closing tag is read, so the document is never held in memory as a
+ * String or DOM. Parsing stops as soon as maxItems items have been read.
+ */
+public class StaxRSSParser implements RSSParser {
+
+    // XMLInputFactory is not guaranteed to be thread safe, so each thread gets its own
+    private static final ThreadLocal<XMLInputFactory> factories = new ThreadLocal<XMLInputFactory>() {
+        @Override
+        protected XMLInputFactory initialValue() {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            // Same behavior as the DOM parser: match on qualified names, no DTDs
+            factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+            factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+            return factory;
+        }
+    };
+
+    public RSS parse(String url, InputStream in, int maxItems) throws Exception {
+        XMLStreamReader reader = factories.get().createXMLStreamReader(in);
+        try {
+            return parse(url, reader, maxItems);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private RSS parse(String url, XMLStreamReader reader, int maxItems) throws XMLStreamException {
+        String feedTitle = null;
+        List<RSSItem> items = new ArrayList<RSSItem>();
+
+        // Names of the enclosing elements, to find the channel/feed title
+        Deque<String> path = new ArrayDeque<String>();
+
+        while (items.size() < maxItems && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                if ("item".equals(name) || "entry".equals(name)) {
+                    items.add(parseItem(reader));
+                } else if ("title".equals(name) && feedTitle == null
+                        && ("channel".equals(path.peek()) || "feed".equals(path.peek()))) {
+                    feedTitle = readText(reader);
+                } else {
+                    path.push(name);
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                path.poll();
+            }
+        }
+
+        return new RSSImpl(url, feedTitle, items);
+    }
+
+    /**
+     * Reads an item (RSS) or entry (Atom) up to its closing tag
+     */
+    private RSSItem parseItem(XMLStreamReader reader) throws XMLStreamException {
+        String id = null;
+        String title = null;
+        String link = null;
+        String description = null;
+
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                if ("title".equals(name) && title == null) {
+                    title = readText(reader);
+                } else if ("link".equals(name) && link == null) {
+                    // Atom links are in the href attribute of the alternate link
+                    String href = reader.getAttributeValue(null, "href");
+                    String rel = reader.getAttributeValue(null, "rel");
+                    if (href != null) {
+                        if (rel == null || "alternate".equals(rel)) link = href;
+                        skipElement(reader);
+                    } else {
+                        link = readText(reader);
+                    }
+                } else if (("guid".equals(name) || "id".equals(name)) && id == null) {
+                    id = readText(reader).trim();
+                } else if (("description".equals(name) || "summary".equals(name) || "content".equals(name))
+                        && description == null) {
+                    description = readText(reader);
+                } else {
+                    depth++;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+
+        return new RSSItemImpl(id, title, link, description);
+    }
+
+    /**
+     * Returns the text content of the current element (including the text of
+     * nested elements, like DOM getTextContent) and moves to its closing tag
+     */
+    private static String readText(XMLStreamReader reader) throws XMLStreamException {
+        StringBuilder text = null;
+        String first = null;
+
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            switch (event) {
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    // Most elements have a single text event, avoid copying it
+                    if (first == null) {
+                        first = reader.getText();
+                    } else {
+                        if (text == null) text = new StringBuilder(first);
+                        text.append(reader.getText());
+                    }
+                    break;
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        if (text != null) return text.toString();
+        return first == null ? "" : first;
+    }
+
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) depth++;
+            else if (event == XMLStreamConstants.END_ELEMENT) depth--;
+        }
+    }
+}
@@ -19,6 +19,7 @@ import com.google.common.io.Closeables;
 import com.google.inject.Injector;
 import com.netflix.governator.guice.LifecycleInjector;
 import com.netflix.governator.lifecycle.LifecycleManager;
+import com.netflix.recipes.rss.RSSConstants;
 import com.netflix.recipes.rss.server.MiddleTierServer;
 import com.netflix.recipes.rss.util.RSSModule;
 
@@ -41,6 +42,22 @@ public class EmbeddedMiddleTierForTests {
     	middleTierServer.start();
     }
 
+    /**
+     * Middle tier on the port, owning its share of the feeds of the middle tiers
+     * in peers (host:port list, see FeedOwnership) instead of the ones in Eureka.
+     *
+     * The configuration and RSSManager are static, every middle tier of the
+     * peers runs in its own JVM.
+     */
+    public void setUp(int port, String peers) throws Exception {
+        System.setProperty("netty.http.port", String.valueOf(port));
+        System.setProperty("eureka.port", String.valueOf(port));
+        System.setProperty(RSSConstants.RSS_OWNERSHIP_ENABLED, "true");
+        System.setProperty(RSSConstants.RSS_OWNERSHIP_PEERS, peers);
+        System.setProperty(RSSConstants.RSS_OWNERSHIP_SELF, "localhost:" + port);
+        setUp();
+    }
+
     public void tearDown() throws Exception {
         Closeables.closeQuietly(middleTierServer);
     }
@@ -0,0 +1,190 @@
+package com.netflix.recipes.rss.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SubscriptionJournalTest {
+
+    private File dir;
+    private InMemoryStoreImpl store;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("rss-store", "");
+        assertTrue(dir.delete());
+        store = new InMemoryStoreImpl(dir);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (store != null) {
+            store.close();
+        }
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file: files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void recoversTheLoggedSubscriptions() throws IOException {
+        store.subscribeUrl("alice", "http://a.example.com/rss");
+        store.subscribeUrl("alice", "http://b.example.com/rss");
+        store.subscribeUrl("bob", "http://a.example.com/rss");
+        store.unsubscribeUrl("alice", "http://a.example.com/rss");
+
+        assertEquals(Collections.singletonList("http://b.example.com/rss"), restart().getSubscribedUrls("alice"));
+        assertEquals(Collections.singletonList("http://a.example.com/rss"), store.getSubscribedUrls("bob"));
+    }
+
+    @Test
+    public void truncatesATornRecordOnRecovery() throws IOException {
+        store.subscribeUrl("alice", "http://a.example.com/rss");
+        store.subscribeUrl("alice", "http://b.example.com/rss");
+        store.close();
+        store = null;
+
+        // A crash in the middle of the next record: its length and checksum but only part of the payload
+        File log = getLog();
+        long length = log.length();
+        FileOutputStream out = new FileOutputStream(log, true);
+        try {
+            out.write(new byte[] {0, 0, 0, 40, 1, 2, 3, 4, 1, 0, 5, 'a', 'l'});
+        } finally {
+            out.close();
+        }
+
+        store = new InMemoryStoreImpl(dir);
+        assertEquals(Arrays.asList("http://a.example.com/rss", "http://b.example.com/rss"), store.getSubscribedUrls("alice"));
+        assertEquals(length, log.length());
+
+        // The records logged after the truncated one are replayed too
+        store.subscribeUrl("bob", "http://c.example.com/rss");
+        assertEquals(Collections.singletonList("http://c.example.com/rss"), restart().getSubscribedUrls("bob"));
+        assertEquals(2, store.getSubscribedUrls("alice").size());
+    }
+
+    @Test
+    public void stopsReplayingAtACorruptRecord() throws IOException {
+        store.subscribeUrl("alice", "http://a.example.com/rss");
+        store.subscribeUrl("alice", "http://b.example.com/rss");
+        store.close();
+        store = null;
+
+        // Flip a byte of the last url, its checksum no longer matches
+        File log = getLog();
+        RandomAccessFile raf = new RandomAccessFile(log, "rw");
+        try {
+            raf.seek(log.length() - 1);
+            raf.write('x');
+        } finally {
+            raf.close();
+        }
+
+        store = new InMemoryStoreImpl(dir);
+        assertEquals(Collections.singletonList("http://a.example.com/rss"), store.getSubscribedUrls("alice"));
+    }
+
+    @Test
+    public void undoesAFailedWrite() throws Exception {
+        store.subscribeUrl("alice", "http://a.example.com/rss");
+
+        // The writer can neither write nor truncate a closed channel
+        getLogChannel().close();
+        try {
+            store.subscribeUrl("alice", "http://b.example.com/rss");
+            fail("The write should have failed");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(Collections.singletonList("http://a.example.com/rss"), store.getSubscribedUrls("alice"));
+
+        // The log stopped, the updates keep failing instead of being lost
+        try {
+            store.unsubscribeUrl("alice", "http://a.example.com/rss");
+            fail("The log should have stopped");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(Collections.singletonList("http://a.example.com/rss"), store.getSubscribedUrls("alice"));
+
+        assertEquals(Collections.singletonList("http://a.example.com/rss"), restart().getSubscribedUrls("alice"));
+    }
+
+    @Test
+    public void restoresTheSameStateFromASnapshotAndTheLog() throws IOException {
+        for (int user = 0; user < 50; user++) {
+            for (int feed = 0; feed < 10; feed++) {
+                store.subscribeUrl("user" + user, "http://feed" + ((user + feed) % 30) + ".example.com/rss");
+            }
+        }
+        store.snapshot();
+
+        // Logged after the snapshot, replayed on top of it
+        for (int user = 0; user < 50; user += 3) {
+            store.unsubscribeUrl("user" + user, "http://feed" + user % 30 + ".example.com/rss");
+            store.subscribeUrl("user" + user, "http://late.example.com/rss");
+        }
+        store.subscribeUrl("newcomer", "http://feed0.example.com/rss");
+
+        Map<String, List<String>> before = getState(store);
+        assertEquals(before, getState(restart()));
+
+        // Everything is in the snapshot now
+        store.snapshot();
+        assertEquals(before, getState(restart()));
+    }
+
+    private InMemoryStoreImpl restart() throws IOException {
+        store.close();
+        store = null;
+        store = new InMemoryStoreImpl(dir);
+        return store;
+    }
+
+    private File getLog() {
+        List<String> logs = new ArrayList<String>();
+        for (String name: dir.list()) {
+            if (name.endsWith(".log")) logs.add(name);
+        }
+        assertEquals(1, logs.size());
+        return new File(dir, logs.get(0));
+    }
+
+    private FileChannel getLogChannel() throws Exception {
+        Field journalField = InMemoryStoreImpl.class.getDeclaredField("journal");
+        journalField.setAccessible(true);
+        Field logField = SubscriptionJournal.class.getDeclaredField("log");
+        logField.setAccessible(true);
+        return (FileChannel) logField.get(journalField.get(store));
+    }
+
+    private static Map<String, List<String>> getState(InMemoryStoreImpl store) {
+        Map<String, List<String>> state = new HashMap<String, List<String>>();
+        for (String userId: store.getUserIds()) {
+            state.put(userId, store.getSubscribedUrls(userId));
+        }
+        return state;
+    }
+}